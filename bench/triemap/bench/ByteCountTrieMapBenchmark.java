@@ -0,0 +1,95 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import triemap.ByteCountTrieMap;
+
+/**
+ * ByteCountTrieMap overloads on primitive byte[] keys against a trie pre
+ * filled with keyCount keys. The primitive engine is the one to run at 100M
+ * keys(-p keyCount=100000000).
+ *
+ * @author srikalyc
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ByteCountTrieMapBenchmark {
+
+    @Param({"10000", "1000000"})
+    long keyCount;
+
+    @Param({"SEQUENTIAL", "RANDOM", "ZIPFIAN", "CLUSTERED"})
+    KeyDistribution distribution;
+
+    ByteCountTrieMap trie;
+    byte[][] probes;
+    int next = 0;
+
+    @Setup
+    public void setup() {
+        trie = new ByteCountTrieMap();
+        int[] scratch = new int[KeyDistribution.KEY_LENGTH];
+        byte[] key = new byte[KeyDistribution.KEY_LENGTH];
+        for (long i = 0; i < keyCount; i++) {
+            distribution.key(i, keyCount, key, scratch);
+            trie.inc(key, 1);
+        }
+        probes = new byte[TrieMapBenchmark.PROBES][KeyDistribution.KEY_LENGTH];
+        for (int p = 0; p < TrieMapBenchmark.PROBES; p++) {
+            distribution.key(keyCount + p * 7919L, keyCount, probes[p], scratch);
+        }
+    }
+
+    private byte[] probe() {
+        return probes[next++ & (TrieMapBenchmark.PROBES - 1)];
+    }
+
+    @Benchmark
+    public void inc() {
+        trie.inc(probe(), 1);
+    }
+
+    @Benchmark
+    public void incPrefixes() {
+        trie.incPrefixes(probe(), 1);
+    }
+
+    @Benchmark
+    public void incAll() {
+        trie.incAll(probe(), 1);
+    }
+
+    @Benchmark
+    public long get() {
+        return trie.get(probe());
+    }
+
+    @Benchmark
+    public boolean contains() {
+        return trie.contains(probe());
+    }
+}
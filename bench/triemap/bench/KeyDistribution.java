@@ -0,0 +1,95 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap.bench;
+
+/**
+ * Key i of a key set of a given size, computed on the fly(nothing is kept
+ * per key, so even 100M key sets cost no memory outside the trie). Keys are
+ * KEY_LENGTH partial keys in 0..255, so they work for the byte tries too.
+ *
+ * @author srikalyc
+ */
+public enum KeyDistribution {
+    /**
+     * Keys in ascending order, the fan-out of the last levels fills up.
+     */
+    SEQUENTIAL,
+    /**
+     * Uniformly scattered keys.
+     */
+    RANDOM,
+    /**
+     * Skewed key frequencies: draw i is a key whose rank is roughly
+     * log-uniform(Zipf with exponent 1), so a few keys are hit most of the time.
+     */
+    ZIPFIAN,
+    /**
+     * Keys sharing one of 16 long prefixes, as with per tenant/per host ids.
+     */
+    CLUSTERED;
+
+    public static final int KEY_LENGTH = 6;
+
+    /**
+     * splitmix64 finalizer.
+     */
+    static long mix(long h) {
+        h += 0x9E3779B97F4A7C15L;
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+
+    /**
+     * Fills out[0..KEY_LENGTH) with draw i out of a key set of keyCount keys.
+     * @param i
+     * @param keyCount
+     * @param out
+     */
+    public void key(long i, long keyCount, int[] out) {
+        long bits;
+        switch (this) {
+            case SEQUENTIAL:
+                bits = i % keyCount;
+                break;
+            case RANDOM:
+                bits = mix(i % keyCount);
+                break;
+            case ZIPFIAN:
+                double u = (mix(i) >>> 11) * 0x1.0p-53;
+                bits = mix((long) Math.pow(keyCount, u) - 1);
+                break;
+            default:
+                long cluster = mix(i % 16);
+                long rest = mix(i % keyCount);
+                bits = (cluster & 0xFFFF00000000L) | (rest & 0xFFFFFFFFL);// 2 shared bytes, 4 own ones.
+                break;
+        }
+        for (int d = KEY_LENGTH - 1; d >= 0; d--) {
+            out[d] = (int) (bits & 0xFF);
+            bits >>>= 8;
+        }
+    }
+
+    public void key(long i, long keyCount, Integer[] out, int[] scratch) {
+        key(i, keyCount, scratch);
+        for (int d = 0; d < KEY_LENGTH; d++) {
+            out[d] = scratch[d];
+        }
+    }
+
+    public void key(long i, long keyCount, byte[] out, int[] scratch) {
+        key(i, keyCount, scratch);
+        for (int d = 0; d < KEY_LENGTH; d++) {
+            out[d] = (byte) scratch[d];
+        }
+    }
+}
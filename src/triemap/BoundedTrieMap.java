@@ -0,0 +1,452 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap;
+
+import java.util.ArrayDeque;
+
+/**
+ * Capacity bounded TrieMap for use as a prefix cache. Every entry has a
+ * weight(1 by default, so the capacity is a number of entries, or bytes with
+ * a Weigher) and once the total goes above the capacity the least recently
+ * (LRU) or least frequently(LFU) used entries are evicted. Nodes left without
+ * value and children are unlinked from their parents up the trie.
+ *
+ * The bookkeeping lives in the nodes themselves: entries sit in doubly linked
+ * lists, one per use frequency(a single one for LRU), and the lists are
+ * chained in ascending frequency, so a hit, an insert and an eviction are all
+ * O(1) on top of the trie descent. get() counts as a use, contains() does not.
+ *
+ * @author srikalyc
+ * @param <K>
+ * @param <V> value type.
+ */
+public class BoundedTrieMap<K extends Comparable<K>, V> extends TrieMap<K, V> {
+
+    public enum Policy {
+        LRU, LFU
+    }
+
+    /**
+     * Cost of an entry against the capacity, e.g its size in bytes.
+     */
+    public interface Weigher<K, V> {
+        long weigh(K[] key, int sI, int eI, V value);
+    }
+
+    private final Policy policy;
+    private final long capacity;
+    private final Weigher<K, V> weigher;
+    /**
+     * Bucket with the lowest frequency, its least recently used entry is the
+     * next victim.
+     */
+    private Bucket lowest;
+    private long totalWeight = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * @param policy
+     * @param maxEntries
+     */
+    public BoundedTrieMap(Policy policy, long maxEntries) {
+        this(policy, maxEntries, null);
+    }
+
+    /**
+     * @param policy
+     * @param capacity max total weight.
+     * @param weigher null to weigh every entry 1.
+     */
+    public BoundedTrieMap(Policy policy, long capacity, Weigher<K, V> weigher) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1, got " + capacity);
+        }
+        this.policy = policy;
+        this.capacity = capacity;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Entries of one use frequency, head is the least recently used.
+     */
+    private class Bucket {
+        final long frequency;
+        Bucket prev;
+        Bucket next;
+        CacheNode head;
+        CacheNode tail;
+
+        Bucket(long frequency) {
+            this.frequency = frequency;
+        }
+    }
+
+    /**
+     * TrieNode with its parent(for pruning) and its place in the use lists.
+     */
+    class CacheNode extends TrieNode {
+        CacheNode parent;
+        CacheNode prev;
+        CacheNode next;
+        Bucket bucket;
+        long weight;
+
+        CacheNode(K partialKey, V value) {
+            super(partialKey, value);
+        }
+    }
+
+    @Override
+    TrieNode newNode(K partialKey, V value) {
+        return new CacheNode(partialKey, value);
+    }
+
+    /**
+     * CacheNode adds parent, prev, next, bucket and weight.
+     */
+    @Override
+    int nodeBytes() {
+        return TrieStats.TRIE_NODE + 4 * TrieStats.REF + 8;
+    }
+
+    /**
+     * The copy also takes over the place of node in its use list and becomes
+     * the parent of its children.
+     */
+    @Override
+    TrieNode relocate(TrieNode node, TrieNode parent) {
+        CacheNode old = (CacheNode) node;
+        CacheNode copy = (CacheNode) super.relocate(node, parent);
+        copy.parent = (CacheNode) parent;
+        copy.weight = old.weight;
+        if (old.bucket != null) {
+            copy.bucket = old.bucket;
+            copy.prev = old.prev;
+            copy.next = old.next;
+            if (copy.prev == null) {
+                copy.bucket.head = copy;
+            } else {
+                copy.prev.next = copy;
+            }
+            if (copy.next == null) {
+                copy.bucket.tail = copy;
+            } else {
+                copy.next.prev = copy;
+            }
+            old.bucket = null;
+            old.prev = null;
+            old.next = null;
+        }
+        if (copy.child != null) {
+            for (TrieNode c : copy.child) {
+                ((CacheNode) c).parent = copy;
+            }
+        }
+        return copy;
+    }
+
+    @SuppressWarnings("unchecked")
+    private CacheNode cacheNode(int depth) {
+        return (CacheNode) pathNode(depth);
+    }
+
+    /**
+     * Behind add() and addIfNull().
+     */
+    @Override
+    int put(K[] key, int sI, int eI, V value, boolean onlyIfNull) {
+        int depth = tracePath(key, sI, eI);
+        linkParents(eI - sI);
+        setValues(eI - sI, eI - sI, value, onlyIfNull);
+        sync(cacheNode(eI - sI), key, sI, eI);
+        evict();
+        return depth;
+    }
+
+    /**
+     * Behind addPrefixes() and addAll().
+     */
+    @Override
+    int putPrefixes(K[] key, int sI, int eI, V value) {
+        int depth = tracePath(key, sI, eI);
+        linkParents(eI - sI);
+        setValues(1, eI - sI, value, false);
+        for (int d = 1; d <= eI - sI; d++) {
+            sync(cacheNode(d), key, sI, sI + d);
+        }
+        evict();
+        return depth;
+    }
+
+    /**
+     * Same result as add() of every key in turn.
+     */
+    @Override
+    public void addBatch(K[][] keys, V[] values) {
+        checkNotEmpty(keys);
+        for (int i = 0; i < keys.length; i++) {
+            put(keys[i], 0, keys[i].length, values[i], false);
+        }
+    }
+
+    /**
+     * Return value corresponding to key if exists else null is returned, a
+     * hit counts as a use of the entry.
+     * @param key
+     * @param sI
+     * @param eI
+     * @return
+     */
+    @Override
+    public V get(K[] key, int sI, int eI) {
+        boolean timed = metrics != null && metrics.sample(TrieMetrics.Op.GET);
+        long start = timed ? System.nanoTime() : 0;
+        int depth = traceExisting(key, sI, eI);
+        CacheNode node = depth == eI - sI ? cacheNode(depth) : null;
+        V value = null;
+        if (node == null || node.value == null) {
+            misses++;
+        } else {
+            hits++;
+            touch(node);
+            value = node.value;
+        }
+        if (timed) {
+            metrics.record(TrieMetrics.Op.GET, start, depth);
+        }
+        return value;
+    }
+
+    @Override
+    public boolean remove(K[] key, int sI, int eI) {
+        CacheNode node = (CacheNode) find(key, sI, eI);
+        if (node == null || node == root) {
+            return false;
+        }
+        ArrayDeque<TrieNode> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {// Take the whole subtree out of the use lists.
+            CacheNode cur = (CacheNode) stack.pop();
+            if (cur.bucket != null) {
+                unlink(cur);
+            }
+            if (cur.child != null) {
+                for (TrieNode c : cur.child) {
+                    stack.push(c);
+                }
+            }
+        }
+        return super.remove(key, sI, eI);// Prunes the emptied ancestors too.
+    }
+
+    @Override
+    public boolean removeExact(K[] key, int sI, int eI) {
+        CacheNode node = (CacheNode) find(key, sI, eI);
+        if (node == null || node.value == null) {
+            return false;
+        }
+        if (node.bucket != null) {
+            unlink(node);
+        }
+        return super.removeExact(key, sI, eI);
+    }
+
+    private void linkParents(int depth) {
+        for (int d = depth; d >= 1; d--) {
+            CacheNode node = cacheNode(d);
+            if (node.parent != null) {
+                break;// The rest of the path was linked before.
+            }
+            node.parent = cacheNode(d - 1);
+        }
+    }
+
+    /**
+     * Brings the use lists in line with the value of node after an update.
+     */
+    private void sync(CacheNode node, K[] key, int sI, int eI) {
+        if (node.value == null) {
+            if (node.bucket != null) {
+                unlink(node);
+            }
+            prune(node);
+            return;
+        }
+        long w = weigher == null ? 1 : weigher.weigh(key, sI, eI, node.value);
+        totalWeight += w - node.weight;
+        node.weight = w;
+        if (node.bucket == null) {
+            link(node);
+        } else {
+            touch(node);
+        }
+    }
+
+    private void link(CacheNode node) {
+        long frequency = policy == Policy.LFU ? 1 : 0;
+        if (lowest == null || lowest.frequency != frequency) {
+            Bucket b = new Bucket(frequency);
+            b.next = lowest;
+            if (lowest != null) {
+                lowest.prev = b;
+            }
+            lowest = b;
+        }
+        append(lowest, node);
+    }
+
+    private void touch(CacheNode node) {
+        Bucket b = node.bucket;
+        if (policy == Policy.LRU) {
+            if (b.tail != node) {
+                detach(node);
+                append(b, node);
+            }
+            return;
+        }
+        Bucket next = b.next;
+        if (next == null || next.frequency != b.frequency + 1) {
+            next = new Bucket(b.frequency + 1);
+            next.prev = b;
+            next.next = b.next;
+            if (b.next != null) {
+                b.next.prev = next;
+            }
+            b.next = next;
+        }
+        detach(node);
+        append(next, node);
+        if (b.head == null) {
+            dropBucket(b);
+        }
+    }
+
+    private void unlink(CacheNode node) {
+        Bucket b = node.bucket;
+        detach(node);
+        if (b.head == null) {
+            dropBucket(b);
+        }
+        totalWeight -= node.weight;
+        node.weight = 0;
+    }
+
+    private void append(Bucket b, CacheNode node) {
+        node.bucket = b;
+        node.prev = b.tail;
+        node.next = null;
+        if (b.tail == null) {
+            b.head = node;
+        } else {
+            b.tail.next = node;
+        }
+        b.tail = node;
+    }
+
+    private void detach(CacheNode node) {
+        Bucket b = node.bucket;
+        if (node.prev == null) {
+            b.head = node.next;
+        } else {
+            node.prev.next = node.next;
+        }
+        if (node.next == null) {
+            b.tail = node.prev;
+        } else {
+            node.next.prev = node.prev;
+        }
+        node.prev = null;
+        node.next = null;
+        node.bucket = null;
+    }
+
+    private void dropBucket(Bucket b) {
+        if (b.prev == null) {
+            lowest = b.next;
+        } else {
+            b.prev.next = b.next;
+        }
+        if (b.next != null) {
+            b.next.prev = b.prev;
+        }
+    }
+
+    /**
+     * Evicts victims until the total weight fits the capacity.
+     */
+    private void evict() {
+        while (totalWeight > capacity && lowest != null) {
+            CacheNode victim = lowest.head;
+            V value = victim.value;
+            unlink(victim);
+            victim.value = null;
+            long valueWeight = weight(value);
+            victim.adjust(-1, -valueWeight, null, 0);
+            TrieNode below = victim;
+            for (CacheNode p = victim.parent; p != null; p = p.parent) {
+                p.adjust(-1, -valueWeight, below, 0);
+                below = p;
+            }
+            prune(victim);
+            evictions++;
+        }
+    }
+
+    /**
+     * Unlinks node and then its ancestors for as long as they are left
+     * without value and children.
+     */
+    private void prune(CacheNode node) {
+        while (node != root && node.value == null && (node.child == null || node.child.size() == 0)) {
+            CacheNode parent = node.parent;
+            parent.child.remove(node.partialKey);
+            if (parent.child.size() == 0) {
+                parent.child = null;
+            }
+            node.parent = null;
+            node = parent;
+        }
+    }
+
+    /**
+     * @return number of get() calls which found a value.
+     */
+    public long hits() {
+        return hits;
+    }
+
+    /**
+     * @return number of get() calls which did not.
+     */
+    public long misses() {
+        return misses;
+    }
+
+    /**
+     * @return number of entries evicted to stay within the capacity.
+     */
+    public long evictions() {
+        return evictions;
+    }
+
+    /**
+     * @return total weight of the entries, at most the capacity.
+     */
+    public long totalWeight() {
+        return totalWeight;
+    }
+
+    public long capacity() {
+        return capacity;
+    }
+}
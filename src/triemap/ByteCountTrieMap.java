@@ -0,0 +1,702 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counting trie over primitive byte arrays. A level can have at most 256
+ * children so nodes adapt their layout to the fan-out(like an ART):
+ * up to 4 and then up to 16 children are kept in a small sorted byte[] with a
+ * parallel int[] of child ids, beyond that the node becomes a direct 256 slot
+ * table indexed by the byte itself. Counts are primitive longs, nothing is boxed.
+ * ByteTrieMap is the NumTrieMap<Byte> flavour, with byte[] overloads.
+ * @author srikalyc
+ */
+public class ByteCountTrieMap {
+    static final int ROOT = 0;
+    static final int NONE = -1;
+    /**
+     * Nodes with more children than this are turned into 256 slot tables.
+     */
+    static final int SMALL_NODE_MAX = 16;
+    private static final byte[] EMPTY_KEYS = new byte[0];
+    private static final int[] EMPTY_IDS = new int[0];
+
+    byte[] partialKeys;
+    long[] counts;
+    boolean[] valued;
+    /**
+     * Sorted child bytes of small nodes, null once the node is a 256 slot table.
+     */
+    byte[][] childKeys;
+    /**
+     * Child ids parallel to childKeys for small nodes, for 256 slot tables the
+     * id of the child for byte b is at (b &amp; 0xff), 0 meaning no child(root
+     * is never anybody's child).
+     */
+    int[][] childIds;
+    int[] childCounts;
+    int nodeCount = 1;
+    int freeHead = NONE;
+    int size = 0;
+    /**
+     * Bumped whenever nodes are released, node ids held outside(ingestors)
+     * are stale after that.
+     */
+    int releaseVersion = 0;
+
+    /**
+     * Receives the stored keys which are prefixes of a query, shortest first.
+     * end is the end index(exclusive) of the prefix in the query array.
+     */
+    public interface PrefixMatchVisitor {
+        void visit(int end, long count);
+    }
+
+    public ByteCountTrieMap() {
+        this(1024);
+    }
+
+    /**
+     * @param initialNodes number of nodes to allocate room for up front.
+     */
+    public ByteCountTrieMap(int initialNodes) {
+        int n = Math.max(initialNodes, 2);
+        partialKeys = new byte[n];
+        counts = new long[n];
+        valued = new boolean[n];
+        childKeys = new byte[n][];
+        childIds = new int[n][];
+        childCounts = new int[n];
+        childKeys[ROOT] = EMPTY_KEYS;
+        childIds[ROOT] = EMPTY_IDS;
+    }
+
+    /**
+     * @param node
+     * @param partialKey
+     * @return child id or NONE.
+     */
+    int child(int node, byte partialKey) {
+        byte[] keys = childKeys[node];
+        if (keys == null) {
+            int id = childIds[node][partialKey & 0xff];
+            return id == 0 ? NONE : id;
+        }
+        for (int i = 0, n = childCounts[node]; i < n; i++) {
+            if (keys[i] == partialKey) {
+                return childIds[node][i];
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * @param node
+     * @param partialKey
+     * @return child id, the child is created if it does not exist yet.
+     */
+    int childOrAdd(int node, byte partialKey) {
+        int id = child(node, partialKey);
+        if (id != NONE) {
+            return id;
+        }
+        id = newNode(partialKey);
+        int n = childCounts[node];
+        byte[] keys = childKeys[node];
+        if (keys == null) {
+            childIds[node][partialKey & 0xff] = id;
+        } else if (n == SMALL_NODE_MAX) {
+            int[] table = new int[256];
+            for (int i = 0; i < n; i++) {
+                table[keys[i] & 0xff] = childIds[node][i];
+            }
+            table[partialKey & 0xff] = id;
+            childKeys[node] = null;
+            childIds[node] = table;
+        } else {
+            int[] ids = childIds[node];
+            if (n == keys.length) {
+                int cap = n < 4 ? 4 : SMALL_NODE_MAX;
+                keys = Arrays.copyOf(keys, cap);
+                ids = Arrays.copyOf(ids, cap);
+                childKeys[node] = keys;
+                childIds[node] = ids;
+            }
+            int i = n;
+            while (i > 0 && keys[i - 1] > partialKey) {// Keep it sorted for ordered iteration.
+                keys[i] = keys[i - 1];
+                ids[i] = ids[i - 1];
+                i--;
+            }
+            keys[i] = partialKey;
+            ids[i] = id;
+        }
+        childCounts[node] = n + 1;
+        return id;
+    }
+
+    private int newNode(byte partialKey) {
+        int id;
+        if (freeHead != NONE) {
+            id = freeHead;
+            freeHead = childCounts[id];
+        } else {
+            if (nodeCount == partialKeys.length) {
+                grow();
+            }
+            id = nodeCount++;
+        }
+        partialKeys[id] = partialKey;
+        counts[id] = 0;
+        valued[id] = false;
+        childCounts[id] = 0;
+        if (childKeys[id] == null) {// Fresh slot or a former 256 slot table.
+            childKeys[id] = EMPTY_KEYS;
+            childIds[id] = EMPTY_IDS;
+        }
+        return id;
+    }
+
+    private void grow() {
+        int cap = partialKeys.length * 2;
+        partialKeys = Arrays.copyOf(partialKeys, cap);
+        counts = Arrays.copyOf(counts, cap);
+        valued = Arrays.copyOf(valued, cap);
+        childKeys = Arrays.copyOf(childKeys, cap);
+        childIds = Arrays.copyOf(childIds, cap);
+        childCounts = Arrays.copyOf(childCounts, cap);
+    }
+
+    private void addTo(int node, long value) {
+        if (!valued[node]) {
+            valued[node] = true;
+            size++;// Only when a key gets its first value increase the size.
+        }
+        counts[node] += value;
+    }
+
+    /**
+     * @return node id at the end of the path starting below node or NONE.
+     */
+    int find(int node, byte[] key, int sI, int eI) {
+        for (int i = sI; i < eI && node != NONE; i++) {
+            node = child(node, key[i]);
+        }
+        return node;
+    }
+
+    /**
+     * Used for both adding and updating. sI and eI are the number of elements
+     * from key which should be considered as key. The value is added to the tail.
+     * The current value is added by given "value".
+     *
+     * @param key
+     * @param sI (start index)
+     * @param eI (end index)
+     * @param value
+     */
+    public void inc(byte[] key, int sI, int eI, int value) {
+        int node = ROOT;
+        for (int i = sI; i < eI; i++) {
+            node = childOrAdd(node, key[i]);
+        }
+        addTo(node, value);
+    }
+    /**
+     * Same as inc() method but first element is considered as prefix instead of key[sI].
+     * @param key
+     * @param prefix
+     * @param sI
+     * @param eI
+     * @param value
+     */
+    public void inc(byte[] key, byte prefix, int sI, int eI, int value) {
+        int node = childOrAdd(ROOT, prefix);
+        for (int i = sI; i < eI; i++) {
+            node = childOrAdd(node, key[i]);
+        }
+        addTo(node, value);
+    }
+
+    /**
+     * Used for both adding and updating. sI and eI are the number of elements
+     * from key which should be considered as key. The value is added all along
+     * the path until the tail(all the prefixes of the key have values set now).
+     * If there are 'm' elements in key then this method is O(m) in time.
+     * The current value along the path is added by given "value".
+     * @param key
+     * @param sI
+     * @param eI
+     * @param value
+     */
+    public void incPrefixes(byte[] key, int sI, int eI, int value) {
+        incPrefixes(ROOT, key, sI, eI, value);
+    }
+
+    private void incPrefixes(int node, byte[] key, int sI, int eI, int value) {
+        for (int i = sI; i < eI; i++) {
+            node = childOrAdd(node, key[i]);
+            addTo(node, value);
+        }
+    }
+    /**
+     * Used for both adding and updating. sI and eI are the number of elements
+     * from key which should be considered as key. The value is added all along
+     * the path until the tail(all the prefixes and suffixes of the key have
+     * values set now). Each current value is added by given "value".
+     * If there are 'm' elements in key then this method is O(m2) in time.
+     * @param key
+     * @param sI
+     * @param eI
+     * @param value
+     */
+    public void incAll(byte[] key, int sI, int eI, int value) {
+        for (int i = sI; i < eI; i++) {
+            incPrefixes(ROOT, key, i, eI, value);// Add the suffixes to the path.
+        }
+    }
+    /**
+     * Element prefix is considered prefix of the whole key and added to the Trie
+     * and its value is not touched(except for the very first time) and all the
+     * elements key[sI to eI]'s value will be incremented.
+     * @param key
+     * @param prefix
+     * @param sI
+     * @param eI
+     * @param value
+     */
+    public void incAll(byte[] key, byte prefix, int sI, int eI, int value) {
+        int prefixNode = childOrAdd(ROOT, prefix);
+        if (!valued[prefixNode]) {// Prefix is only valueated the very first time.
+            addTo(prefixNode, value);
+        }
+        incPrefixes(prefixNode, key, sI, eI, value);
+        for (int i = sI; i < eI; i++) {
+            incPrefixes(ROOT, key, i, eI, value);// Add the suffixes to the path.
+        }
+    }
+
+    /**
+     * Return value corresponding to key if exists else 0 is returned.
+     * @param key
+     * @param sI
+     * @param eI
+     * @return
+     */
+    public long get(byte[] key, int sI, int eI) {
+        int node = find(ROOT, key, sI, eI);
+        return node == NONE ? 0 : counts[node];
+    }
+    /**
+     * Same as get() but prefix is the first element of the key.
+     * @param key
+     * @param prefix
+     * @param sI
+     * @param eI
+     * @return
+     */
+    public long get(byte[] key, byte prefix, int sI, int eI) {
+        int node = find(child(ROOT, prefix), key, sI, eI);
+        return node == NONE ? 0 : counts[node];
+    }
+    /**
+     * Check if key exists.
+     * @param key
+     * @param sI
+     * @param eI
+     * @return
+     */
+    public boolean contains(byte[] key, int sI, int eI) {
+        return find(ROOT, key, sI, eI) != NONE;
+    }
+
+    /**
+     * Longest stored key which is a prefix of key[sI..eI)(or all of it), in
+     * a single descent. A count on the empty key matches at sI.
+     * @param key
+     * @param sI
+     * @param eI
+     * @return end index(exclusive) of the match in key, -1 if there is none.
+     */
+    public int longestPrefixMatch(byte[] key, int sI, int eI) {
+        int match = valued[ROOT] ? sI : -1;
+        int node = ROOT;
+        for (int i = sI; i < eI; i++) {
+            node = child(node, key[i]);
+            if (node == NONE) {
+                break;
+            }
+            if (valued[node]) {
+                match = i + 1;
+            }
+        }
+        return match;
+    }
+
+    /**
+     * Calls visitor for every stored key which is a prefix of key[sI..eI)(or
+     * all of it), shortest first, in a single descent. A count on the empty
+     * key is visited first, with end sI.
+     * @param key
+     * @param sI
+     * @param eI
+     * @param visitor
+     */
+    public void forEachPrefixMatch(byte[] key, int sI, int eI, PrefixMatchVisitor visitor) {
+        int node = ROOT;
+        if (valued[ROOT]) {
+            visitor.visit(sI, counts[ROOT]);
+        }
+        for (int i = sI; i < eI; i++) {
+            node = child(node, key[i]);
+            if (node == NONE) {
+                return;
+            }
+            if (valued[node]) {
+                visitor.visit(i + 1, counts[node]);
+            }
+        }
+    }
+
+    /**
+     * If key if exists delete it along with all the keys it is a prefix of
+     * (wild card remove, same as TrieMap.remove()). The nodes are reused by
+     * later increments.
+     * @param key
+     * @param sI
+     * @param eI
+     * @return
+     */
+    public boolean remove(byte[] key, int sI, int eI) {
+        if (sI >= eI) {
+            return false;
+        }
+        int parent = find(ROOT, key, sI, eI - 1);
+        if (parent == NONE) {
+            return false;
+        }
+        byte partialKey = key[eI - 1];
+        int node = child(parent, partialKey);
+        if (node == NONE) {
+            return false;
+        }
+        int n = childCounts[parent];
+        byte[] keys = childKeys[parent];
+        if (keys == null) {
+            childIds[parent][partialKey & 0xff] = 0;
+        } else {
+            int i = 0;
+            while (keys[i] != partialKey) {
+                i++;
+            }
+            System.arraycopy(keys, i + 1, keys, i, n - i - 1);
+            System.arraycopy(childIds[parent], i + 1, childIds[parent], i, n - i - 1);
+        }
+        childCounts[parent] = n - 1;
+        release(node);
+        releaseVersion++;
+        return true;
+    }
+
+    /**
+     * Puts the whole subtree on the free list, iteratively.
+     */
+    private void release(int node) {
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = node;
+        while (top > 0) {
+            int cur = stack[--top];
+            int[] ids = childIds[cur];
+            int n = childKeys[cur] == null ? ids.length : childCounts[cur];
+            for (int c = 0; c < n; c++) {
+                if (ids[c] == 0) {
+                    continue;
+                }
+                if (top == stack.length) {
+                    stack = Arrays.copyOf(stack, top * 2);
+                }
+                stack[top++] = ids[c];
+            }
+            if (valued[cur]) {
+                size--;
+            }
+            if (childKeys[cur] == null) {// Do not hand a 256 slot table to a fresh node.
+                childIds[cur] = null;
+            }
+            valued[cur] = false;
+            counts[cur] = 0;
+            childCounts[cur] = freeHead;// Reused as the free list link.
+            freeHead = cur;
+        }
+    }
+
+    /**
+     * Number of trie entries(keys which have been incremented).
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    public void printKeyValueEntries() {
+        iterEntries(ROOT, new ArrayList<Byte>(), null);
+    }
+
+    /**
+     * Materializes all the entries, boxing is unavoidable here.
+     * @return
+     */
+    public Map<List<Byte>, Long> getKeyValueEntries() {
+        Map<List<Byte>, Long> keyListAndValues = new HashMap<>();
+        iterEntries(ROOT, new ArrayList<Byte>(), keyListAndValues);
+        return keyListAndValues;
+    }
+
+    /**
+     * Recursive in nature, children are visited in ascending(signed) byte
+     * order. Prints when out is null.
+     */
+    private void iterEntries(int node, List<Byte> path, Map<List<Byte>, Long> out) {
+        if (childKeys[node] == null) {
+            for (int b = Byte.MIN_VALUE; b <= Byte.MAX_VALUE; b++) {
+                int id = childIds[node][b & 0xff];
+                if (id != 0) {
+                    visit(id, path, out);
+                }
+            }
+        } else {
+            for (int c = 0; c < childCounts[node]; c++) {
+                visit(childIds[node][c], path, out);
+            }
+        }
+    }
+
+    private void visit(int id, List<Byte> path, Map<List<Byte>, Long> out) {
+        path.add(partialKeys[id]);
+        if (valued[id]) {
+            if (out == null) {
+                System.out.println(path + "," + counts[id]);
+            } else {
+                out.put(new ArrayList<>(path), counts[id]);
+            }
+        }
+        iterEntries(id, path, out);
+        path.remove(path.size() - 1);
+    }
+
+    /**
+     * Entire array is used as key.
+     * @param key
+     * @param value
+     */
+    public void inc(byte[] key, int value) {
+        inc(key, 0, key.length, value);
+    }
+    /**
+     * Entire array is used as key.
+     * @param key
+     * @param value
+     */
+    public void incPrefixes(byte[] key, int value) {
+        incPrefixes(key, 0, key.length, value);
+    }
+    /**
+     * Entire array is used as key.
+     * @param key
+     * @param value
+     */
+    public void incAll(byte[] key, int value) {
+        incAll(key, 0, key.length, value);
+    }
+    /**
+     * Entire array is used as key.
+     * @param key
+     * @return
+     */
+    public long get(byte[] key) {
+        return get(key, 0, key.length);
+    }
+    /**
+     * Entire array is used as key.
+     * @param key
+     * @return
+     */
+    public boolean contains(byte[] key) {
+        return contains(key, 0, key.length);
+    }
+    /**
+     * Entire array is used as key.
+     * @param key
+     * @return
+     */
+    public boolean remove(byte[] key) {
+        return remove(key, 0, key.length);
+    }
+    /**
+     * Entire array is used as key.
+     * @param key
+     * @return
+     */
+    public int longestPrefixMatch(byte[] key) {
+        return longestPrefixMatch(key, 0, key.length);
+    }
+    /**
+     * Entire array is used as key.
+     * @param key
+     * @param visitor
+     */
+    public void forEachPrefixMatch(byte[] key, PrefixMatchVisitor visitor) {
+        forEachPrefixMatch(key, 0, key.length, visitor);
+    }
+
+    /**
+     * Counts the n-grams(every run of 1..maxDepth consecutive tokens) of an
+     * unbounded token stream, see NGramIngestor.
+     * @param maxDepth longest n-gram to count, at least 1.
+     * @return 
+     */
+    public NGramIngestor ngramIngestor(int maxDepth) {
+        return new NGramIngestor(maxDepth);
+    }
+
+    /**
+     * Streaming n-gram counter. It keeps the nodes of the n-grams which end at
+     * the last token(active[d] is the node of the last d tokens), so a new
+     * token only steps each of them one level down: O(maxDepth) per token
+     * without descending from the root, and memory independent of the stream
+     * length. Counts end up the same as inc(stream, i - d + 1, i + 1, 1) for
+     * every byte i and every d in 1..maxDepth(the n-grams which fit). The
+     * active nodes are looked up again when remove() released nodes.
+     */
+    public class NGramIngestor {
+        private final int[] active;
+        /**
+         * Number of valid entries in active(tokens seen so far, capped).
+         */
+        private int depth = 0;
+        /**
+         * Last bytes(ring buffer) to find the active nodes again after
+         * nodes have been released.
+         */
+        private final byte[] recent;
+        private int recentEnd = 0;
+        private int version = releaseVersion;
+
+        NGramIngestor(int maxDepth) {
+            if (maxDepth < 1) {
+                throw new IllegalArgumentException("maxDepth must be at least 1, got " + maxDepth);
+            }
+            active = new int[maxDepth + 1];
+            active[0] = ROOT;
+            recent = new byte[maxDepth];
+        }
+
+        /**
+         * Counts the n-grams which end with token.
+         * @param token
+         */
+        public void accept(byte token) {
+            if (version != releaseVersion) {
+                relocate();
+            }
+            int top = Math.min(depth + 1, active.length - 1);
+            for (int d = top; d >= 1; d--) {// Deepest first, active[d - 1] is still the old one.
+                int parent = active[d - 1] != NONE ? active[d - 1] : recreate(d - 1);
+                active[d] = childOrAdd(parent, token);
+                addTo(active[d], 1);
+            }
+            depth = top;
+            recent[recentEnd] = token;
+            recentEnd = (recentEnd + 1) % recent.length;
+        }
+
+        /**
+         * Looks the paths of the last bytes up again, the old node ids may
+         * have been released by remove(). Paths which are gone are left
+         * NONE rather than created empty, accept() recreates the ones it
+         * counts under.
+         */
+        private void relocate() {
+            for (int d = 1; d <= depth; d++) {
+                int node = ROOT;
+                for (int i = d; i >= 1 && node != NONE; i--) {
+                    node = child(node, recent[(recentEnd - i + recent.length) % recent.length]);
+                }
+                active[d] = node;
+            }
+            version = releaseVersion;
+        }
+
+        /**
+         * @return node of the last length bytes, created if missing.
+         */
+        private int recreate(int length) {
+            int node = ROOT;
+            for (int i = length; i >= 1; i--) {
+                node = childOrAdd(node, recent[(recentEnd - i + recent.length) % recent.length]);
+            }
+            active[length] = node;
+            return node;
+        }
+
+        /**
+         * @param tokens
+         * @param sI
+         * @param eI
+         */
+        public void accept(byte[] tokens, int sI, int eI) {
+            for (int i = sI; i < eI; i++) {
+                accept(tokens[i]);
+            }
+        }
+
+        /**
+         * Consumes the remaining bytes of buffer.
+         * @param buffer
+         */
+        public void accept(ByteBuffer buffer) {
+            while (buffer.hasRemaining()) {
+                accept(buffer.get());
+            }
+        }
+
+        /**
+         * Consumes in until end of stream, in is not closed.
+         * @param in
+         * @throws IOException
+         */
+        public void accept(InputStream in) throws IOException {
+            byte[] chunk = new byte[8192];
+            int n;
+            while ((n = in.read(chunk)) != -1) {
+                accept(chunk, 0, n);
+            }
+        }
+
+        /**
+         * Forgets the bytes seen so far, e.g at a sequence boundary so that
+         * no n-gram spans two sequences.
+         */
+        public void reset() {
+            depth = 0;
+        }
+    }
+}
@@ -1,21 +1,42 @@
 /**
  * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
- * "License"); you may not use this file except in compliance with the License. 
- * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
  * Unless required by applicable law or agreed to in writing, software distributed
- * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR 
- * CONDITIONS OF ANY KIND, either express or implied. See the License for the 
- * specific language governing permissions and limitations under the License. 
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
  * See accompanying LICENSE file.
  */
 package triemap;
 
+import java.util.Arrays;
+
 /**
  * One can simply use NumTrieMap but this class is defined so that one can use
- * primitive arrays instead of the wrapper types.
+ * primitive arrays instead of the wrapper types. Boxing a byte allocates
+ * nothing(Byte.valueOf() is cached), ByteCountTrieMap is the counterpart with
+ * primitive nodes and long counts.
  * @author srikalyc
  */
 public class ByteTrieMap extends NumTrieMap<Byte> {
+
+    private Byte[] boxed = new Byte[16];
+
+    /**
+     * @return key[sI..eI) boxed into boxed[offset..), preceded by the
+     * elements already there.
+     */
+    private Byte[] box(byte[] key, int sI, int eI, int offset) {
+        if (offset + eI - sI > boxed.length) {
+            boxed = Arrays.copyOf(boxed, (offset + eI - sI) * 2);
+        }
+        for (int i = sI; i < eI; i++) {
+            boxed[offset + i - sI] = key[i];
+        }
+        return boxed;
+    }
+
     /**
      * Used for both adding and updating. sI and eI are the number of elements 
      * from key which should be considered as key. The value is added to the tail.
@@ -27,27 +48,7 @@ public class ByteTrieMap extends NumTrieMap<Byte> {
      * @param value
      */
     public void inc(byte[] key, int sI, int eI, int value) {
-        TrieNode lastNode = root.get(key[sI]);
-
-        if (lastNode == null) {
-            lastNode = new TrieNode(key[sI], null);
-            root.add(lastNode);
-        }
-        TrieNode curNode = lastNode;
-        for (int i = sI + 1; i < eI; i++) {
-            curNode = lastNode.getChild(key[i]);
-            if (curNode == null) {
-                curNode = lastNode.addChild(key[i], null);
-                if (i == eI - 1) {
-                    size++;// Only when you are adding newly increase the size.
-                }
-            }
-            lastNode = curNode;
-        }
-        if (sI == eI - 1) {// Because the loop is never entered we take care of the edge case here.
-            size++;// Only when you are adding newly increase the size.
-        }
-        curNode.value += value;
+        inc(box(key, sI, eI, 0), 0, eI - sI, value);
     }
     /**
      * Same as inc() method but first element is considered as prefix instead of key[sI].
@@ -58,27 +59,8 @@ public class ByteTrieMap extends NumTrieMap<Byte> {
      * @param value 
      */
     public void inc(byte[] key, byte prefix, int sI, int eI, int value) {
-        TrieNode lastNode = root.get(prefix);
-
-        if (lastNode == null) {
-            lastNode = new TrieNode(prefix, null);
-            root.add(lastNode);
-        }
-        TrieNode curNode = lastNode;
-        for (int i = sI; i < eI; i++) {
-            curNode = lastNode.getChild(key[i]);
-            if (curNode == null) {
-                curNode = lastNode.addChild(key[i], null);
-                if (i == eI - 1) {
-                    size++;// Only when you are adding newly increase the size.
-                }
-            }
-            lastNode = curNode;
-        }
-        if (sI == eI - 1) {// Because the loop is never entered we take care of the edge case here.
-            size++;// Only when you are adding newly increase the size.
-        }
-        curNode.value += value;
+        boxed[0] = prefix;
+        inc(box(key, sI, eI, 1), 0, eI - sI + 1, value);
     }
 
     /**
@@ -93,26 +75,7 @@ public class ByteTrieMap extends NumTrieMap<Byte> {
      * @param value
      */
     public void incPrefixes(byte[] key, int sI, int eI, int value) {
-        TrieNode lastNode = root.get(key[sI]);
-
-        if (lastNode == null) {
-            lastNode = new TrieNode(key[sI], value);
-            root.add(lastNode);
-            size++;// Only when you are adding newly increase the size.
-        } else {
-            lastNode.value += value;
-        }
-        TrieNode curNode = lastNode;
-        for (int i = sI + 1; i < eI; i++) {
-            curNode = lastNode.getChild(key[i]);
-            if (curNode == null) {
-                curNode = lastNode.addChild(key[i], value);
-                size++;// Only when you are adding newly increase the size.
-            } else {
-                curNode.value += value;
-            }
-            lastNode = curNode;
-        }
+        incPrefixes(box(key, sI, eI, 0), 0, eI - sI, value);
     }
     /**
      * Used for both adding and updating. sI and eI are the number of elements 
@@ -126,10 +89,7 @@ public class ByteTrieMap extends NumTrieMap<Byte> {
      * @param value
      */
     public void incAll(byte[] key, int sI, int eI, int value) {
-        incPrefixes(key, sI, eI, value);// Add the suffixes to the path.
-        for (int i = sI + 1; i < eI; i++) {
-            incPrefixes(key, i, eI, value);// Add the suffixes to the path.
-        }
+        incAll(box(key, sI, eI, 0), 0, eI - sI, value);
     }
     /**
      * Element prefix is considered prefix of the whole key and added to the Trie
@@ -142,28 +102,11 @@ public class ByteTrieMap extends NumTrieMap<Byte> {
      * @param value 
      */
     public void incAll(byte[] key, byte prefix, int sI, int eI, int value) {
-        TrieNode lastNode = root.get(prefix);
-
-        if (lastNode == null) {
-            lastNode = new TrieNode(prefix, value);
-            root.add(lastNode);
-            size++;// Only when you are adding newly increase the size.
-        } else {// Prefix is not valueated.
-            //lastNode.value += value;
-        }
-        
-        TrieNode curNode = null;
-        for (int i = sI; i < eI; i++) {
-            incPrefixes(key, i, eI, value);// Add the suffixes to the path.
-            curNode = lastNode.getChild(key[i]);
-            if (curNode == null) {
-                curNode = lastNode.addChild(key[i], value);
-                size++;// Only when you are adding newly increase the size.
-            } else {
-                curNode.value += value;
-            }
-            lastNode = curNode;
-        }
+        boxed[0] = prefix;
+        Byte[] path = box(key, sI, eI, 1);
+        tracePath(path, 0, eI - sI + 1);
+        incValues(pathNode(1).value == null ? 1 : 2, eI - sI + 1, value);// Prefix is only valueated the very first time.
+        incAll(path, 1, eI - sI + 1, value);
     }
     /**
      * Entire array is used as key.
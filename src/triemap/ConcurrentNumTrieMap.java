@@ -0,0 +1,208 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread safe counterpart of NumTrieMap. Every node counts with a LongAdder,
+ * a striped counter, so threads incrementing the same hot top level nodes do
+ * not serialize on one memory location. Missing nodes are created race free
+ * by ConcurrentTrieMap's CAS, incrementing an existing path takes no lock and
+ * does no CAS on the trie itself. Once writers quiesce get() is exact.
+ * Increments racing with a remove() of their own path may be partially lost.
+ * The ConcurrentTrieMap holding the counters is private, counts are only
+ * read as longs so nobody can add to or replace a counter behind its back.
+ *
+ * @author srikalyc
+ * @param <N>
+ */
+public class ConcurrentNumTrieMap<N extends Number & Comparable<N>> {
+
+    private final ConcurrentTrieMap<N, LongAdder> trie;
+
+    public ConcurrentNumTrieMap() {
+        trie = new ConcurrentTrieMap<>();
+    }
+
+    /**
+     * @param arrayChildLimit see ConcurrentTrieMap(int).
+     */
+    public ConcurrentNumTrieMap(int arrayChildLimit) {
+        trie = new ConcurrentTrieMap<>(arrayChildLimit);
+    }
+
+    /**
+     * @return the counter of node, created on first use, or null if node has
+     * been removed.
+     */
+    private LongAdder counter(ConcurrentTrieMap.Node<N> node) {
+        Object v = node.value;
+        if (v instanceof LongAdder) {
+            return (LongAdder) v;
+        }
+        if (v == ConcurrentTrieMap.TOMBSTONE) {
+            return null;
+        }
+        LongAdder created = new LongAdder();
+        Object old = trie.setValue(node, created, true);
+        if (old == null) {
+            return created;
+        }
+        return old == ConcurrentTrieMap.TOMBSTONE ? null : (LongAdder) old;
+    }
+
+    /**
+     * Walks (and creates) the path key[sI..eI], adding value to every node
+     * from index incFrom on. When a node turns out to be removed the walk
+     * starts over from the root without adding to the nodes already counted.
+     */
+    private void inc(N[] key, int sI, int eI, int incFrom, int value) {
+        int done = sI;// Nodes at indexes below done have been counted.
+        while (true) {
+            ConcurrentTrieMap.Node<N> cur = trie.root;
+            int i = sI;
+            for (; i < eI; i++) {
+                cur = trie.getOrAddChild(cur, key[i]);
+                if (cur == null) {
+                    break;
+                }
+                if (i >= incFrom && i >= done) {
+                    LongAdder c = counter(cur);
+                    if (c == null) {
+                        break;
+                    }
+                    c.add(value);
+                    done = i + 1;
+                }
+            }
+            if (i == eI) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Used for both adding and updating. The value is added to the tail.
+     * @param key
+     * @param sI (start index)
+     * @param eI (end index)
+     * @param value
+     */
+    public void inc(N[] key, int sI, int eI, int value) {
+        inc(key, sI, eI, eI - 1, value);
+    }
+
+    /**
+     * The value is added all along the path until the tail(all the prefixes).
+     * @param key
+     * @param sI
+     * @param eI
+     * @param value
+     */
+    public void incPrefixes(N[] key, int sI, int eI, int value) {
+        inc(key, sI, eI, sI, value);
+    }
+
+    /**
+     * The value is added to all the prefixes of all the suffixes, O(m2) in time.
+     * @param key
+     * @param sI
+     * @param eI
+     * @param value
+     */
+    public void incAll(N[] key, int sI, int eI, int value) {
+        for (int i = sI; i < eI; i++) {
+            incPrefixes(key, i, eI, value);
+        }
+    }
+
+    /**
+     * Current count(sum of the striped counter) of key, 0 if it does not
+     * exist. Lock free.
+     * @param key
+     * @param sI
+     * @param eI
+     * @return
+     */
+    public long get(N[] key, int sI, int eI) {
+        ConcurrentTrieMap.Node<N> node = trie.find(key, sI, eI);
+        if (node == null) {
+            return 0;
+        }
+        LongAdder c = trie.valueOf(node);
+        return c == null ? 0 : c.sum();
+    }
+
+    /**
+     * Check if key exists. Lock free.
+     * @param key
+     * @param sI
+     * @param eI
+     * @return
+     */
+    public boolean contains(N[] key, int sI, int eI) {
+        return trie.contains(key, sI, eI);
+    }
+
+    /**
+     * Wild card remove, as in ConcurrentTrieMap.
+     * @param key
+     * @param sI
+     * @param eI
+     * @return true if this call removed the key.
+     */
+    public boolean remove(N[] key, int sI, int eI) {
+        return trie.remove(key, sI, eI);
+    }
+
+    /**
+     * Number of keys with a count.
+     * @return
+     */
+    public int size() {
+        return trie.size();
+    }
+
+    /**
+     * Weakly consistent snapshot of the counts.
+     * @return
+     */
+    public Map<List<N>, Long> getKeyValueEntries() {
+        Map<List<N>, Long> counts = new HashMap<>();
+        for (Map.Entry<List<N>, LongAdder> e : trie.getKeyValueEntries().entrySet()) {
+            counts.put(e.getKey(), e.getValue().sum());
+        }
+        return counts;
+    }
+
+    public void inc(N[] key, int value) {
+        inc(key, 0, key.length, value);
+    }
+    public void incPrefixes(N[] key, int value) {
+        incPrefixes(key, 0, key.length, value);
+    }
+    public void incAll(N[] key, int value) {
+        incAll(key, 0, key.length, value);
+    }
+    public long get(N[] key) {
+        return get(key, 0, key.length);
+    }
+    public boolean contains(N[] key) {
+        return contains(key, 0, key.length);
+    }
+    public boolean remove(N[] key) {
+        return remove(key, 0, key.length);
+    }
+}
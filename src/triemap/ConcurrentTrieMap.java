@@ -0,0 +1,432 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread safe TrieMap with the same add/addIfNull/get/contains/remove methods.
+ * Reads never lock and never write shared state. Writers never lock either:
+ * - the children of a node are an immutable sorted array replaced by CAS
+ *   (copy on write) while the fan-out is small, and a ConcurrentSkipListMap
+ *   once it grows beyond arrayChildLimit.
+ * - values are set by CAS as well so size() stays exact, the count itself is a
+ *   LongAdder so writers on different cores do not contend on one counter.
+ * remove() detaches the subtree from its parent and then seals every node of
+ * it, writers which raced into the detached subtree notice the seal and start
+ * over from the root.
+ *
+ * @author srikalyc
+ * @param <K>
+ * @param <V> value type.
+ */
+public class ConcurrentTrieMap<K extends Comparable<K>, V> {
+
+    /**
+     * Children of a removed node, nothing can be added below it anymore.
+     */
+    static final Object REMOVED = new Object();
+    /**
+     * Value of a removed node.
+     */
+    static final Object TOMBSTONE = new Object();
+    private static final Object[] NO_CHILDREN = new Object[0];
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<Node, Object> CHILDREN =
+            AtomicReferenceFieldUpdater.newUpdater(Node.class, Object.class, "children");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<Node, Object> VALUE =
+            AtomicReferenceFieldUpdater.newUpdater(Node.class, Object.class, "value");
+
+    final Node<K> root = new Node<>(null);
+    final LongAdder size = new LongAdder();
+    /**
+     * Children of a node are kept in a copy on write array until there are
+     * more than this many of them.
+     */
+    final int arrayChildLimit;
+
+    public ConcurrentTrieMap() {
+        this(32);
+    }
+
+    /**
+     * @param arrayChildLimit max fan-out kept in a copy on write array before
+     * the children of a node are promoted to a ConcurrentSkipListMap.
+     */
+    public ConcurrentTrieMap(int arrayChildLimit) {
+        this.arrayChildLimit = arrayChildLimit;
+    }
+
+    /**
+     * Node of the trie. children is either a sorted Object[] of Nodes, a
+     * ConcurrentSkipListMap from partial key to Node or REMOVED. value is
+     * null, the value or TOMBSTONE.
+     */
+    static final class Node<K extends Comparable<K>> {
+        final K partialKey;
+        volatile Object value;
+        volatile Object children = NO_CHILDREN;
+
+        Node(K partialKey) {
+            this.partialKey = partialKey;
+        }
+    }
+
+    // ---------------- child index ----------------
+
+    /**
+     * @param children sorted array of nodes.
+     * @return index of the key if found else (-(insertion point) - 1).
+     */
+    @SuppressWarnings("unchecked")
+    private static <K extends Comparable<K>> int indexOf(Object[] children, K partialKey) {
+        int lo = 0;
+        int hi = children.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = ((Node<K>) children[mid]).partialKey.compareTo(partialKey);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    /**
+     * Lock free lookup.
+     * @return child or null.
+     */
+    @SuppressWarnings("unchecked")
+    Node<K> getChild(Node<K> node, K partialKey) {
+        Object c = node.children;
+        if (c instanceof Object[]) {
+            Object[] arr = (Object[]) c;
+            int i = indexOf(arr, partialKey);
+            return i >= 0 ? (Node<K>) arr[i] : null;
+        }
+        if (c == REMOVED) {
+            return null;
+        }
+        return ((ConcurrentSkipListMap<K, Node<K>>) c).get(partialKey);
+    }
+
+    /**
+     * @return the existing or newly added child, null when node has been
+     * removed meanwhile(the caller has to start over).
+     */
+    @SuppressWarnings("unchecked")
+    Node<K> getOrAddChild(Node<K> node, K partialKey) {
+        Node<K> created = null;
+        while (true) {
+            Object c = node.children;
+            if (c == REMOVED) {
+                return null;
+            }
+            if (c instanceof Object[]) {
+                Object[] arr = (Object[]) c;
+                int i = indexOf(arr, partialKey);
+                if (i >= 0) {
+                    return (Node<K>) arr[i];
+                }
+                if (created == null) {
+                    created = new Node<>(partialKey);
+                }
+                Object replacement;
+                if (arr.length < arrayChildLimit) {
+                    i = -(i + 1);
+                    Object[] grown = new Object[arr.length + 1];
+                    System.arraycopy(arr, 0, grown, 0, i);
+                    grown[i] = created;
+                    System.arraycopy(arr, i, grown, i + 1, arr.length - i);
+                    replacement = grown;
+                } else {
+                    ConcurrentSkipListMap<K, Node<K>> map = new ConcurrentSkipListMap<>();
+                    for (Object o : arr) {
+                        map.put(((Node<K>) o).partialKey, (Node<K>) o);
+                    }
+                    map.put(partialKey, created);
+                    replacement = map;
+                }
+                if (CHILDREN.compareAndSet(node, c, replacement)) {
+                    return created;
+                }
+                continue;// Lost the race, look again.
+            }
+            ConcurrentSkipListMap<K, Node<K>> map = (ConcurrentSkipListMap<K, Node<K>>) c;
+            Node<K> existing = map.get(partialKey);
+            if (existing != null) {
+                return existing;
+            }
+            if (created == null) {
+                created = new Node<>(partialKey);
+            }
+            existing = map.putIfAbsent(partialKey, created);
+            if (node.children == REMOVED) {// Sealed while we were adding.
+                return null;
+            }
+            return existing != null ? existing : created;
+        }
+    }
+
+    /**
+     * Unlinks child from node.
+     * @return true if this call did the unlinking.
+     */
+    @SuppressWarnings("unchecked")
+    private boolean removeChild(Node<K> node, Node<K> child) {
+        while (true) {
+            Object c = node.children;
+            if (c == REMOVED) {
+                return false;
+            }
+            if (c instanceof Object[]) {
+                Object[] arr = (Object[]) c;
+                int i = indexOf(arr, child.partialKey);
+                if (i < 0 || arr[i] != child) {
+                    return false;
+                }
+                Object[] shrunk = new Object[arr.length - 1];
+                System.arraycopy(arr, 0, shrunk, 0, i);
+                System.arraycopy(arr, i + 1, shrunk, i, arr.length - i - 1);
+                if (CHILDREN.compareAndSet(node, c, shrunk)) {
+                    return true;
+                }
+                continue;
+            }
+            return ((ConcurrentSkipListMap<K, Node<K>>) c).remove(child.partialKey, child);
+        }
+    }
+
+    // ---------------- values ----------------
+
+    /**
+     * Sets the value, the previous value is returned as is(null, a value or
+     * TOMBSTONE in which case nothing was set).
+     */
+    Object setValue(Node<K> node, V value, boolean onlyIfNull) {
+        while (true) {
+            Object old = node.value;
+            if (old == TOMBSTONE || (onlyIfNull && old != null)) {
+                return old;
+            }
+            if (VALUE.compareAndSet(node, old, value)) {
+                if (old == null && value != null) {
+                    size.increment();
+                } else if (old != null && value == null) {
+                    size.decrement();
+                }
+                return old;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    V valueOf(Node<K> node) {
+        Object v = node.value;
+        return v == TOMBSTONE ? null : (V) v;
+    }
+
+    private void put(K[] key, int sI, int eI, V value, boolean onlyIfNull) {
+        while (true) {
+            Node<K> cur = root;
+            for (int i = sI; i < eI && cur != null; i++) {
+                cur = getOrAddChild(cur, key[i]);
+            }
+            if (cur != null && setValue(cur, value, onlyIfNull) != TOMBSTONE) {
+                return;
+            }
+            // A node on the path was removed concurrently, start over.
+        }
+    }
+
+    Node<K> find(K[] key, int sI, int eI) {
+        Node<K> cur = root;
+        for (int i = sI; i < eI && cur != null; i++) {
+            cur = getChild(cur, key[i]);
+        }
+        return cur;
+    }
+
+    // ---------------- public API ----------------
+
+    /**
+     * Used for both adding and updating. sI and eI are the number of elements
+     * from key which should be considered as key. The value is added to the tail.
+     * @param key
+     * @param sI (start index)
+     * @param eI (end index)
+     * @param value
+     */
+    public void add(K[] key, int sI, int eI, V value) {
+        put(key, sI, eI, value, false);
+    }
+
+    /**
+     * Same as add() method but sets the value only when it is the first time,
+     * atomically.
+     * @param key
+     * @param sI (start index)
+     * @param eI (end index)
+     * @param value
+     */
+    public void addIfNull(K[] key, int sI, int eI, V value) {
+        put(key, sI, eI, value, true);
+    }
+
+    /**
+     * Check if key exists. Lock free.
+     * @param key
+     * @param sI
+     * @param eI
+     * @return
+     */
+    public boolean contains(K[] key, int sI, int eI) {
+        return find(key, sI, eI) != null;
+    }
+
+    /**
+     * Return value corresponding to key if exists else null is returned. Lock free.
+     * @param key
+     * @param sI
+     * @param eI
+     * @return
+     */
+    public V get(K[] key, int sI, int eI) {
+        Node<K> node = find(key, sI, eI);
+        return node == null ? null : valueOf(node);
+    }
+
+    /**
+     * If key if exists delete it and all the keys it is a prefix of(wild card
+     * remove, as in TrieMap).
+     * @param key
+     * @param sI
+     * @param eI
+     * @return true if this call removed the key.
+     */
+    @SuppressWarnings("unchecked")
+    public boolean remove(K[] key, int sI, int eI) {
+        if (sI >= eI) {
+            return false;
+        }
+        Node<K> parent = find(key, sI, eI - 1);
+        if (parent == null) {
+            return false;
+        }
+        Node<K> node = getChild(parent, key[eI - 1]);
+        if (node == null || !removeChild(parent, node)) {
+            return false;
+        }
+        ArrayDeque<Node<K>> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {// Seal the detached subtree top down.
+            Node<K> cur = stack.pop();
+            Object c = CHILDREN.getAndSet(cur, REMOVED);
+            if (c instanceof Object[]) {
+                for (Object o : (Object[]) c) {
+                    stack.push((Node<K>) o);
+                }
+            } else if (c != REMOVED) {
+                for (Node<K> n : ((ConcurrentSkipListMap<K, Node<K>>) c).values()) {
+                    stack.push(n);
+                }
+            }
+            Object old = VALUE.getAndSet(cur, TOMBSTONE);
+            if (old != null && old != TOMBSTONE) {
+                size.decrement();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Number of trie entries, exact once writers quiesce.
+     * @return
+     */
+    public int size() {
+        return (int) size.sum();
+    }
+
+    public void add(K[] key, V value) {
+        add(key, 0, key.length, value);
+    }
+    public void addIfNull(K[] key, V value) {
+        addIfNull(key, 0, key.length, value);
+    }
+    public boolean contains(K[] key) {
+        return contains(key, 0, key.length);
+    }
+    public V get(K[] key) {
+        return get(key, 0, key.length);
+    }
+    public boolean remove(K[] key) {
+        return remove(key, 0, key.length);
+    }
+
+    public void printKeyValueEntries() {
+        iterEntries(root, new ArrayList<K>(), null);
+    }
+
+    /**
+     * Weakly consistent snapshot of the entries, it may or may not reflect
+     * writes which happen while it is taken.
+     * @return
+     */
+    public Map<List<K>, V> getKeyValueEntries() {
+        Map<List<K>, V> keyListAndValues = new HashMap<>();
+        iterEntries(root, new ArrayList<K>(), keyListAndValues);
+        return keyListAndValues;
+    }
+
+    /**
+     * Recursive in nature. Prints when out is null.
+     */
+    @SuppressWarnings("unchecked")
+    private void iterEntries(Node<K> node, List<K> path, Map<List<K>, V> out) {
+        Object c = node.children;
+        Iterable<?> children;
+        if (c instanceof Object[]) {
+            children = Arrays.asList((Object[]) c);
+        } else if (c == REMOVED) {
+            return;
+        } else {
+            children = ((ConcurrentSkipListMap<K, Node<K>>) c).values();
+        }
+        for (Object o : children) {
+            Node<K> child = (Node<K>) o;
+            path.add(child.partialKey);
+            V value = valueOf(child);
+            if (value != null) {
+                if (out == null) {
+                    System.out.println(path + "," + value);
+                } else {
+                    out.put(new ArrayList<>(path), value);
+                }
+            }
+            iterEntries(child, path, out);
+            path.remove(path.size() - 1);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap;
+
+/**
+ * Count-min sketch over 64 bit key hashes: depth rows of width counters, an
+ * add bumps one counter per row and an estimate is the smallest of them. An
+ * estimate never undercounts and overcounts by at most about
+ * e / width * totalCount() with probability 1 - exp(-depth). Memory is fixed
+ * at width * depth longs.
+ *
+ * @author srikalyc
+ */
+public class CountMinSketch {
+
+    private final long[][] rows;
+    private final int width;
+    private long totalCount = 0;
+
+    /**
+     * @param width counters per row, the error shrinks with it.
+     * @param depth number of rows, the error probability shrinks with it.
+     */
+    public CountMinSketch(int width, int depth) {
+        if (width < 1 || depth < 1) {
+            throw new IllegalArgumentException("width and depth must be at least 1, got " + width + ", " + depth);
+        }
+        this.width = width;
+        this.rows = new long[depth][width];
+    }
+
+    /**
+     * splitmix64 finalizer, spreads the row seed into the hash.
+     */
+    private static long mix(long h) {
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+
+    private int slot(long hash, int row) {
+        return (int) ((mix(hash + row * 0x9E3779B97F4A7C15L) >>> 1) % width);
+    }
+
+    /**
+     * @param hash
+     * @param count
+     */
+    public void add(long hash, long count) {
+        for (int r = 0; r < rows.length; r++) {
+            rows[r][slot(hash, r)] += count;
+        }
+        totalCount += count;
+    }
+
+    /**
+     * @param hash
+     * @return estimated count of hash.
+     */
+    public long estimate(long hash) {
+        long min = Long.MAX_VALUE;
+        for (int r = 0; r < rows.length; r++) {
+            min = Math.min(min, rows[r][slot(hash, r)]);
+        }
+        return min;
+    }
+
+    /**
+     * @return sum of all the counts added.
+     */
+    public long totalCount() {
+        return totalCount;
+    }
+}
@@ -0,0 +1,352 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, read optimized trie built in one pass from keys given in sorted
+ * order. The nodes are laid out level by level(breadth first, the same order
+ * a LOUDS encoding uses) in a handful of flat arrays, so the children of a
+ * node are contiguous and found by binary search, and there are no per node
+ * objects at all. get/contains have the same signatures as in TrieMap.
+ *
+ * Build with a Builder(keys in ascending lexicographic order, a key sorts
+ * before its extensions) or copy an existing TrieMap with copyOf().
+ *
+ * @author srikalyc
+ * @param <K>
+ * @param <V> value type.
+ */
+public class FrozenTrieMap<K extends Comparable<K>, V> {
+
+    /**
+     * Node 0 is the root, all other nodes follow level by level.
+     */
+    final Object[] labels;
+    final Object[] values;
+    final int[] firstChild;
+    final int[] childCount;
+    final int size;
+
+    private FrozenTrieMap(Object[] labels, Object[] values, int[] firstChild, int[] childCount, int size) {
+        this.labels = labels;
+        this.values = values;
+        this.firstChild = firstChild;
+        this.childCount = childCount;
+        this.size = size;
+    }
+
+    /**
+     * Binary search among the children of node.
+     * @return child node or -1.
+     */
+    @SuppressWarnings("unchecked")
+    int child(int node, K partialKey) {
+        int lo = firstChild[node];
+        int hi = lo + childCount[node] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = ((K) labels[mid]).compareTo(partialKey);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int find(K[] key, int sI, int eI) {
+        int node = 0;
+        for (int i = sI; i < eI && node != -1; i++) {
+            node = child(node, key[i]);
+        }
+        return node;
+    }
+
+    /**
+     * Check if key exists.
+     * @param key
+     * @param sI
+     * @param eI
+     * @return
+     */
+    public boolean contains(K[] key, int sI, int eI) {
+        return find(key, sI, eI) != -1;
+    }
+
+    /**
+     * Return value corresponding to key if exists else null is returned.
+     * @param key
+     * @param sI
+     * @param eI
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public V get(K[] key, int sI, int eI) {
+        int node = find(key, sI, eI);
+        return node == -1 ? null : (V) values[node];
+    }
+
+    public boolean contains(K[] key) {
+        return contains(key, 0, key.length);
+    }
+
+    public V get(K[] key) {
+        return get(key, 0, key.length);
+    }
+
+    /**
+     * Number of trie entries.
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    public void printKeyValueEntries() {
+        iterEntries(0, new ArrayList<K>(), null);
+    }
+
+    public Map<List<K>, V> getKeyValueEntries() {
+        Map<List<K>, V> keyListAndValues = new HashMap<>();
+        iterEntries(0, new ArrayList<K>(), keyListAndValues);
+        return keyListAndValues;
+    }
+
+    /**
+     * Depth first with an explicit stack(next and end child per level), so
+     * long keys cannot overflow the thread stack. Prints when out is null.
+     */
+    @SuppressWarnings("unchecked")
+    private void iterEntries(int node, List<K> path, Map<List<K>, V> out) {
+        int[] next = new int[16];
+        int[] end = new int[16];
+        int depth = 0;
+        next[0] = firstChild[node];
+        end[0] = next[0] + childCount[node];
+        while (depth >= 0) {
+            if (next[depth] == end[depth]) {
+                if (depth-- > 0) {
+                    path.remove(path.size() - 1);
+                }
+                continue;
+            }
+            int c = next[depth]++;
+            path.add((K) labels[c]);
+            if (values[c] != null) {
+                if (out == null) {
+                    System.out.println(path + "," + values[c]);
+                } else {
+                    out.put(new ArrayList<>(path), (V) values[c]);
+                }
+            }
+            if (++depth == next.length) {
+                next = Arrays.copyOf(next, depth * 2);
+                end = Arrays.copyOf(end, depth * 2);
+            }
+            next[depth] = firstChild[c];
+            end[depth] = next[depth] + childCount[c];
+        }
+    }
+
+    /**
+     * Freezes a copy of trie. TrieMap iterates in key order already, so no
+     * sorting is needed.
+     * @param trie
+     * @return
+     */
+    public static <K extends Comparable<K>, V> FrozenTrieMap<K, V> copyOf(TrieMap<K, V> trie) {
+        Builder<K, V> builder = new Builder<>();
+        Object[] path = new Object[16];
+        // One child iterator per level, the depth of a node is the stack size.
+        ArrayDeque<Iterator<TrieMap<K, V>.TrieNode>> stack = new ArrayDeque<>();
+        if (trie.root.child != null) {
+            stack.push(trie.root.child.iterator());
+        }
+        while (!stack.isEmpty()) {
+            Iterator<TrieMap<K, V>.TrieNode> iter = stack.peek();
+            if (!iter.hasNext()) {
+                stack.pop();
+                continue;
+            }
+            TrieMap<K, V>.TrieNode c = iter.next();
+            int depth = stack.size() - 1;
+            if (depth == path.length) {
+                path = Arrays.copyOf(path, depth * 2);
+            }
+            path[depth] = c.partialKey;
+            if (c.value != null) {
+                builder.append(path, 0, depth + 1, c.value);
+            }
+            if (c.child != null) {
+                stack.push(c.child.iterator());
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Builds a FrozenTrieMap from keys given in ascending order. Nodes are
+     * appended to per level arrays as they are first seen: with sorted input
+     * every level is produced in breadth first order already and the children
+     * of a node end up contiguous in the next level.
+     */
+    public static class Builder<K extends Comparable<K>, V> {
+        private final List<Level> levels = new ArrayList<>();
+        /**
+         * pathIdx[d] is the index, within level d, of the node at depth d of
+         * the previous key(depth 0 is the root).
+         */
+        private int[] pathIdx = new int[16];
+        private Object[] prev = new Object[16];
+        private int prevLength = -1;
+        private Object rootValue;
+        private int rootChildren = 0;
+        private int size = 0;
+
+        /**
+         * One level of the trie, struct of arrays.
+         */
+        private static class Level {
+            Object[] labels = new Object[16];
+            Object[] values = new Object[16];
+            int[] childStart = new int[16];
+            int[] childCount = new int[16];
+            int n = 0;
+
+            int append(Object label) {
+                if (n == labels.length) {
+                    int cap = n * 2;
+                    labels = Arrays.copyOf(labels, cap);
+                    values = Arrays.copyOf(values, cap);
+                    childStart = Arrays.copyOf(childStart, cap);
+                    childCount = Arrays.copyOf(childCount, cap);
+                }
+                labels[n] = label;
+                return n++;
+            }
+        }
+
+        /**
+         * Adds the next key, which must not sort before the previous one.
+         * Adding the previous key again replaces its value.
+         * @param key
+         * @param sI
+         * @param eI
+         * @param value
+         * @return this builder.
+         */
+        public Builder<K, V> add(K[] key, int sI, int eI, V value) {
+            append(key, sI, eI, value);
+            return this;
+        }
+
+        public Builder<K, V> add(K[] key, V value) {
+            return add(key, 0, key.length, value);
+        }
+
+        @SuppressWarnings("unchecked")
+        void append(Object[] key, int sI, int eI, V value) {
+            int length = eI - sI;
+            int common = 0;
+            if (prevLength >= 0) {
+                int max = Math.min(length, prevLength);
+                while (common < max && ((K) prev[common]).compareTo((K) key[sI + common]) == 0) {
+                    common++;
+                }
+                boolean ascending = common == prevLength
+                        || (common < length && ((K) prev[common]).compareTo((K) key[sI + common]) < 0);
+                if (!ascending) {
+                    throw new IllegalArgumentException("Keys must be added in ascending order");
+                }
+            }
+            if (length >= pathIdx.length) {
+                pathIdx = Arrays.copyOf(pathIdx, length * 2);
+                prev = Arrays.copyOf(prev, length * 2);
+            }
+            for (int d = common + 1; d <= length; d++) {
+                while (levels.size() < d) {
+                    levels.add(new Level());
+                }
+                Level level = levels.get(d - 1);
+                int idx = level.append(key[sI + d - 1]);
+                if (d == 1) {
+                    rootChildren++;
+                } else {
+                    Level parent = levels.get(d - 2);
+                    int p = pathIdx[d - 1];
+                    if (parent.childCount[p] == 0) {
+                        parent.childStart[p] = idx;
+                    }
+                    parent.childCount[p]++;
+                }
+                pathIdx[d] = idx;
+            }
+            System.arraycopy(key, sI + common, prev, common, length - common);
+            prevLength = length;
+            Object old;
+            if (length == 0) {
+                old = rootValue;
+                rootValue = value;
+            } else {
+                Level level = levels.get(length - 1);
+                old = level.values[pathIdx[length]];
+                level.values[pathIdx[length]] = value;
+            }
+            if (old == null && value != null) {
+                size++;
+            } else if (old != null && value == null) {
+                size--;
+            }
+        }
+
+        /**
+         * @return the frozen trie, the builder should not be used afterwards.
+         */
+        public FrozenTrieMap<K, V> build() {
+            int total = 1;
+            int[] levelOffset = new int[levels.size() + 1];
+            for (int d = 0; d < levels.size(); d++) {
+                levelOffset[d] = total;
+                total += levels.get(d).n;
+            }
+            levelOffset[levels.size()] = total;
+            Object[] labels = new Object[total];
+            Object[] values = new Object[total];
+            int[] firstChild = new int[total];
+            int[] childCount = new int[total];
+            values[0] = rootValue;
+            firstChild[0] = 1;
+            childCount[0] = rootChildren;
+            for (int d = 0; d < levels.size(); d++) {
+                Level level = levels.get(d);
+                int base = levelOffset[d];
+                System.arraycopy(level.labels, 0, labels, base, level.n);
+                System.arraycopy(level.values, 0, values, base, level.n);
+                for (int i = 0; i < level.n; i++) {
+                    firstChild[base + i] = levelOffset[d + 1] + level.childStart[i];
+                    childCount[base + i] = level.childCount[i];
+                }
+            }
+            return new FrozenTrieMap<>(labels, values, firstChild, childCount, size);
+        }
+    }
+}
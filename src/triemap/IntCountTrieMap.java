@@ -0,0 +1,864 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counting trie over primitive int arrays. Unlike NumTrieMap nothing is boxed:
+ * nodes are plain int ids into parallel arrays, the children of a node are
+ * kept in two parallel sorted int[] arrays(partial keys and child ids) and
+ * counts are primitive longs. Incrementing a path which already exists does
+ * not allocate at all. IntTrieMap is the NumTrieMap<Integer> flavour, with
+ * int[] overloads that box.
+ * @author srikalyc
+ */
+public class IntCountTrieMap {
+    static final int ROOT = 0;
+    static final int NONE = -1;
+    private static final int[] EMPTY = new int[0];
+
+    int[] partialKeys;
+    long[] counts;
+    boolean[] valued;
+    int[][] childKeys;
+    int[][] childIds;
+    int[] childCounts;
+    /**
+     * Next unused node id, nodes released by remove() are chained through
+     * childCounts starting from freeHead and reused first.
+     */
+    int nodeCount = 1;
+    int freeHead = NONE;
+    int freeCount = 0;
+    int size = 0;
+    /**
+     * Bumped whenever nodes are released, node ids held outside(ingestors)
+     * are stale after that.
+     */
+    int releaseVersion = 0;
+    /**
+     * Receives the counts of pruned entries, may be null.
+     */
+    CountMinSketch sketch;
+    /**
+     * Max live nodes before prune() runs on its own, 0 for no limit.
+     */
+    int nodeBudget = 0;
+    long autoThreshold = 2;
+
+    /**
+     * Receives the stored keys which are prefixes of a query, shortest first.
+     * end is the end index(exclusive) of the prefix in the query array.
+     */
+    public interface PrefixMatchVisitor {
+        void visit(int end, long count);
+    }
+
+    public IntCountTrieMap() {
+        this(1024);
+    }
+
+    /**
+     * @param initialNodes number of nodes to allocate room for up front.
+     */
+    public IntCountTrieMap(int initialNodes) {
+        int n = Math.max(initialNodes, 2);
+        partialKeys = new int[n];
+        counts = new long[n];
+        valued = new boolean[n];
+        childKeys = new int[n][];
+        childIds = new int[n][];
+        childCounts = new int[n];
+        childKeys[ROOT] = EMPTY;
+        childIds[ROOT] = EMPTY;
+    }
+
+    /**
+     * Binary search among the children of node.
+     * @param node
+     * @param partialKey
+     * @return position of the key if found else (-(insertion point) - 1).
+     */
+    int indexOf(int node, int partialKey) {
+        int[] keys = childKeys[node];
+        int lo = 0;
+        int hi = childCounts[node] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int k = keys[mid];
+            if (k < partialKey) {
+                lo = mid + 1;
+            } else if (k > partialKey) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    /**
+     * @param node
+     * @param partialKey
+     * @return child id or NONE.
+     */
+    int child(int node, int partialKey) {
+        int i = indexOf(node, partialKey);
+        return i >= 0 ? childIds[node][i] : NONE;
+    }
+
+    /**
+     * @param node
+     * @param partialKey
+     * @return child id, the child is created if it does not exist yet.
+     */
+    int childOrAdd(int node, int partialKey) {
+        int i = indexOf(node, partialKey);
+        if (i >= 0) {
+            return childIds[node][i];
+        }
+        i = -(i + 1);
+        int id = newNode(partialKey);
+        int n = childCounts[node];
+        int[] keys = childKeys[node];
+        int[] ids = childIds[node];
+        if (n == keys.length) {
+            int cap = Math.max(2, n * 2);
+            keys = Arrays.copyOf(keys, cap);
+            ids = Arrays.copyOf(ids, cap);
+            childKeys[node] = keys;
+            childIds[node] = ids;
+        }
+        System.arraycopy(keys, i, keys, i + 1, n - i);
+        System.arraycopy(ids, i, ids, i + 1, n - i);
+        keys[i] = partialKey;
+        ids[i] = id;
+        childCounts[node] = n + 1;
+        return id;
+    }
+
+    private int newNode(int partialKey) {
+        int id;
+        if (freeHead != NONE) {
+            id = freeHead;
+            freeHead = childCounts[id];
+            freeCount--;
+        } else {
+            if (nodeCount == partialKeys.length) {
+                grow();
+            }
+            id = nodeCount++;
+        }
+        partialKeys[id] = partialKey;
+        counts[id] = 0;
+        valued[id] = false;
+        childCounts[id] = 0;
+        if (childKeys[id] == null) {
+            childKeys[id] = EMPTY;
+            childIds[id] = EMPTY;
+        }
+        return id;
+    }
+
+    private void grow() {
+        int cap = partialKeys.length * 2;
+        partialKeys = Arrays.copyOf(partialKeys, cap);
+        counts = Arrays.copyOf(counts, cap);
+        valued = Arrays.copyOf(valued, cap);
+        childKeys = Arrays.copyOf(childKeys, cap);
+        childIds = Arrays.copyOf(childIds, cap);
+        childCounts = Arrays.copyOf(childCounts, cap);
+    }
+
+    private void addTo(int node, long value) {
+        if (!valued[node]) {
+            valued[node] = true;
+            size++;// Only when a key gets its first value increase the size.
+        }
+        counts[node] += value;
+    }
+
+    /**
+     * @return node id at the end of the path or NONE.
+     */
+    int find(int[] key, int sI, int eI) {
+        int node = ROOT;
+        for (int i = sI; i < eI && node != NONE; i++) {
+            node = child(node, key[i]);
+        }
+        return node;
+    }
+
+    /**
+     * Used for both adding and updating. sI and eI are the number of elements
+     * from key which should be considered as key. The value is added to the tail.
+     * The current value is added by given "value".
+     *
+     * @param key
+     * @param sI (start index)
+     * @param eI (end index)
+     * @param value
+     */
+    public void inc(int[] key, int sI, int eI, int value) {
+        int node = ROOT;
+        for (int i = sI; i < eI; i++) {
+            node = childOrAdd(node, key[i]);
+        }
+        addTo(node, value);
+        checkBudget();
+    }
+
+    /**
+     * Used for both adding and updating. sI and eI are the number of elements
+     * from key which should be considered as key. The value is added all along
+     * the path until the tail(all the prefixes of the key have values set now).
+     * If there are 'm' elements in key then this method is O(m) in time.
+     * The current value along the path is added by given "value".
+     * @param key
+     * @param sI
+     * @param eI
+     * @param value
+     */
+    public void incPrefixes(int[] key, int sI, int eI, int value) {
+        int node = ROOT;
+        for (int i = sI; i < eI; i++) {
+            node = childOrAdd(node, key[i]);
+            addTo(node, value);
+        }
+        checkBudget();
+    }
+
+    /**
+     * Used for both adding and updating. sI and eI are the number of elements
+     * from key which should be considered as key. The value is added all along
+     * the path until the tail(all the prefixes and suffixes of the key have
+     * values set now). Each current value is added by given "value".
+     * If there are 'm' elements in key then this method is O(m2) in time.
+     * @param key
+     * @param sI
+     * @param eI
+     * @param value
+     */
+    public void incAll(int[] key, int sI, int eI, int value) {
+        for (int i = sI; i < eI; i++) {
+            incPrefixes(key, i, eI, value);// Add the suffixes to the path.
+        }
+    }
+
+    /**
+     * Windowed incAll(): only the substrings of at most maxLen elements are
+     * counted, each gets the same count incAll() would give it. Every start
+     * position walks at most maxLen nodes, so a key of 'm' elements costs
+     * O(m * maxLen) instead of O(m2).
+     * @param key
+     * @param sI
+     * @param eI
+     * @param value
+     * @param maxLen longest substring to count, at least 1.
+     */
+    public void incAll(int[] key, int sI, int eI, int value, int maxLen) {
+        if (maxLen < 1) {
+            throw new IllegalArgumentException("maxLen must be at least 1, got " + maxLen);
+        }
+        for (int i = sI; i < eI; i++) {
+            incPrefixes(key, i, Math.min(eI, i + maxLen), value);// Suffixes cut at the window.
+        }
+    }
+
+    /**
+     * Increments a whole batch of keys given in one flat array: key j is
+     * flatKeys[offsets[j]..offsets[j + 1]) and gets deltas[j] added to it.
+     * The batch is put in key order and every key starts from the path of the
+     * previous one at their common prefix instead of descending from the root,
+     * which pays off for prefix clustered bulk loads. An empty key counts on
+     * the root, as with inc().
+     *
+     * @param flatKeys
+     * @param offsets start of every key plus the end of the last one(length n + 1).
+     * @param deltas
+     */
+    public void incBatch(final int[] flatKeys, final int[] offsets, int[] deltas) {
+        int n = offsets.length - 1;
+        Comparator<Integer> byKey = new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int i = offsets[a];
+                int j = offsets[b];
+                int aEnd = offsets[a + 1];
+                int bEnd = offsets[b + 1];
+                for (; i < aEnd && j < bEnd; i++, j++) {
+                    if (flatKeys[i] != flatKeys[j]) {
+                        return flatKeys[i] < flatKeys[j] ? -1 : 1;
+                    }
+                }
+                return (aEnd - offsets[a]) - (bEnd - offsets[b]);
+            }
+        };
+        Integer[] order = new Integer[n];
+        boolean sorted = true;
+        for (int j = 0; j < n; j++) {
+            order[j] = j;
+            if (j > 0 && sorted && byKey.compare(j - 1, j) > 0) {
+                sorted = false;
+            }
+        }
+        if (!sorted) {
+            Arrays.sort(order, byKey);
+        }
+        int[] path = new int[16];// path[d] is the node of the previous key's first d elements.
+        path[0] = ROOT;
+        int prev = -1;
+        for (int o : order) {
+            int start = offsets[o];
+            int length = offsets[o + 1] - start;
+            int common = 0;
+            if (prev != -1) {
+                int prevStart = offsets[prev];
+                int max = Math.min(length, offsets[prev + 1] - prevStart);
+                while (common < max && flatKeys[prevStart + common] == flatKeys[start + common]) {
+                    common++;
+                }
+            }
+            if (length >= path.length) {
+                path = Arrays.copyOf(path, length * 2);
+            }
+            int node = path[common];
+            for (int d = common; d < length; d++) {
+                node = childOrAdd(node, flatKeys[start + d]);
+                path[d + 1] = node;
+            }
+            addTo(node, deltas[o]);
+            prev = o;
+        }
+        checkBudget();
+    }
+
+    /**
+     * Return value corresponding to key if exists else 0 is returned(or the
+     * estimate of the overflow sketch for keys which have been pruned).
+     *
+     * @param key
+     * @param sI
+     * @param eI
+     * @return
+     */
+    public long get(int[] key, int sI, int eI) {
+        int node = find(key, sI, eI);
+        if (node != NONE && valued[node]) {
+            return counts[node];
+        }
+        return sketch == null ? 0 : sketch.estimate(hash(key, sI, eI));
+    }
+
+    /**
+     * Check if key exists.
+     *
+     * @param key
+     * @param sI
+     * @param eI
+     * @return
+     */
+    public boolean contains(int[] key, int sI, int eI) {
+        return find(key, sI, eI) != NONE;
+    }
+
+    /**
+     * Longest stored key which is a prefix of key[sI..eI)(or all of it), in
+     * a single descent. A count on the empty key matches at sI.
+     * @param key
+     * @param sI
+     * @param eI
+     * @return end index(exclusive) of the match in key, -1 if there is none.
+     */
+    public int longestPrefixMatch(int[] key, int sI, int eI) {
+        int match = valued[ROOT] ? sI : -1;
+        int node = ROOT;
+        for (int i = sI; i < eI; i++) {
+            node = child(node, key[i]);
+            if (node == NONE) {
+                break;
+            }
+            if (valued[node]) {
+                match = i + 1;
+            }
+        }
+        return match;
+    }
+
+    /**
+     * Calls visitor for every stored key which is a prefix of key[sI..eI)(or
+     * all of it), shortest first, in a single descent. A count on the empty
+     * key is visited first, with end sI.
+     * @param key
+     * @param sI
+     * @param eI
+     * @param visitor
+     */
+    public void forEachPrefixMatch(int[] key, int sI, int eI, PrefixMatchVisitor visitor) {
+        int node = ROOT;
+        if (valued[ROOT]) {
+            visitor.visit(sI, counts[ROOT]);
+        }
+        for (int i = sI; i < eI; i++) {
+            node = child(node, key[i]);
+            if (node == NONE) {
+                return;
+            }
+            if (valued[node]) {
+                visitor.visit(i + 1, counts[node]);
+            }
+        }
+    }
+
+    /**
+     * If key if exists delete it along with all the keys it is a prefix of
+     * (wild card remove, same as TrieMap.remove()). The nodes are reused by
+     * later increments.
+     * @param key
+     * @param sI
+     * @param eI
+     * @return
+     */
+    public boolean remove(int[] key, int sI, int eI) {
+        if (sI >= eI) {
+            return false;
+        }
+        int parent = find(key, sI, eI - 1);
+        if (parent == NONE) {
+            return false;
+        }
+        int i = indexOf(parent, key[eI - 1]);
+        if (i < 0) {
+            return false;
+        }
+        int node = childIds[parent][i];
+        int n = childCounts[parent];
+        System.arraycopy(childKeys[parent], i + 1, childKeys[parent], i, n - i - 1);
+        System.arraycopy(childIds[parent], i + 1, childIds[parent], i, n - i - 1);
+        childCounts[parent] = n - 1;
+        release(node);
+        releaseVersion++;
+        return true;
+    }
+
+    /**
+     * Puts the whole subtree on the free list, iteratively.
+     */
+    private void release(int node) {
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = node;
+        while (top > 0) {
+            int cur = stack[--top];
+            for (int c = 0; c < childCounts[cur]; c++) {
+                if (top == stack.length) {
+                    stack = Arrays.copyOf(stack, top * 2);
+                }
+                stack[top++] = childIds[cur][c];
+            }
+            if (valued[cur]) {
+                size--;
+            }
+            valued[cur] = false;
+            counts[cur] = 0;
+            free(cur);
+        }
+    }
+
+    private void free(int node) {
+        childCounts[node] = freeHead;// Reused as the free list link.
+        freeHead = node;
+        freeCount++;
+    }
+
+    /**
+     * Drops every entry whose count is below threshold and releases the nodes
+     * which are left without entries below them. With an overflow sketch the
+     * dropped counts go to it, so get() keeps returning an estimate for them
+     * (a pruned key which comes back starts from its new increments in the
+     * trie, until it is pruned again).
+     * @param threshold
+     * @return number of entries dropped.
+     */
+    public int prune(long threshold) {
+        int before = size;
+        pruneBelow(ROOT, 0, threshold);
+        releaseVersion++;
+        return before - size;
+    }
+
+    /**
+     * Post order over the subtree of node with an explicit stack, so key
+     * length is not limited by the thread stack. A node is finished once all
+     * its children are: the children left without entries are freed, the
+     * others are compacted to the front of its child arrays.
+     */
+    private void pruneBelow(int node, long hash, long threshold) {
+        int[] nodes = new int[16];
+        long[] hashes = new long[16];
+        int[] next = new int[16];// Position of the child being visited.
+        int[] kept = new int[16];// Children kept so far.
+        nodes[0] = node;
+        hashes[0] = hash;
+        int top = 1;
+        while (top > 0) {
+            int f = top - 1;
+            int cur = nodes[f];
+            if (next[f] < childCounts[cur]) {
+                if (top == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, top * 2);
+                    hashes = Arrays.copyOf(hashes, top * 2);
+                    next = Arrays.copyOf(next, top * 2);
+                    kept = Arrays.copyOf(kept, top * 2);
+                }
+                nodes[top] = childIds[cur][next[f]];
+                hashes[top] = hashStep(hashes[f], childKeys[cur][next[f]]);
+                next[top] = 0;
+                kept[top] = 0;
+                top++;
+                continue;
+            }
+            childCounts[cur] = kept[f];
+            if (valued[cur] && counts[cur] < threshold && cur != ROOT) {
+                if (sketch != null) {
+                    sketch.add(hashes[f], counts[cur]);
+                }
+                valued[cur] = false;
+                counts[cur] = 0;
+                size--;
+            }
+            boolean empty = kept[f] == 0 && !valued[cur] && cur != ROOT;
+            top--;
+            if (top > 0) {
+                int p = top - 1;
+                int parent = nodes[p];
+                int c = next[p]++;
+                if (empty) {
+                    free(cur);
+                } else {
+                    childKeys[parent][kept[p]] = childKeys[parent][c];
+                    childIds[parent][kept[p]++] = cur;
+                }
+            }
+        }
+    }
+
+    /**
+     * Hash of a key extended by partialKey. The added constant makes every
+     * step change the hash, else leading zero partial keys would not count.
+     */
+    static long hashStep(long hash, int partialKey) {
+        return Long.rotateLeft((hash ^ partialKey) * 0x9E3779B97F4A7C15L, 31) + 0x632BE59BD9B4E019L;
+    }
+
+    static long hash(int[] key, int sI, int eI) {
+        long hash = 0;
+        for (int i = sI; i < eI; i++) {
+            hash = hashStep(hash, key[i]);
+        }
+        return hash;
+    }
+
+    /**
+     * Sends the counts of pruned entries to sketch instead of dropping them.
+     * @param sketch null to drop them.
+     */
+    public void setOverflowSketch(CountMinSketch sketch) {
+        this.sketch = sketch;
+    }
+
+    /**
+     * Caps the number of live nodes: once an increment takes it above
+     * maxNodes, prune() runs with a threshold which doubles until at most
+     * 3/4 of maxNodes are left, so memory stays bounded under unbounded
+     * ingestion. The last threshold is kept as the starting point of the next
+     * automatic prune.
+     * @param maxNodes 0 for no limit.
+     */
+    public void setNodeBudget(int maxNodes) {
+        this.nodeBudget = maxNodes;
+        checkBudget();
+    }
+
+    private void checkBudget() {
+        if (nodeBudget > 0 && liveNodes() > nodeBudget) {
+            int target = Math.max(1, nodeBudget / 4 * 3);
+            while (true) {
+                prune(autoThreshold);
+                if (liveNodes() <= target || autoThreshold > Long.MAX_VALUE / 2) {
+                    break;
+                }
+                autoThreshold *= 2;
+            }
+        }
+    }
+
+    /**
+     * Number of nodes in use, the root included.
+     * @return
+     */
+    public int liveNodes() {
+        return nodeCount - freeCount;
+    }
+
+    /**
+     * Number of trie entries(keys which have been incremented).
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Lazy cursor over the entries in key order, any number of them can be
+     * open at a time. The trie must not be modified while they are in use.
+     * @return
+     */
+    public IntTrieCursor cursor() {
+        return new IntTrieCursor(this);
+    }
+
+    public void printKeyValueEntries() {
+        iterEntries(ROOT, new ArrayList<Integer>(), null);
+    }
+
+    /**
+     * Materializes all the entries, boxing is unavoidable here.
+     * @return
+     */
+    public Map<List<Integer>, Long> getKeyValueEntries() {
+        Map<List<Integer>, Long> keyListAndValues = new HashMap<>();
+        iterEntries(ROOT, new ArrayList<Integer>(), keyListAndValues);
+        return keyListAndValues;
+    }
+
+    /**
+     * Recursive in nature. Prints when out is null.
+     */
+    private void iterEntries(int node, List<Integer> path, Map<List<Integer>, Long> out) {
+        for (int c = 0; c < childCounts[node]; c++) {
+            int id = childIds[node][c];
+            path.add(partialKeys[id]);
+            if (valued[id]) {
+                if (out == null) {
+                    System.out.println(path + "," + counts[id]);
+                } else {
+                    out.put(new ArrayList<>(path), counts[id]);
+                }
+            }
+            iterEntries(id, path, out);
+            path.remove(path.size() - 1);
+        }
+    }
+
+    /**
+     * Entire array is used as key.
+     * @param key
+     * @param value
+     */
+    public void inc(int[] key, int value) {
+        inc(key, 0, key.length, value);
+    }
+    /**
+     * Entire array is used as key.
+     * @param key
+     * @param value
+     */
+    public void incPrefixes(int[] key, int value) {
+        incPrefixes(key, 0, key.length, value);
+    }
+    /**
+     * Entire array is used as key.
+     * @param key
+     * @param value
+     */
+    public void incAll(int[] key, int value) {
+        incAll(key, 0, key.length, value);
+    }
+    /**
+     * Entire array is used as key.
+     * @param key
+     * @param value 
+     * @param maxLen
+     */
+    public void incAll(int[] key, int value, int maxLen) {
+        incAll(key, 0, key.length, value, maxLen);
+    }
+    /**
+     * Entire array is used as key.
+     * @param key
+     * @return
+     */
+    public long get(int[] key) {
+        return get(key, 0, key.length);
+    }
+    /**
+     * Entire array is used as key.
+     * @param key
+     * @return
+     */
+    public boolean contains(int[] key) {
+        return contains(key, 0, key.length);
+    }
+    /**
+     * Entire array is used as key.
+     * @param key
+     * @return
+     */
+    public boolean remove(int[] key) {
+        return remove(key, 0, key.length);
+    }
+    /**
+     * Entire array is used as key.
+     * @param key
+     * @return
+     */
+    public int longestPrefixMatch(int[] key) {
+        return longestPrefixMatch(key, 0, key.length);
+    }
+    /**
+     * Entire array is used as key.
+     * @param key
+     * @param visitor
+     */
+    public void forEachPrefixMatch(int[] key, PrefixMatchVisitor visitor) {
+        forEachPrefixMatch(key, 0, key.length, visitor);
+    }
+
+    /**
+     * Counts the n-grams(every run of 1..maxDepth consecutive tokens) of an
+     * unbounded token stream, see NGramIngestor.
+     * @param maxDepth longest n-gram to count, at least 1.
+     * @return 
+     */
+    public NGramIngestor ngramIngestor(int maxDepth) {
+        return new NGramIngestor(maxDepth);
+    }
+
+    /**
+     * Streaming n-gram counter. It keeps the nodes of the n-grams which end at
+     * the last token(active[d] is the node of the last d tokens), so a new
+     * token only steps each of them one level down: O(maxDepth) per token
+     * without descending from the root, and memory independent of the stream
+     * length. Counts end up the same as incAll(stream, 1, maxDepth)(as long
+     * as nothing is pruned). The active nodes are looked up again when
+     * remove() or prune() released nodes.
+     */
+    public class NGramIngestor {
+        private final int[] active;
+        /**
+         * Number of valid entries in active(tokens seen so far, capped).
+         */
+        private int depth = 0;
+        /**
+         * Last tokens(ring buffer) to find the active nodes again after
+         * nodes have been released.
+         */
+        private final int[] recent;
+        private int recentEnd = 0;
+        private int version = releaseVersion;
+
+        NGramIngestor(int maxDepth) {
+            if (maxDepth < 1) {
+                throw new IllegalArgumentException("maxDepth must be at least 1, got " + maxDepth);
+            }
+            active = new int[maxDepth + 1];
+            active[0] = ROOT;
+            recent = new int[maxDepth];
+        }
+
+        /**
+         * Counts the n-grams which end with token.
+         * @param token
+         */
+        public void accept(int token) {
+            if (version != releaseVersion) {
+                relocate();
+            }
+            int top = Math.min(depth + 1, active.length - 1);
+            for (int d = top; d >= 1; d--) {// Deepest first, active[d - 1] is still the old one.
+                int parent = active[d - 1] != NONE ? active[d - 1] : recreate(d - 1);
+                active[d] = childOrAdd(parent, token);
+                addTo(active[d], 1);
+            }
+            depth = top;
+            recent[recentEnd] = token;
+            recentEnd = (recentEnd + 1) % recent.length;
+            checkBudget();
+        }
+
+        /**
+         * Looks the paths of the last tokens up again, the old node ids may
+         * have been released by remove() or prune(). Paths which are gone are left
+         * NONE rather than created empty, accept() recreates the ones it
+         * counts under.
+         */
+        private void relocate() {
+            for (int d = 1; d <= depth; d++) {
+                int node = ROOT;
+                for (int i = d; i >= 1 && node != NONE; i--) {
+                    node = child(node, recent[(recentEnd - i + recent.length) % recent.length]);
+                }
+                active[d] = node;
+            }
+            version = releaseVersion;
+        }
+
+        /**
+         * @return node of the last length tokens, created if missing.
+         */
+        private int recreate(int length) {
+            int node = ROOT;
+            for (int i = length; i >= 1; i--) {
+                node = childOrAdd(node, recent[(recentEnd - i + recent.length) % recent.length]);
+            }
+            active[length] = node;
+            return node;
+        }
+
+        /**
+         * @param tokens
+         * @param sI
+         * @param eI
+         */
+        public void accept(int[] tokens, int sI, int eI) {
+            for (int i = sI; i < eI; i++) {
+                accept(tokens[i]);
+            }
+        }
+
+        /**
+         * Consumes the remaining tokens of buffer.
+         * @param buffer
+         */
+        public void accept(IntBuffer buffer) {
+            while (buffer.hasRemaining()) {
+                accept(buffer.get());
+            }
+        }
+
+        /**
+         * Forgets the tokens seen so far, e.g at a sequence boundary so that
+         * no n-gram spans two sequences.
+         */
+        public void reset() {
+            depth = 0;
+        }
+    }
+}
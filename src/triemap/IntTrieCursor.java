@@ -0,0 +1,125 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap;
+
+import java.util.Arrays;
+
+/**
+ * Lazy cursor over the entries of an IntCountTrieMap in key order, the primitive
+ * counterpart of TrieCursor. The current path is kept as node ids plus the
+ * position of every node among its siblings, so stepping allocates nothing
+ * once the arrays are deep enough and the key never gets boxed.
+ * The trie must not be modified while a cursor is in use.
+ *
+ * @author srikalyc
+ */
+public class IntTrieCursor {
+
+    private final IntCountTrieMap trie;
+    /**
+     * nodes[d] is the node of key element d, pos[d] its index among the
+     * children of its parent. depth elements are valid.
+     */
+    private int[] nodes = new int[16];
+    private int[] pos = new int[16];
+    private int depth = 0;
+    private boolean started = false;
+
+    IntTrieCursor(IntCountTrieMap trie) {
+        this.trie = trie;
+    }
+
+    private void push(int node, int index) {
+        if (depth == nodes.length) {
+            nodes = Arrays.copyOf(nodes, depth * 2);
+            pos = Arrays.copyOf(pos, depth * 2);
+        }
+        nodes[depth] = node;
+        pos[depth] = index;
+        depth++;
+    }
+
+    /**
+     * Moves to the next entry.
+     * @return false when there are no more entries.
+     */
+    public boolean next() {
+        int cur;
+        if (!started) {
+            started = true;
+            cur = IntCountTrieMap.ROOT;
+        } else {
+            if (depth == 0) {
+                return false;
+            }
+            cur = nodes[depth - 1];
+        }
+        while (true) {
+            if (trie.childCounts[cur] > 0) {
+                push(trie.childIds[cur][0], 0);
+            } else {// Nothing below, go to the next sibling of this or an ancestor.
+                boolean found = false;
+                while (!found && depth > 0) {
+                    int parent = depth == 1 ? IntCountTrieMap.ROOT : nodes[depth - 2];
+                    int i = pos[depth - 1] + 1;
+                    depth--;
+                    if (i < trie.childCounts[parent]) {
+                        push(trie.childIds[parent][i], i);
+                        found = true;
+                    }
+                }
+                if (!found) {
+                    return false;
+                }
+            }
+            cur = nodes[depth - 1];
+            if (trie.valued[cur]) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return number of partial keys in the current key.
+     */
+    public int keyLength() {
+        return depth;
+    }
+
+    /**
+     * @param i
+     * @return partial key i of the current key.
+     */
+    public int keyAt(int i) {
+        if (i >= depth) {
+            throw new IndexOutOfBoundsException("Key length " + depth + ", index " + i);
+        }
+        return trie.partialKeys[nodes[i]];
+    }
+
+    /**
+     * Copies the current key into dest, which must have room for keyLength()
+     * elements.
+     * @param dest
+     */
+    public void copyKeyInto(int[] dest) {
+        for (int i = 0; i < depth; i++) {
+            dest[i] = trie.partialKeys[nodes[i]];
+        }
+    }
+
+    /**
+     * @return count of the current entry.
+     */
+    public long value() {
+        return trie.counts[nodes[depth - 1]];
+    }
+}
@@ -1,21 +1,39 @@
 /**
  * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
- * "License"); you may not use this file except in compliance with the License. 
- * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
  * Unless required by applicable law or agreed to in writing, software distributed
- * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR 
- * CONDITIONS OF ANY KIND, either express or implied. See the License for the 
- * specific language governing permissions and limitations under the License. 
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
  * See accompanying LICENSE file.
  */
 package triemap;
 
 /**
  * One can simply use NumTrieMap but this class is defined so that one can use
- * primitive arrays instead of the wrapper types.
+ * primitive arrays instead of the wrapper types. The int[] keys are boxed into
+ * a buffer reused from call to call, IntCountTrieMap is the counterpart which
+ * boxes nothing at all(with long counts and a primitive API of its own).
  * @author srikalyc
  */
 public class IntTrieMap extends NumTrieMap<Integer> {
+
+    private Integer[] boxed = new Integer[16];
+
+    /**
+     * @return key[sI..eI) boxed into boxed[0..eI - sI).
+     */
+    private Integer[] box(int[] key, int sI, int eI) {
+        if (eI - sI > boxed.length) {
+            boxed = new Integer[(eI - sI) * 2];
+        }
+        for (int i = sI; i < eI; i++) {
+            boxed[i - sI] = key[i];
+        }
+        return boxed;
+    }
+
     /**
      * Used for both adding and updating. sI and eI are the number of elements 
      * from key which should be considered as key. The value is added to the tail.
@@ -27,26 +45,7 @@ public class IntTrieMap extends NumTrieMap<Integer> {
      * @param value
      */
     public void inc(int[] key, int sI, int eI, int value) {
-        TrieNode lastNode = root.get(key[sI]);
-        if (lastNode == null) {
-            lastNode = new TrieNode(key[sI], null);
-            root.add(lastNode);
-        }
-        TrieNode curNode = lastNode;
-        for (int i = sI + 1; i < eI; i++) {
-            curNode = lastNode.getChild(key[i]);
-            if (curNode == null) {
-                curNode = lastNode.addChild(key[i], null);
-                if (i == eI - 1) {
-                    size++;// Only when you are adding newly increase the size.
-                }
-            }
-            lastNode = curNode;
-        }
-        if (sI == eI - 1) {// Because the loop is never entered we take care of the edge case here.
-            size++;// Only when you are adding newly increase the size.
-        }
-        curNode.value += value;
+        inc(box(key, sI, eI), 0, eI - sI, value);
     }
 
     /**
@@ -61,26 +60,7 @@ public class IntTrieMap extends NumTrieMap<Integer> {
      * @param value
      */
     public void incPrefixes(int[] key, int sI, int eI, int value) {
-        TrieNode lastNode = root.get(key[sI]);
-
-        if (lastNode == null) {
-            lastNode = new TrieNode(key[sI], value);
-            root.add(lastNode);
-            size++;// Only when you are adding newly increase the size.
-        } else {
-            lastNode.value += value;
-        }
-        TrieNode curNode = lastNode;
-        for (int i = sI + 1; i < eI; i++) {
-            curNode = lastNode.getChild(key[i]);
-            if (curNode == null) {
-                curNode = lastNode.addChild(key[i], value);
-                size++;// Only when you are adding newly increase the size.
-            } else {
-                curNode.value += value;
-            }
-            lastNode = curNode;
-        }
+        incPrefixes(box(key, sI, eI), 0, eI - sI, value);
     }
     /**
      * Used for both adding and updating. sI and eI are the number of elements 
@@ -94,27 +74,7 @@ public class IntTrieMap extends NumTrieMap<Integer> {
      * @param value
      */
     public void incAll(int[] key, int sI, int eI, int value) {
-        TrieNode lastNode = root.get(key[sI]);
-
-        if (lastNode == null) {
-            lastNode = new TrieNode(key[sI], value);
-            root.add(lastNode);
-            size++;// Only when you are adding newly increase the size.
-        } else {
-            lastNode.value += value;
-        }
-        TrieNode curNode = null;
-        for (int i = sI + 1; i < eI; i++) {
-            incPrefixes(key, i, eI, value);// Add the suffixes to the path.
-            curNode = lastNode.getChild(key[i]);
-            if (curNode == null) {
-                curNode = lastNode.addChild(key[i], value);
-                size++;// Only when you are adding newly increase the size.
-            } else {
-                curNode.value += value;
-            }
-            lastNode = curNode;
-        }
+        incAll(box(key, sI, eI), 0, eI - sI, value);
     }
     /**
      * Entire array is used as key.
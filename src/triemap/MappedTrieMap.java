@@ -0,0 +1,628 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+
+/**
+ * Read only trie served straight from a memory mapped file. A trie is written
+ * once with one of the write() methods and opened with open(), which only maps
+ * the file: nothing is deserialized, so opening is O(1) in the size of the trie
+ * and several JVMs on one host share the same page cache.
+ *
+ * File layout(big endian):
+ * header: int magic, int version, int size(number of entries), int root offset.
+ * node:   int childCount, int flags(1 = has value), long value,
+ *         childCount longs(partial keys, ascending), childCount ints(child offsets).
+ * Children are written before their parent so a node only points backwards.
+ * Partial keys and values are stored as longs: longValue() of integral numbers,
+ * the bits of floating point partial keys. Files are limited to 2GB.
+ *
+ * close() unmaps the file, so it must only be called once no other thread
+ * reads the map any more(reading unmapped pages can crash the JVM). After it
+ * everything but close() throws IllegalStateException.
+ *
+ * @author srikalyc
+ */
+public class MappedTrieMap implements Closeable {
+    static final int MAGIC = 0x54524945;// "TRIE"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+    static final int FLAG_VALUED = 1;
+
+    /**
+     * Receives the entries of a prefix walk. The key array is reused between
+     * calls, only the first keyLength elements are valid.
+     */
+    public interface EntryVisitor {
+        void visit(long[] key, int keyLength, long value);
+    }
+
+    private MappedByteBuffer buffer;
+    private final int size;
+    private final int rootOffset;
+
+    private MappedTrieMap(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Not a trie file or unsupported version");
+        }
+        this.size = buffer.getInt(8);
+        this.rootOffset = buffer.getInt(12);
+    }
+
+    /**
+     * Maps the file read only.
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static MappedTrieMap open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            return new MappedTrieMap(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    // ---------------- reading ----------------
+
+    private void ensureOpen() {
+        if (buffer == null) {
+            throw new IllegalStateException("MappedTrieMap is closed");
+        }
+    }
+
+    private int childCount(int node) {
+        return buffer.getInt(node);
+    }
+
+    private boolean valued(int node) {
+        return (buffer.getInt(node + 4) & FLAG_VALUED) != 0;
+    }
+
+    private long value(int node) {
+        return buffer.getLong(node + 8);
+    }
+
+    private long childKey(int node, int i) {
+        return buffer.getLong(node + 16 + i * 8);
+    }
+
+    private int childOffset(int node, int i) {
+        return buffer.getInt(node + 16 + childCount(node) * 8 + i * 4);
+    }
+
+    /**
+     * Binary search among the children of node.
+     * @return child offset or -1.
+     */
+    int child(int node, long partialKey) {
+        int n = childCount(node);
+        int keys = node + 16;
+        int lo = 0;
+        int hi = n - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long k = buffer.getLong(keys + mid * 8);
+            if (k < partialKey) {
+                lo = mid + 1;
+            } else if (k > partialKey) {
+                hi = mid - 1;
+            } else {
+                return buffer.getInt(keys + n * 8 + mid * 4);
+            }
+        }
+        return -1;
+    }
+
+    private int find(long[] key, int sI, int eI) {
+        ensureOpen();
+        int node = rootOffset;
+        for (int i = sI; i < eI && node != -1; i++) {
+            node = child(node, key[i]);
+        }
+        return node;
+    }
+
+    private int find(int[] key, int sI, int eI) {
+        ensureOpen();
+        int node = rootOffset;
+        for (int i = sI; i < eI && node != -1; i++) {
+            node = child(node, key[i]);
+        }
+        return node;
+    }
+
+    private int find(byte[] key, int sI, int eI) {
+        ensureOpen();
+        int node = rootOffset;
+        for (int i = sI; i < eI && node != -1; i++) {
+            node = child(node, key[i]);
+        }
+        return node;
+    }
+
+    private int find(Number[] key, int sI, int eI) {
+        ensureOpen();
+        int node = rootOffset;
+        for (int i = sI; i < eI && node != -1; i++) {
+            node = child(node, OffHeapTrieMap.partialKeyOf(key[i]));
+        }
+        return node;
+    }
+
+    /**
+     * Return value corresponding to key if exists else 0 is returned.
+     * @param key
+     * @param sI
+     * @param eI
+     * @return
+     */
+    public long get(long[] key, int sI, int eI) {
+        int node = find(key, sI, eI);
+        return node == -1 ? 0 : value(node);
+    }
+    public long get(int[] key, int sI, int eI) {
+        int node = find(key, sI, eI);
+        return node == -1 ? 0 : value(node);
+    }
+    public long get(byte[] key, int sI, int eI) {
+        int node = find(key, sI, eI);
+        return node == -1 ? 0 : value(node);
+    }
+    public long get(Number[] key, int sI, int eI) {
+        int node = find(key, sI, eI);
+        return node == -1 ? 0 : value(node);
+    }
+
+    /**
+     * Check if key exists.
+     * @param key
+     * @param sI
+     * @param eI
+     * @return
+     */
+    public boolean contains(long[] key, int sI, int eI) {
+        return find(key, sI, eI) != -1;
+    }
+    public boolean contains(int[] key, int sI, int eI) {
+        return find(key, sI, eI) != -1;
+    }
+    public boolean contains(byte[] key, int sI, int eI) {
+        return find(key, sI, eI) != -1;
+    }
+    public boolean contains(Number[] key, int sI, int eI) {
+        return find(key, sI, eI) != -1;
+    }
+
+    public long get(long[] key) {
+        return get(key, 0, key.length);
+    }
+    public long get(int[] key) {
+        return get(key, 0, key.length);
+    }
+    public long get(byte[] key) {
+        return get(key, 0, key.length);
+    }
+    public long get(Number[] key) {
+        return get(key, 0, key.length);
+    }
+    public boolean contains(long[] key) {
+        return contains(key, 0, key.length);
+    }
+    public boolean contains(int[] key) {
+        return contains(key, 0, key.length);
+    }
+    public boolean contains(byte[] key) {
+        return contains(key, 0, key.length);
+    }
+    public boolean contains(Number[] key) {
+        return contains(key, 0, key.length);
+    }
+
+    /**
+     * Visits every entry whose key starts with key[sI..eI](the prefix itself
+     * included when it has a value) in ascending key order. Iterative, the
+     * walk happens directly on the mapped pages.
+     * @param key
+     * @param sI
+     * @param eI
+     * @param visitor
+     */
+    public void forEachUnder(long[] key, int sI, int eI, EntryVisitor visitor) {
+        int start = find(key, sI, eI);
+        if (start == -1) {
+            return;
+        }
+        int prefixLength = eI - sI;
+        long[] path = new long[Math.max(16, prefixLength + 1)];
+        System.arraycopy(key, sI, path, 0, prefixLength);
+        if (start != rootOffset && valued(start)) {
+            visitor.visit(path, prefixLength, value(start));
+        }
+        int[] nodes = new int[16];
+        int[] next = new int[16];// Index of the next child to visit per depth.
+        int depth = 0;
+        nodes[0] = start;
+        next[0] = 0;
+        while (depth >= 0) {
+            int node = nodes[depth];
+            int i = next[depth];
+            if (i == childCount(node)) {
+                depth--;
+                continue;
+            }
+            next[depth] = i + 1;
+            int c = childOffset(node, i);
+            int length = prefixLength + depth + 1;
+            if (length > path.length) {
+                path = Arrays.copyOf(path, length * 2);
+            }
+            path[length - 1] = childKey(node, i);
+            if (valued(c)) {
+                visitor.visit(path, length, value(c));
+            }
+            depth++;
+            if (depth == nodes.length) {
+                nodes = Arrays.copyOf(nodes, depth * 2);
+                next = Arrays.copyOf(next, depth * 2);
+            }
+            nodes[depth] = c;
+            next[depth] = 0;
+        }
+    }
+
+    public void forEachUnder(long[] key, EntryVisitor visitor) {
+        forEachUnder(key, 0, key.length, visitor);
+    }
+
+    /**
+     * Number of entries(keys which have a value).
+     * @return
+     */
+    public int size() {
+        ensureOpen();
+        return size;
+    }
+
+    /**
+     * Unmaps the file, the map can not be used afterwards. Readers must be
+     * done first, see the class doc. Closing twice does nothing.
+     */
+    @Override
+    public void close() {
+        if (buffer != null) {
+            OffHeapTrieMap.freeDirect(buffer);
+            buffer = null;
+        }
+    }
+
+    // ---------------- writing ----------------
+
+    /**
+     * Writes any TrieMap whose partial keys and values are numbers, e.g a
+     * NumTrieMap.
+     * @param trie
+     * @param file
+     * @throws IOException
+     */
+    public static void write(TrieMap<? extends Number, ? extends Number> trie, File file) throws IOException {
+        write(new TrieMapSource<>(trie), file);
+    }
+
+    public static void write(IntCountTrieMap trie, File file) throws IOException {
+        write(new IntCountTrieMapSource(trie), file);
+    }
+
+    public static void write(ByteCountTrieMap trie, File file) throws IOException {
+        write(new ByteCountTrieMapSource(trie), file);
+    }
+
+    private static void write(NodeSource source, File file) throws IOException {
+        Writer writer = new Writer(source);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            writer.out = out;
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(0);// size and root offset are patched below.
+            out.writeInt(0);
+            writer.offset = HEADER_BYTES;
+            writer.rootOffset = writer.writeNode(source.root());
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(8);
+            raf.writeInt(writer.size);
+            raf.writeInt(writer.rootOffset);
+        }
+    }
+
+    /**
+     * Post order writer, children go first so their offsets are known when
+     * the parent is written. Iterative, the stack holds one Frame per level
+     * so keys of any length are fine.
+     */
+    private static class Writer {
+        final NodeSource source;
+        DataOutputStream out;
+        long offset;
+        int size;
+        int rootOffset;
+
+        Writer(NodeSource source) {
+            this.source = source;
+        }
+
+        /**
+         * A node whose children are being written.
+         */
+        private class Frame {
+            final Object node;
+            final Iterator<Object> children;
+            final long[] keys;
+            final int[] offsets;
+            int written = 0;
+
+            Frame(Object node) {
+                this.node = node;
+                this.children = source.children(node);
+                int n = source.childCount(node);
+                this.keys = new long[n];
+                this.offsets = new int[n];
+            }
+        }
+
+        /**
+         * @return offset of node, written after all of its subtree.
+         */
+        int writeNode(Object node) throws IOException {
+            ArrayDeque<Frame> stack = new ArrayDeque<>();
+            stack.push(new Frame(node));
+            while (true) {
+                Frame frame = stack.peek();
+                if (frame.children.hasNext()) {
+                    Object c = frame.children.next();
+                    frame.keys[frame.written] = source.partialKey(c);
+                    stack.push(new Frame(c));
+                    continue;
+                }
+                int written = writeRecord(frame);
+                stack.pop();
+                if (stack.isEmpty()) {
+                    return written;
+                }
+                Frame parent = stack.peek();
+                parent.offsets[parent.written++] = written;
+            }
+        }
+
+        private int writeRecord(Frame frame) throws IOException {
+            int n = frame.keys.length;
+            Integer[] order = new Integer[n];
+            for (int i = 0; i < n; i++) {
+                order[i] = i;
+            }
+            final long[] k = frame.keys;
+            Arrays.sort(order, new Comparator<Integer>() {// Sorted by the stored long, not by K.
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return Long.compare(k[a], k[b]);
+                }
+            });
+            if (offset > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Trie too large for the mapped format(2GB max)");
+            }
+            int myOffset = (int) offset;
+            out.writeInt(n);
+            boolean valued = source.valued(frame.node);
+            out.writeInt(valued ? FLAG_VALUED : 0);
+            out.writeLong(valued ? source.value(frame.node) : 0);
+            for (int j = 0; j < n; j++) {
+                out.writeLong(k[order[j]]);
+            }
+            for (int j = 0; j < n; j++) {
+                out.writeInt(frame.offsets[order[j]]);
+            }
+            offset += 16 + 12L * n;
+            if (valued) {// The root only has one in count tries which counted the empty key.
+                size++;
+            }
+            return myOffset;
+        }
+    }
+
+    /**
+     * Uniform view over the in memory tries being written.
+     */
+    private abstract static class NodeSource {
+        abstract Object root();
+        abstract int childCount(Object node);
+        abstract Iterator<Object> children(Object node);
+        abstract long partialKey(Object node);
+        abstract boolean valued(Object node);
+        abstract long value(Object node);
+    }
+
+    private static class TrieMapSource<K extends Comparable<K>, V> extends NodeSource {
+        final TrieMap<K, V> trie;
+
+        TrieMapSource(TrieMap<K, V> trie) {
+            this.trie = trie;
+        }
+
+        @SuppressWarnings("unchecked")
+        private TrieMap<K, V>.TrieNode node(Object node) {
+            return (TrieMap<K, V>.TrieNode) node;
+        }
+
+        @Override
+        Object root() {
+            return trie.root;
+        }
+
+        @Override
+        int childCount(Object node) {
+            return node(node).child == null ? 0 : node(node).child.size();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        Iterator<Object> children(Object node) {
+            if (node(node).child == null) {
+                return Collections.emptyIterator();
+            }
+            return (Iterator<Object>) (Iterator<?>) node(node).child.iterator();
+        }
+
+        @Override
+        long partialKey(Object node) {
+            return OffHeapTrieMap.partialKeyOf((Number) node(node).partialKey);
+        }
+
+        @Override
+        boolean valued(Object node) {
+            return node(node).value != null;
+        }
+
+        @Override
+        long value(Object node) {
+            return ((Number) node(node).value).longValue();
+        }
+    }
+
+    private static class IntCountTrieMapSource extends NodeSource {
+        final IntCountTrieMap trie;
+
+        IntCountTrieMapSource(IntCountTrieMap trie) {
+            this.trie = trie;
+        }
+
+        @Override
+        Object root() {
+            return IntCountTrieMap.ROOT;
+        }
+
+        @Override
+        int childCount(Object node) {
+            return trie.childCounts[(Integer) node];
+        }
+
+        @Override
+        Iterator<Object> children(Object node) {
+            final int id = (Integer) node;
+            return new Iterator<Object>() {
+                int i = 0;
+                @Override
+                public boolean hasNext() {
+                    return i < trie.childCounts[id];
+                }
+                @Override
+                public Object next() {
+                    return trie.childIds[id][i++];
+                }
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        long partialKey(Object node) {
+            return trie.partialKeys[(Integer) node];
+        }
+
+        @Override
+        boolean valued(Object node) {
+            return trie.valued[(Integer) node];
+        }
+
+        @Override
+        long value(Object node) {
+            return trie.counts[(Integer) node];
+        }
+    }
+
+    private static class ByteCountTrieMapSource extends NodeSource {
+        final ByteCountTrieMap trie;
+
+        ByteCountTrieMapSource(ByteCountTrieMap trie) {
+            this.trie = trie;
+        }
+
+        @Override
+        Object root() {
+            return ByteCountTrieMap.ROOT;
+        }
+
+        @Override
+        int childCount(Object node) {
+            return trie.childCounts[(Integer) node];
+        }
+
+        @Override
+        Iterator<Object> children(Object node) {
+            final int id = (Integer) node;
+            final int[] ids = trie.childIds[id];
+            final int n = trie.childKeys[id] == null ? ids.length : trie.childCounts[id];
+            return new Iterator<Object>() {
+                int i = skipEmpty(0);
+                private int skipEmpty(int i) {
+                    while (i < n && ids[i] == 0) {
+                        i++;
+                    }
+                    return i;
+                }
+                @Override
+                public boolean hasNext() {
+                    return i < n;
+                }
+                @Override
+                public Object next() {
+                    int c = ids[i];
+                    i = skipEmpty(i + 1);
+                    return c;
+                }
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        long partialKey(Object node) {
+            return trie.partialKeys[(Integer) node];
+        }
+
+        @Override
+        boolean valued(Object node) {
+            return trie.valued[(Integer) node];
+        }
+
+        @Override
+        long value(Object node) {
+            return trie.counts[(Integer) node];
+        }
+    }
+}
@@ -10,6 +10,15 @@
  */
 package triemap;
 
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
 
 /**
  * Accepts N,V where N=array of integers/bytes/long/double etc,  V = integer value.
@@ -28,27 +37,14 @@ public class NumTrieMap<N extends Number & Comparable<N>> extends TrieMap<N, Int
      * @param value
      */
     public void inc(N[] key, int sI, int eI, int value) {
-        TrieNode lastNode = root.get(key[sI]);
-
-        if (lastNode == null) {
-            lastNode = new TrieNode(key[sI], null);
-            root.add(lastNode);
-        }
-        TrieNode curNode = lastNode;
-        for (int i = sI + 1; i < eI; i++) {
-            curNode = lastNode.getChild(key[i]);
-            if (curNode == null) {
-                curNode = lastNode.addChild(key[i], null);
-                if (i == eI - 1) {
-                    size++;// Only when you are adding newly increase the size.
-                }
-            }
-            lastNode = curNode;
-        }
-        if (sI == eI - 1) {// Because the loop is never entered we take care of the edge case here.
-            size++;// Only when you are adding newly increase the size.
+        checkNotEmpty(sI, eI);
+        boolean timed = metrics != null && metrics.sample(TrieMetrics.Op.INC);
+        long start = timed ? System.nanoTime() : 0;
+        int depth = tracePath(key, sI, eI);
+        incValues(eI - sI, eI - sI, value);
+        if (timed) {
+            metrics.record(TrieMetrics.Op.INC, start, depth);
         }
-        curNode.value += value;
     }
 
     /**
@@ -63,25 +59,48 @@ public class NumTrieMap<N extends Number & Comparable<N>> extends TrieMap<N, Int
      * @param value
      */
     public void incPrefixes(N[] key, int sI, int eI, int value) {
-        TrieNode lastNode = root.get(key[sI]);
-
-        if (lastNode == null) {
-            lastNode = new TrieNode(key[sI], value);
-            root.add(lastNode);
-            size++;// Only when you are adding newly increase the size.
-        } else {
-            lastNode.value += value;
-        }
-        TrieNode curNode = lastNode;
-        for (int i = sI + 1; i < eI; i++) {
-            curNode = lastNode.getChild(key[i]);
-            if (curNode == null) {
-                curNode = lastNode.addChild(key[i], value);
-                size++;// Only when you are adding newly increase the size.
-            } else {
-                curNode.value += value;
+        boolean timed = metrics != null && metrics.sample(TrieMetrics.Op.INC_PREFIXES);
+        long start = timed ? System.nanoTime() : 0;
+        int depth = incPath(key, sI, eI, value);
+        if (timed) {
+            metrics.record(TrieMetrics.Op.INC_PREFIXES, start, depth);
+        }
+    }
+
+    /**
+     * incPrefixes() without metrics, for the methods built on it.
+     * @return nodes descended, as returned by tracePath().
+     */
+    private int incPath(N[] key, int sI, int eI, int value) {
+        int depth = tracePath(key, sI, eI);
+        incValues(1, eI - sI, value);
+        return depth;
+    }
+
+    /**
+     * Adds value to the values of path[from..depth](a missing value counts as
+     * 0) and fixes the subtree aggregates of path[0..depth].
+     */
+    void incValues(int from, int depth, int value) {
+        int countDelta = 0;
+        long weightDelta = 0;
+        TrieNode below = null;
+        long belowOldPeak = 0;
+        for (int d = depth; d >= 0; d--) {
+            TrieNode node = pathNode(d);
+            long oldPeak = node.peak();
+            if (d >= from) {
+                if (node.value == null) {
+                    node.value = value;
+                    countDelta++;
+                } else {
+                    node.value += value;
+                }
+                weightDelta += value;
             }
-            lastNode = curNode;
+            node.adjust(countDelta, weightDelta, below, belowOldPeak);
+            below = node;
+            belowOldPeak = oldPeak;
         }
     }
     /**
@@ -96,11 +115,242 @@ public class NumTrieMap<N extends Number & Comparable<N>> extends TrieMap<N, Int
      * @param value
      */
     public void incAll(N[] key, int sI, int eI, int value) {
-        incPrefixes(key, sI, eI, value);
-        for (int i = sI + 1; i < eI; i++) {
-            incPrefixes(key, i, eI, value);// Add the suffixes to the path.
+        boolean timed = metrics != null && metrics.sample(TrieMetrics.Op.INC_ALL);
+        long start = timed ? System.nanoTime() : 0;
+        int depth = 0;
+        for (int i = sI; i < eI; i++) {
+            depth += incPath(key, i, eI, value);// The key and then its suffixes.
+        }
+        if (timed) {
+            metrics.record(TrieMetrics.Op.INC_ALL, start, depth);
+        }
+    }
+
+    /**
+     * Windowed incAll(): only the substrings of at most maxLen elements are
+     * counted, each gets the same count incAll() would give it. Every start
+     * position walks at most maxLen nodes, so a key of 'm' elements costs
+     * O(m * maxLen) instead of O(m2).
+     * @param key
+     * @param sI
+     * @param eI
+     * @param value
+     * @param maxLen longest substring to count, at least 1.
+     */
+    public void incAll(N[] key, int sI, int eI, int value, int maxLen) {
+        if (maxLen < 1) {
+            throw new IllegalArgumentException("maxLen must be at least 1, got " + maxLen);
+        }
+        boolean timed = metrics != null && metrics.sample(TrieMetrics.Op.INC_ALL);
+        long start = timed ? System.nanoTime() : 0;
+        int depth = 0;
+        for (int i = sI; i < eI; i++) {
+            depth += incPath(key, i, Math.min(eI, i + maxLen), value);// Suffixes cut at the window.
+        }
+        if (timed) {
+            metrics.record(TrieMetrics.Op.INC_ALL, start, depth);
         }
     }
+    /**
+     * Batch version of inc(key, value) for whole keys. The batch is put in key
+     * order and every key starts from the path of the previous one at their
+     * common prefix instead of descending from the root. An empty key is
+     * rejected before anything is incremented.
+     * @param keys
+     * @param deltas deltas[i] is added to the value of keys[i].
+     */
+    public void incBatch(N[][] keys, int[] deltas) {
+        checkNotEmpty(keys);
+        List<TrieNode> path = new ArrayList<>();
+        path.add(root);
+        N[] prev = null;
+        for (int o : sortedOrder(keys)) {
+            N[] key = keys[o];
+            TrieNode tail = descend(path, prev, key);
+            int countDelta = tail.value == null ? 1 : 0;
+            long oldPeak = tail.peak();
+            tail.value = tail.value == null ? deltas[o] : tail.value + deltas[o];
+            adjustPath(path, countDelta, deltas[o], oldPeak);
+            prev = key;
+        }
+    }
+    /**
+     * Sum of the values of the keys which start with prefix[sI..eI)(prefix
+     * itself included). O(prefix length).
+     * @param prefix
+     * @param sI
+     * @param eI
+     * @return
+     */
+    public long sumUnder(N[] prefix, int sI, int eI) {
+        TrieNode node = find(prefix, sI, eI);
+        return node == null ? 0 : node.sum();
+    }
+
+    /**
+     * The k keys with the greatest values, greatest first. Best first search
+     * guided by the greatest value kept for every subtree, subtrees which can
+     * not make it into the result are never visited.
+     * @param k number of entries wanted, 0 gives an empty list.
+     * @return at most k entries.
+     */
+    public List<Map.Entry<List<N>, Integer>> topK(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative, got " + k);
+        }
+        return topK(root, new ArrayList<N>(), k);
+    }
+
+    /**
+     * Same as topK(k) but only among the keys which start with
+     * prefix[sI..eI)(prefix itself included).
+     * @param prefix
+     * @param sI
+     * @param eI
+     * @param k number of entries wanted, 0 gives an empty list.
+     * @return at most k entries.
+     */
+    public List<Map.Entry<List<N>, Integer>> topK(N[] prefix, int sI, int eI, int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative, got " + k);
+        }
+        TrieNode node = find(prefix, sI, eI);
+        if (node == null) {
+            return new ArrayList<>();
+        }
+        return topK(node, new ArrayList<>(Arrays.asList(prefix).subList(sI, eI)), k);
+    }
+
+    /**
+     * Queue entry of topK(), either a whole subtree bounded by its peak() or
+     * the exact value of one node.
+     */
+    private class Candidate {
+        final TrieNode node;
+        final Candidate parent;
+        final boolean exact;
+        final long bound;
+
+        Candidate(TrieNode node, Candidate parent, boolean exact, long bound) {
+            this.node = node;
+            this.parent = parent;
+            this.exact = exact;
+            this.bound = bound;
+        }
+    }
+
+    private List<Map.Entry<List<N>, Integer>> topK(TrieNode start, List<N> prefix, int k) {
+        PriorityQueue<Candidate> queue = new PriorityQueue<>(16, new Comparator<Candidate>() {
+            @Override
+            public int compare(Candidate a, Candidate b) {
+                return Long.compare(b.bound, a.bound);
+            }
+        });
+        List<Map.Entry<List<N>, Integer>> out = new ArrayList<>(Math.min(k, 1024));
+        if (start.peak() != Long.MIN_VALUE) {
+            queue.add(new Candidate(start, null, false, start.peak()));
+        }
+        while (out.size() < k && !queue.isEmpty()) {
+            Candidate c = queue.poll();
+            if (c.exact) {
+                List<N> key = new ArrayList<>();
+                for (Candidate x = c; x.parent != null; x = x.parent) {
+                    key.add(x.node.partialKey);
+                }
+                Collections.reverse(key);
+                key.addAll(0, prefix);
+                out.add(new AbstractMap.SimpleImmutableEntry<>(key, c.node.value));
+                continue;
+            }
+            if (c.node.value != null) {
+                queue.add(new Candidate(c.node, c.parent, true, c.node.value));
+            }
+            if (c.node.child != null) {
+                for (TrieNode child : c.node.child) {
+                    long peak = child.peak();
+                    if (peak != Long.MIN_VALUE) {// Subtrees without values are pruned.
+                        queue.add(new Candidate(child, c, false, peak));
+                    }
+                }
+            }
+        }
+        return out;
+    }
+
+    @Override
+    long weight(Integer value) {
+        return value == null ? 0 : value;
+    }
+
+    @Override
+    TrieNode newNode(N partialKey, Integer value) {
+        return new NumNode(partialKey, value);
+    }
+
+    /**
+     * NumNode adds sum and maxBelow.
+     */
+    @Override
+    int nodeBytes() {
+        return TrieStats.TRIE_NODE + 16;
+    }
+
+    /**
+     * TrieNode which also keeps the sum of the values in its subtree and the
+     * greatest value below it.
+     */
+    class NumNode extends TrieNode {
+        long sum;
+        /**
+         * Greatest value strictly below this node, Long.MIN_VALUE if none.
+         */
+        long maxBelow = Long.MIN_VALUE;
+
+        NumNode(N partialKey, Integer value) {
+            super(partialKey, value);
+        }
+
+        @Override
+        void adjust(int countDelta, long weightDelta, TrieNode changed, long changedOldPeak) {
+            count += countDelta;
+            sum += weightDelta;
+            if (changed != null) {
+                long peak = changed.peak();
+                if (peak >= maxBelow) {
+                    maxBelow = peak;
+                } else if (changedOldPeak == maxBelow) {// The max itself went down, rescan the children.
+                    maxBelow = Long.MIN_VALUE;
+                    for (TrieNode c : child) {
+                        maxBelow = Math.max(maxBelow, c.peak());
+                    }
+                }
+            }
+        }
+
+        @Override
+        long sum() {
+            return sum;
+        }
+
+        @Override
+        long peak() {
+            return value == null ? maxBelow : Math.max(value, maxBelow);
+        }
+
+        @Override
+        void copyAggregates(TrieNode other) {
+            super.copyAggregates(other);
+            sum = other.sum();
+            maxBelow = ((NumNode) other).maxBelow;
+        }
+
+        @Override
+        public void remove() {
+            super.remove();
+            maxBelow = Long.MIN_VALUE;
+        }
+    }
+
     /**
      * Entire array is used as key.
      * @param key
@@ -125,4 +375,30 @@ public class NumTrieMap<N extends Number & Comparable<N>> extends TrieMap<N, Int
     public void incAll(N[] key, int value) {
         incAll(key, 0, key.length, value);
     }
+    /**
+     * Entire array is used as key.
+     * @param key
+     * @param value 
+     * @param maxLen
+     */
+    public void incAll(N[] key, int value, int maxLen) {
+        incAll(key, 0, key.length, value, maxLen);
+    }
+    /**
+     * Entire array is used as prefix.
+     * @param prefix
+     * @return 
+     */
+    public long sumUnder(N[] prefix) {
+        return sumUnder(prefix, 0, prefix.length);
+    }
+    /**
+     * Entire array is used as prefix.
+     * @param prefix
+     * @param k
+     * @return 
+     */
+    public List<Map.Entry<List<N>, Integer>> topK(N[] prefix, int k) {
+        return topK(prefix, 0, prefix.length, k);
+    }
 }
@@ -0,0 +1,603 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap;
+
+import java.io.Closeable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counting trie whose nodes live outside the java heap, for tries with tens of
+ * millions of keys. It offers the inc/incPrefixes/incAll/get/contains methods
+ * of IntCountTrieMap, ByteCountTrieMap and NumTrieMap(one key type per map
+ * please, an int 1 and a byte 1 are the same partial key).
+ *
+ * Everything is kept in direct ByteBuffer slabs:
+ * - node records(count, partial key, parent id, valued flag) addressed by int id.
+ * - one open addressing hash table of edges keyed by (parent id, partial key),
+ *   so walking down one level is a single probe sequence no matter the fan-out.
+ * The heap only holds the lists of slabs, so heap usage stays roughly constant
+ * however many keys are stored. Call close() to release the memory, the map
+ * can not be used afterwards(everything but close() throws IllegalStateException).
+ * Removal is not supported.
+ *
+ * @author srikalyc
+ */
+public class OffHeapTrieMap implements Closeable {
+    static final int ROOT = 0;
+    static final int NONE = -1;
+
+    private static final int NODE_BYTES = 24;// count(8) partialKey(8) parent(4) valued(4)
+    private static final int NODES_PER_SLAB_SHIFT = 16;
+    private static final int EDGE_BYTES = 16;// partialKey(8) parent(4) child(4), child 0 = empty
+    private static final int EDGES_PER_SLAB_SHIFT = 16;
+    private static final float LOAD_FACTOR = 0.7f;
+
+    private List<ByteBuffer> nodeSlabs = new ArrayList<>();
+    private List<ByteBuffer> edgeSlabs = new ArrayList<>();
+    private long edgeCapacity;// Always a power of 2.
+    private long edgeCount = 0;
+    private int nodeCount = 0;
+    private int size = 0;
+    private boolean closed = false;
+
+    public OffHeapTrieMap() {
+        this(1 << 16);
+    }
+
+    /**
+     * @param initialEdges number of edges to size the hash table for up front.
+     */
+    public OffHeapTrieMap(long initialEdges) {
+        long cap = 1L << EDGES_PER_SLAB_SHIFT;
+        while (cap * LOAD_FACTOR < initialEdges) {
+            cap <<= 1;
+        }
+        edgeCapacity = cap;
+        edgeSlabs = allocateEdgeSlabs(cap);
+        newNode(0, NONE);// The root.
+    }
+
+    private static ByteBuffer allocate(int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+
+    private static List<ByteBuffer> allocateEdgeSlabs(long capacity) {
+        List<ByteBuffer> slabs = new ArrayList<>();
+        long perSlab = 1L << EDGES_PER_SLAB_SHIFT;
+        for (long i = 0; i < capacity; i += perSlab) {
+            slabs.add(allocate((int) (perSlab * EDGE_BYTES)));
+        }
+        return slabs;
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("OffHeapTrieMap is closed");
+        }
+    }
+
+    // ---------------- node records ----------------
+
+    private ByteBuffer nodeSlab(int node) {
+        return nodeSlabs.get(node >>> NODES_PER_SLAB_SHIFT);
+    }
+
+    private static int nodeOffset(int node) {
+        return (node & ((1 << NODES_PER_SLAB_SHIFT) - 1)) * NODE_BYTES;
+    }
+
+    private int newNode(long partialKey, int parent) {
+        int id = nodeCount;
+        if ((id >>> NODES_PER_SLAB_SHIFT) == nodeSlabs.size()) {
+            nodeSlabs.add(allocate((1 << NODES_PER_SLAB_SHIFT) * NODE_BYTES));
+        }
+        ByteBuffer slab = nodeSlab(id);
+        int off = nodeOffset(id);
+        slab.putLong(off, 0);
+        slab.putLong(off + 8, partialKey);
+        slab.putInt(off + 16, parent);
+        slab.putInt(off + 20, 0);
+        nodeCount++;
+        return id;
+    }
+
+    private long count(int node) {
+        return nodeSlab(node).getLong(nodeOffset(node));
+    }
+
+    private long partialKey(int node) {
+        return nodeSlab(node).getLong(nodeOffset(node) + 8);
+    }
+
+    private int parent(int node) {
+        return nodeSlab(node).getInt(nodeOffset(node) + 16);
+    }
+
+    private boolean valued(int node) {
+        return nodeSlab(node).getInt(nodeOffset(node) + 20) != 0;
+    }
+
+    private void addTo(int node, long value) {
+        ByteBuffer slab = nodeSlab(node);
+        int off = nodeOffset(node);
+        if (slab.getInt(off + 20) == 0) {
+            slab.putInt(off + 20, 1);
+            size++;// Only when a key gets its first value increase the size.
+        }
+        slab.putLong(off, slab.getLong(off) + value);
+    }
+
+    // ---------------- edge hash table ----------------
+
+    private static long hash(int parent, long partialKey) {
+        long h = partialKey * 0x9E3779B97F4A7C15L + parent;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static ByteBuffer edgeSlab(List<ByteBuffer> slabs, long slot) {
+        return slabs.get((int) (slot >>> EDGES_PER_SLAB_SHIFT));
+    }
+
+    private static int edgeOffset(long slot) {
+        return (int) (slot & ((1L << EDGES_PER_SLAB_SHIFT) - 1)) * EDGE_BYTES;
+    }
+
+    /**
+     * @param parent
+     * @param partialKey
+     * @param create add the child if it does not exist yet.
+     * @return child id or NONE.
+     */
+    int child(int parent, long partialKey, boolean create) {
+        long mask = edgeCapacity - 1;
+        long slot = hash(parent, partialKey) & mask;
+        while (true) {
+            ByteBuffer slab = edgeSlab(edgeSlabs, slot);
+            int off = edgeOffset(slot);
+            int child = slab.getInt(off + 12);
+            if (child == 0) {
+                break;
+            }
+            if (slab.getInt(off + 8) == parent && slab.getLong(off) == partialKey) {
+                return child;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (!create) {
+            return NONE;
+        }
+        if (edgeCount + 1 > edgeCapacity * LOAD_FACTOR) {
+            rehash();
+        }
+        int child = newNode(partialKey, parent);
+        putEdge(edgeSlabs, edgeCapacity, parent, partialKey, child);
+        edgeCount++;
+        return child;
+    }
+
+    private static void putEdge(List<ByteBuffer> slabs, long capacity, int parent, long partialKey, int child) {
+        long mask = capacity - 1;
+        long slot = hash(parent, partialKey) & mask;
+        while (edgeSlab(slabs, slot).getInt(edgeOffset(slot) + 12) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        ByteBuffer slab = edgeSlab(slabs, slot);
+        int off = edgeOffset(slot);
+        slab.putLong(off, partialKey);
+        slab.putInt(off + 8, parent);
+        slab.putInt(off + 12, child);
+    }
+
+    private void rehash() {
+        long newCapacity = edgeCapacity << 1;
+        List<ByteBuffer> newSlabs = allocateEdgeSlabs(newCapacity);
+        for (long slot = 0; slot < edgeCapacity; slot++) {
+            ByteBuffer slab = edgeSlab(edgeSlabs, slot);
+            int off = edgeOffset(slot);
+            int child = slab.getInt(off + 12);
+            if (child != 0) {
+                putEdge(newSlabs, newCapacity, slab.getInt(off + 8), slab.getLong(off), child);
+            }
+        }
+        free(edgeSlabs);
+        edgeSlabs = newSlabs;
+        edgeCapacity = newCapacity;
+    }
+
+    // ---------------- key adapters ----------------
+
+    static long partialKeyOf(Number n) {
+        if (n instanceof Double || n instanceof Float) {
+            return Double.doubleToLongBits(n.doubleValue());
+        }
+        return n.longValue();
+    }
+
+    // ---------------- int[] keys ----------------
+
+    /**
+     * Used for both adding and updating. The value is added to the tail.
+     * @param key
+     * @param sI (start index)
+     * @param eI (end index)
+     * @param value
+     */
+    public void inc(int[] key, int sI, int eI, int value) {
+        ensureOpen();
+        int node = ROOT;
+        for (int i = sI; i < eI; i++) {
+            node = child(node, key[i], true);
+        }
+        addTo(node, value);
+    }
+    /**
+     * The value is added all along the path until the tail.
+     * @param key
+     * @param sI
+     * @param eI
+     * @param value
+     */
+    public void incPrefixes(int[] key, int sI, int eI, int value) {
+        ensureOpen();
+        int node = ROOT;
+        for (int i = sI; i < eI; i++) {
+            node = child(node, key[i], true);
+            addTo(node, value);
+        }
+    }
+    /**
+     * The value is added to all the prefixes of all the suffixes, O(m2) in time.
+     * @param key
+     * @param sI
+     * @param eI
+     * @param value
+     */
+    public void incAll(int[] key, int sI, int eI, int value) {
+        ensureOpen();
+        for (int i = sI; i < eI; i++) {
+            incPrefixes(key, i, eI, value);
+        }
+    }
+    /**
+     * Return value corresponding to key if exists else 0 is returned.
+     * @param key
+     * @param sI
+     * @param eI
+     * @return
+     */
+    public long get(int[] key, int sI, int eI) {
+        ensureOpen();
+        int node = ROOT;
+        for (int i = sI; i < eI && node != NONE; i++) {
+            node = child(node, key[i], false);
+        }
+        return node == NONE ? 0 : count(node);
+    }
+    /**
+     * Check if key exists.
+     * @param key
+     * @param sI
+     * @param eI
+     * @return
+     */
+    public boolean contains(int[] key, int sI, int eI) {
+        ensureOpen();
+        int node = ROOT;
+        for (int i = sI; i < eI && node != NONE; i++) {
+            node = child(node, key[i], false);
+        }
+        return node != NONE;
+    }
+
+    public void inc(int[] key, int value) {
+        inc(key, 0, key.length, value);
+    }
+    public void incPrefixes(int[] key, int value) {
+        incPrefixes(key, 0, key.length, value);
+    }
+    public void incAll(int[] key, int value) {
+        incAll(key, 0, key.length, value);
+    }
+    public long get(int[] key) {
+        return get(key, 0, key.length);
+    }
+    public boolean contains(int[] key) {
+        return contains(key, 0, key.length);
+    }
+
+    // ---------------- byte[] keys ----------------
+
+    /**
+     * Used for both adding and updating. The value is added to the tail.
+     * @param key
+     * @param sI (start index)
+     * @param eI (end index)
+     * @param value
+     */
+    public void inc(byte[] key, int sI, int eI, int value) {
+        ensureOpen();
+        int node = ROOT;
+        for (int i = sI; i < eI; i++) {
+            node = child(node, key[i], true);
+        }
+        addTo(node, value);
+    }
+    /**
+     * The value is added all along the path until the tail.
+     * @param key
+     * @param sI
+     * @param eI
+     * @param value
+     */
+    public void incPrefixes(byte[] key, int sI, int eI, int value) {
+        ensureOpen();
+        int node = ROOT;
+        for (int i = sI; i < eI; i++) {
+            node = child(node, key[i], true);
+            addTo(node, value);
+        }
+    }
+    /**
+     * The value is added to all the prefixes of all the suffixes, O(m2) in time.
+     * @param key
+     * @param sI
+     * @param eI
+     * @param value
+     */
+    public void incAll(byte[] key, int sI, int eI, int value) {
+        ensureOpen();
+        for (int i = sI; i < eI; i++) {
+            incPrefixes(key, i, eI, value);
+        }
+    }
+    /**
+     * Return value corresponding to key if exists else 0 is returned.
+     * @param key
+     * @param sI
+     * @param eI
+     * @return
+     */
+    public long get(byte[] key, int sI, int eI) {
+        ensureOpen();
+        int node = ROOT;
+        for (int i = sI; i < eI && node != NONE; i++) {
+            node = child(node, key[i], false);
+        }
+        return node == NONE ? 0 : count(node);
+    }
+    /**
+     * Check if key exists.
+     * @param key
+     * @param sI
+     * @param eI
+     * @return
+     */
+    public boolean contains(byte[] key, int sI, int eI) {
+        ensureOpen();
+        int node = ROOT;
+        for (int i = sI; i < eI && node != NONE; i++) {
+            node = child(node, key[i], false);
+        }
+        return node != NONE;
+    }
+
+    public void inc(byte[] key, int value) {
+        inc(key, 0, key.length, value);
+    }
+    public void incPrefixes(byte[] key, int value) {
+        incPrefixes(key, 0, key.length, value);
+    }
+    public void incAll(byte[] key, int value) {
+        incAll(key, 0, key.length, value);
+    }
+    public long get(byte[] key) {
+        return get(key, 0, key.length);
+    }
+    public boolean contains(byte[] key) {
+        return contains(key, 0, key.length);
+    }
+
+    // ---------------- Number[] keys(as in NumTrieMap) ----------------
+
+    /**
+     * Used for both adding and updating. The value is added to the tail.
+     * Partial keys are stored by their longValue(), floating point ones by
+     * their bits.
+     * @param key
+     * @param sI (start index)
+     * @param eI (end index)
+     * @param value
+     */
+    public void inc(Number[] key, int sI, int eI, int value) {
+        ensureOpen();
+        int node = ROOT;
+        for (int i = sI; i < eI; i++) {
+            node = child(node, partialKeyOf(key[i]), true);
+        }
+        addTo(node, value);
+    }
+    /**
+     * The value is added all along the path until the tail.
+     * @param key
+     * @param sI
+     * @param eI
+     * @param value
+     */
+    public void incPrefixes(Number[] key, int sI, int eI, int value) {
+        ensureOpen();
+        int node = ROOT;
+        for (int i = sI; i < eI; i++) {
+            node = child(node, partialKeyOf(key[i]), true);
+            addTo(node, value);
+        }
+    }
+    /**
+     * The value is added to all the prefixes of all the suffixes, O(m2) in time.
+     * @param key
+     * @param sI
+     * @param eI
+     * @param value
+     */
+    public void incAll(Number[] key, int sI, int eI, int value) {
+        ensureOpen();
+        for (int i = sI; i < eI; i++) {
+            incPrefixes(key, i, eI, value);
+        }
+    }
+    /**
+     * Return value corresponding to key if exists else 0 is returned.
+     * @param key
+     * @param sI
+     * @param eI
+     * @return
+     */
+    public long get(Number[] key, int sI, int eI) {
+        ensureOpen();
+        int node = ROOT;
+        for (int i = sI; i < eI && node != NONE; i++) {
+            node = child(node, partialKeyOf(key[i]), false);
+        }
+        return node == NONE ? 0 : count(node);
+    }
+    /**
+     * Check if key exists.
+     * @param key
+     * @param sI
+     * @param eI
+     * @return
+     */
+    public boolean contains(Number[] key, int sI, int eI) {
+        ensureOpen();
+        int node = ROOT;
+        for (int i = sI; i < eI && node != NONE; i++) {
+            node = child(node, partialKeyOf(key[i]), false);
+        }
+        return node != NONE;
+    }
+
+    public void inc(Number[] key, int value) {
+        inc(key, 0, key.length, value);
+    }
+    public void incPrefixes(Number[] key, int value) {
+        incPrefixes(key, 0, key.length, value);
+    }
+    public void incAll(Number[] key, int value) {
+        incAll(key, 0, key.length, value);
+    }
+    public long get(Number[] key) {
+        return get(key, 0, key.length);
+    }
+    public boolean contains(Number[] key) {
+        return contains(key, 0, key.length);
+    }
+
+    // ---------------- bookkeeping ----------------
+
+    /**
+     * Number of trie entries(keys which have been incremented).
+     * @return
+     */
+    public int size() {
+        ensureOpen();
+        return size;
+    }
+
+    /**
+     * @return bytes of direct memory held by this map.
+     */
+    public long offHeapBytes() {
+        ensureOpen();
+        return (long) nodeSlabs.size() * (1 << NODES_PER_SLAB_SHIFT) * NODE_BYTES
+                + edgeCapacity * EDGE_BYTES;
+    }
+
+    /**
+     * Materializes all the entries, keys are rebuilt by following the parent
+     * ids so this is meant for dumps and debugging only.
+     * @return
+     */
+    public Map<List<Long>, Long> getKeyValueEntries() {
+        ensureOpen();
+        Map<List<Long>, Long> keyListAndValues = new HashMap<>();
+        for (int node = 1; node < nodeCount; node++) {
+            if (!valued(node)) {
+                continue;
+            }
+            List<Long> key = new ArrayList<>();
+            for (int n = node; n != ROOT; n = parent(n)) {
+                key.add(0, partialKey(n));
+            }
+            keyListAndValues.put(key, count(node));
+        }
+        return keyListAndValues;
+    }
+
+    /**
+     * Releases the direct memory right away instead of waiting for the
+     * buffers to be garbage collected.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        free(nodeSlabs);
+        free(edgeSlabs);
+        nodeSlabs = new ArrayList<>();
+        edgeSlabs = new ArrayList<>();
+    }
+
+    private static void free(List<ByteBuffer> slabs) {
+        for (ByteBuffer slab : slabs) {
+            freeDirect(slab);
+        }
+        slabs.clear();
+    }
+
+    /**
+     * Frees a direct buffer through Unsafe.invokeCleaner(java 9+) or the
+     * buffer's own cleaner(java 7/8). When neither is reachable the buffer is
+     * simply left to the garbage collector.
+     */
+    static void freeDirect(ByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            return;
+        } catch (Exception e) {
+            // Not java 9+, try the java 7/8 way below.
+        }
+        try {
+            Method cleaner = buffer.getClass().getMethod("cleaner");
+            cleaner.setAccessible(true);
+            Object c = cleaner.invoke(buffer);
+            if (c != null) {
+                c.getClass().getMethod("clean").invoke(c);
+            }
+        } catch (Exception e) {
+            // Left to the garbage collector.
+        }
+    }
+}
@@ -0,0 +1,386 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Path compressed(radix/Patricia) TrieMap for long, sparse keys. A chain of
+ * single child nodes is stored as one edge whose label is the whole segment
+ * of partial keys, so a key of 200 elements with little branching costs a few
+ * nodes instead of 200. Edges are split when keys diverge in the middle of a
+ * label and merged back whenever a node(other than the root) is left without
+ * a value and with a single child, a valueless node without children is
+ * dropped: every node is either a key or a branching point. Same
+ * get/contains/remove semantics as TrieMap(remove is a wild card remove), but
+ * add() with a null value only clears an existing key and creates no nodes.
+ * There is no ordered iteration or cursor, getKeyValueEntries() is a HashMap.
+ *
+ * @author srikalyc
+ * @param <K>
+ * @param <V> value type.
+ */
+public class RadixTrieMap<K extends Comparable<K>, V> {
+
+    private static final Object[] NO_CHILDREN = new Object[0];
+
+    final Node root = new Node(new Object[0], null);
+    int size = 0;
+    int nodeCount = 1;
+
+    /**
+     * Edge label plus the node at the end of it. Children are sorted by the
+     * first element of their labels(which differ for siblings).
+     */
+    class Node {
+        Object[] label;
+        V value;
+        Object[] children = NO_CHILDREN;
+
+        Node(Object[] label, V value) {
+            this.label = label;
+            this.value = value;
+        }
+
+        @SuppressWarnings("unchecked")
+        K first() {
+            return (K) label[0];
+        }
+
+        @SuppressWarnings("unchecked")
+        Node child(int i) {
+            return (Node) children[i];
+        }
+
+        /**
+         * @return index of the child whose label starts with partialKey, else
+         * (-(insertion point) - 1).
+         */
+        int indexOf(K partialKey) {
+            int lo = 0;
+            int hi = children.length - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int cmp = child(mid).first().compareTo(partialKey);
+                if (cmp < 0) {
+                    lo = mid + 1;
+                } else if (cmp > 0) {
+                    hi = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(lo + 1);
+        }
+
+        void insertChild(int i, Node node) {
+            Object[] grown = new Object[children.length + 1];
+            System.arraycopy(children, 0, grown, 0, i);
+            grown[i] = node;
+            System.arraycopy(children, i, grown, i + 1, children.length - i);
+            children = grown;
+        }
+
+        void removeChild(int i) {
+            Object[] shrunk = children.length == 1 ? NO_CHILDREN : new Object[children.length - 1];
+            System.arraycopy(children, 0, shrunk, 0, i);
+            System.arraycopy(children, i + 1, shrunk, i, children.length - i - 1);
+            children = shrunk;
+        }
+    }
+
+    /**
+     * @return number of leading elements label and key[from..eI) share.
+     */
+    @SuppressWarnings("unchecked")
+    private int match(Object[] label, K[] key, int from, int eI) {
+        int max = Math.min(label.length, eI - from);
+        int m = 0;
+        while (m < max && ((K) label[m]).compareTo(key[from + m]) == 0) {
+            m++;
+        }
+        return m;
+    }
+
+    /**
+     * Used for both adding and updating. sI and eI are the number of elements
+     * from key which should be considered as key. The value is added to the tail.
+     *
+     * @param key
+     * @param sI (start index)
+     * @param eI (end index)
+     * @param value
+     */
+    public void add(K[] key, int sI, int eI, V value) {
+        if (value == null) {
+            clear(key, sI, eI);
+            return;
+        }
+        Node cur = root;
+        int i = sI;
+        while (i < eI) {
+            int c = cur.indexOf(key[i]);
+            if (c < 0) {// New leaf holding the whole rest of the key.
+                cur.insertChild(-(c + 1), new Node(Arrays.copyOfRange(key, i, eI, Object[].class), null));
+                nodeCount++;
+                cur = cur.child(-(c + 1));
+                i = eI;
+                break;
+            }
+            Node child = cur.child(c);
+            int m = match(child.label, key, i, eI);
+            if (m < child.label.length) {// Diverges inside the label, split the edge.
+                Node mid = new Node(Arrays.copyOfRange(child.label, 0, m), null);
+                child.label = Arrays.copyOfRange(child.label, m, child.label.length);
+                mid.children = new Object[]{child};
+                cur.children[c] = mid;
+                nodeCount++;
+                child = mid;
+            }
+            cur = child;
+            i += m;
+        }
+        if (cur.value == null) {
+            size++;
+        }
+        cur.value = value;
+    }
+
+    /**
+     * Sets the value of key to null without creating any node. The node is
+     * then dropped if it has no children or merged with its only child.
+     */
+    private void clear(K[] key, int sI, int eI) {
+        Node parent = null;
+        int c = -1;
+        Node cur = root;
+        int i = sI;
+        while (i < eI) {
+            int idx = cur.indexOf(key[i]);
+            if (idx < 0) {
+                return;
+            }
+            Node child = cur.child(idx);
+            if (match(child.label, key, i, eI) < child.label.length) {
+                return;
+            }
+            parent = cur;
+            c = idx;
+            cur = child;
+            i += child.label.length;
+        }
+        if (cur.value == null) {
+            return;
+        }
+        cur.value = null;
+        size--;
+        if (cur == root) {
+            return;
+        }
+        if (cur.children.length == 0) {
+            parent.removeChild(c);
+            nodeCount--;
+            mergeWithOnlyChild(parent);
+        } else {
+            mergeWithOnlyChild(cur);
+        }
+    }
+
+    /**
+     * Merges node with its child when it has no value and exactly one child.
+     */
+    private void mergeWithOnlyChild(Node node) {
+        if (node == root || node.value != null || node.children.length != 1) {
+            return;
+        }
+        Node only = node.child(0);
+        Object[] merged = Arrays.copyOf(node.label, node.label.length + only.label.length);
+        System.arraycopy(only.label, 0, merged, node.label.length, only.label.length);
+        node.label = merged;
+        node.value = only.value;
+        node.children = only.children;
+        nodeCount--;
+    }
+
+    /**
+     * Check if key exists(as a key or as a prefix of one, like TrieMap).
+     * @param key
+     * @param sI
+     * @param eI
+     * @return
+     */
+    public boolean contains(K[] key, int sI, int eI) {
+        Node cur = root;
+        int i = sI;
+        while (i < eI) {
+            int c = cur.indexOf(key[i]);
+            if (c < 0) {
+                return false;
+            }
+            Node child = cur.child(c);
+            int m = match(child.label, key, i, eI);
+            if (m < child.label.length) {
+                return i + m == eI;// Ends inside the label.
+            }
+            cur = child;
+            i += m;
+        }
+        return true;
+    }
+
+    /**
+     * Return value corresponding to key if exists else null is returned.
+     * @param key
+     * @param sI
+     * @param eI
+     * @return
+     */
+    public V get(K[] key, int sI, int eI) {
+        Node cur = root;
+        int i = sI;
+        while (i < eI) {
+            int c = cur.indexOf(key[i]);
+            if (c < 0) {
+                return null;
+            }
+            Node child = cur.child(c);
+            if (match(child.label, key, i, eI) < child.label.length) {
+                return null;
+            }
+            cur = child;
+            i += child.label.length;
+        }
+        return cur.value;
+    }
+
+    /**
+     * If key if exists delete it along with all the keys it is a prefix of
+     * (wild card remove, as in TrieMap). A valueless node left with a single
+     * child is merged with it.
+     * @param key
+     * @param sI
+     * @param eI
+     * @return
+     */
+    public boolean remove(K[] key, int sI, int eI) {
+        if (sI >= eI) {
+            return false;
+        }
+        Node parent = root;
+        int i = sI;
+        while (true) {
+            int c = parent.indexOf(key[i]);
+            if (c < 0) {
+                return false;
+            }
+            Node child = parent.child(c);
+            int m = match(child.label, key, i, eI);
+            if (i + m == eI) {// Key ends on or inside this edge, the whole child goes.
+                parent.removeChild(c);
+                release(child);
+                mergeWithOnlyChild(parent);
+                return true;
+            }
+            if (m < child.label.length) {
+                return false;
+            }
+            parent = child;
+            i += m;
+        }
+    }
+
+    /**
+     * Fixes size and nodeCount for a detached subtree, iteratively.
+     */
+    private void release(Node node) {
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            Node cur = stack.pop();
+            nodeCount--;
+            if (cur.value != null) {
+                size--;
+            }
+            for (int c = 0; c < cur.children.length; c++) {
+                stack.push(cur.child(c));
+            }
+        }
+    }
+
+    /**
+     * Number of trie entries.
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Number of nodes(edges) including the root, to compare against the one
+     * node per partial key of TrieMap.
+     * @return
+     */
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    public void add(K[] key, V value) {
+        add(key, 0, key.length, value);
+    }
+    public boolean contains(K[] key) {
+        return contains(key, 0, key.length);
+    }
+    public V get(K[] key) {
+        return get(key, 0, key.length);
+    }
+    public boolean remove(K[] key) {
+        return remove(key, 0, key.length);
+    }
+
+    public void printKeyValueEntries() {
+        iterEntries(root, new ArrayList<K>(), null);
+    }
+
+    public Map<List<K>, V> getKeyValueEntries() {
+        Map<List<K>, V> keyListAndValues = new HashMap<>();
+        iterEntries(root, new ArrayList<K>(), keyListAndValues);
+        return keyListAndValues;
+    }
+
+    /**
+     * Recursive in nature. Prints when out is null.
+     */
+    @SuppressWarnings("unchecked")
+    private void iterEntries(Node node, List<K> path, Map<List<K>, V> out) {
+        for (int c = 0; c < node.children.length; c++) {
+            Node child = node.child(c);
+            for (Object o : child.label) {
+                path.add((K) o);
+            }
+            if (child.value != null) {
+                if (out == null) {
+                    System.out.println(path + "," + child.value);
+                } else {
+                    out.put(new ArrayList<>(path), child.value);
+                }
+            }
+            iterEntries(child, path, out);
+            for (int k = 0; k < child.label.length; k++) {
+                path.remove(path.size() - 1);
+            }
+        }
+    }
+}
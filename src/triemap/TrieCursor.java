@@ -0,0 +1,229 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap;
+
+import java.util.Arrays;
+
+/**
+ * Lazy cursor over the entries of a TrieMap in key order(a key comes before
+ * its extensions, siblings in ascending partial key order). It walks the trie
+ * iteratively keeping the current path in its own array, which doubles as the
+ * key buffer, so stepping allocates nothing once the buffer is deep enough.
+ * Usage:
+ * <pre>
+ * TrieCursor&lt;K,V&gt; c = trie.cursor();
+ * while (c.next()) { ... c.keyLength(), c.keyAt(i), c.value() ... }
+ * </pre>
+ * The trie must not be modified while a cursor is in use.
+ *
+ * @author srikalyc
+ * @param <K>
+ * @param <V> value type.
+ */
+public class TrieCursor<K extends Comparable<K>, V> {
+
+    private final TrieMap<K, V>.TrieNode start;
+    /**
+     * Partial keys leading to start, they lead every key of this cursor.
+     */
+    private final Object[] prefix;
+    private final int prefixLength;
+    /**
+     * path[d] is the node of key element d, depth elements are valid.
+     */
+    private Object[] path = new Object[16];
+    private int depth = 0;
+    private boolean started = false;
+    /**
+     * The node on top of path has not been visited yet(after a seek).
+     */
+    private boolean pending = false;
+    /**
+     * Exclusive upper bound of the keys or null.
+     */
+    private Object[] bound;
+
+    TrieCursor(TrieMap<K, V> trie) {
+        this(trie.root, null, 0);
+    }
+
+    /**
+     * Cursor over the entries strictly below start, whose own key is
+     * prefix[0..prefixLength).
+     */
+    TrieCursor(TrieMap<K, V>.TrieNode start, Object[] prefix, int prefixLength) {
+        this.start = start;
+        this.prefix = prefix;
+        this.prefixLength = prefixLength;
+    }
+
+    @SuppressWarnings("unchecked")
+    private TrieMap<K, V>.TrieNode node(int d) {
+        return (TrieMap<K, V>.TrieNode) path[d];
+    }
+
+    private TrieMap<K, V>.TrieNode parent(int d) {
+        return d == 0 ? start : node(d - 1);
+    }
+
+    private void push(TrieMap<K, V>.TrieNode n) {
+        if (depth == path.length) {
+            path = Arrays.copyOf(path, depth * 2);
+        }
+        path[depth++] = n;
+    }
+
+    /**
+     * Moves to the next entry.
+     * @return false when there are no more entries.
+     */
+    public boolean next() {
+        if (!step()) {
+            return false;
+        }
+        if (bound != null && compareToBound() >= 0) {
+            depth = 0;// Past the range, stay exhausted.
+            return false;
+        }
+        return true;
+    }
+
+    private boolean step() {
+        TrieMap<K, V>.TrieNode cur;
+        if (!started) {
+            started = true;
+            cur = start;
+        } else {
+            if (depth == 0) {
+                return false;
+            }
+            cur = node(depth - 1);
+            if (pending) {
+                pending = false;
+                if (cur.value != null) {
+                    return true;
+                }
+            }
+        }
+        while (true) {
+            TrieMap<K, V>.TrieNode c = cur.child == null ? null : cur.child.first();
+            if (c == null) {// Nothing below, go to the next sibling of this or an ancestor.
+                while (c == null && depth > 0) {
+                    TrieMap<K, V>.TrieNode done = node(depth - 1);
+                    TrieMap<K, V>.TrieNode parent = parent(depth - 1);
+                    depth--;
+                    c = parent.child == null ? null : parent.child.higher(done.partialKey);
+                }
+                if (c == null) {
+                    return false;
+                }
+            }
+            push(c);
+            if (c.value != null) {
+                return true;
+            }
+            cur = c;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compareToBound() {
+        int max = Math.min(depth, bound.length);
+        for (int i = 0; i < max; i++) {
+            int cmp = node(i).partialKey.compareTo((K) bound[i]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return depth - bound.length;
+    }
+
+    /**
+     * Positions the cursor so that next() moves to the first entry whose key
+     * is greater than(or equal to when inclusive) key[sI..eI). Keys are
+     * relative to the start node. O(key length * log fan-out).
+     */
+    void seek(K[] key, int sI, int eI, boolean inclusive) {
+        started = sI < eI;// An empty key sorts before all others, start from scratch.
+        pending = false;
+        depth = 0;
+        TrieMap<K, V>.TrieNode cur = start;
+        for (int i = sI; i < eI; i++) {
+            TrieMap<K, V>.TrieNode c = cur.child == null ? null : cur.child.get(key[i]);
+            if (c == null) {// Key is not in the trie, continue at the next greater sibling.
+                c = cur.child == null ? null : cur.child.higher(key[i]);
+                while (c == null && depth > 0) {
+                    TrieMap<K, V>.TrieNode done = node(depth - 1);
+                    TrieMap<K, V>.TrieNode parent = parent(depth - 1);
+                    depth--;
+                    c = parent.child.higher(done.partialKey);
+                }
+                if (c != null) {
+                    push(c);
+                    pending = true;
+                }
+                return;
+            }
+            push(c);
+            cur = c;
+        }
+        pending = inclusive && depth > 0;// Else next() goes on with the extensions of key.
+    }
+
+    /**
+     * Makes next() stop at the first key which is not less than
+     * bound[sI..eI).
+     */
+    void limit(K[] bound, int sI, int eI) {
+        this.bound = Arrays.copyOfRange(bound, sI, eI, Object[].class);
+    }
+
+    /**
+     * @return number of partial keys in the current key.
+     */
+    public int keyLength() {
+        return prefixLength + depth;
+    }
+
+    /**
+     * @param i
+     * @return partial key i of the current key.
+     */
+    @SuppressWarnings("unchecked")
+    public K keyAt(int i) {
+        if (i >= prefixLength + depth) {
+            throw new IndexOutOfBoundsException("Key length " + (prefixLength + depth) + ", index " + i);
+        }
+        return i < prefixLength ? (K) prefix[i] : node(i - prefixLength).partialKey;
+    }
+
+    /**
+     * Copies the current key into dest, which must have room for keyLength()
+     * elements.
+     * @param dest
+     */
+    @SuppressWarnings("unchecked")
+    public void copyKeyInto(K[] dest) {
+        for (int i = 0; i < prefixLength; i++) {
+            dest[i] = (K) prefix[i];
+        }
+        for (int i = 0; i < depth; i++) {
+            dest[prefixLength + i] = node(i).partialKey;
+        }
+    }
+
+    /**
+     * @return value of the current entry.
+     */
+    public V value() {
+        return node(depth - 1).value;
+    }
+}
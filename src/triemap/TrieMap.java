@@ -10,12 +10,18 @@
  */
 package triemap;
 
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Stack;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 
 /**
@@ -27,6 +33,8 @@ import java.util.Stack;
  * {1,3,4}, "dummy" 
  * {32,4},"dam" 
  * {4,4}, "cam"
+ * Keys have at least one partial key: add()/addIfNull()(and NumTrieMap.inc())
+ * reject the empty key, get() and contains() never find it.
  *
  * @author srikalyc
  * @param <K>
@@ -34,54 +42,112 @@ import java.util.Stack;
  */
 public class TrieMap<K extends Comparable<K>,V> {
 
-    final TreeNode root = new TreeNode();
-    int size = 0;
+    /**
+     * Sentinel node(no partial key, no value) whose children are the first
+     * partial keys of all the keys.
+     */
+    final TrieNode root;
+    /**
+     * Reused by the update methods for the nodes along a key, path[0] is the
+     * root.
+     */
+    Object[] path = new Object[16];
+    /**
+     * Children of a node are kept in a sorted array until there are more than
+     * this many of them, then they are promoted to a balanced tree.
+     */
+    final int arrayChildLimit;
+    /**
+     * Opt-in call metrics, null(the default) when disabled.
+     */
+    TrieMetrics metrics;
+    /**
+     * Compaction pass in progress, see compact(long).
+     */
+    private Compaction compaction;
+
+    /**
+     * Receives the stored keys which are prefixes of a query, shortest first.
+     * end is the end index(exclusive) of the prefix in the query array.
+     */
+    public interface PrefixMatchVisitor<V> {
+        void visit(int end, V value);
+    }
     
-    // The following 2 variables are purely for iteration purposes.
-    private final Stack<K> partialKeyStack = new Stack();
-    private final Map<List<K>,V> keyListAndValues = new HashMap<>();
+    public TrieMap() {
+        this(16);
+    }
+    /**
+     * @param arrayChildLimit max fan-out kept in a sorted array before the 
+     * children of a node are promoted to a balanced tree, 0 to always use the tree.
+     */
+    public TrieMap(int arrayChildLimit) {
+        this.arrayChildLimit = arrayChildLimit;
+        this.root = newNode(null, null);
+    }
+
+    /**
+     * Trie over an existing subtree, for views.
+     */
+    TrieMap(TrieNode root, int arrayChildLimit) {
+        this.arrayChildLimit = arrayChildLimit;
+        this.root = root;
+    }
     
+    /**
+     * Prints every entry in key order, one "[partial keys],value" per line.
+     */
     public void printKeyValueEntries() {
-        iterEntries(root, true);
+        TrieCursor<K, V> cursor = cursor();
+        StringBuilder line = new StringBuilder();
+        while (cursor.next()) {
+            line.setLength(0);
+            line.append('[');
+            for (int i = 0; i < cursor.keyLength(); i++) {
+                if (i > 0) {
+                    line.append(", ");
+                }
+                line.append(cursor.keyAt(i));
+            }
+            System.out.println(line.append("],").append(cursor.value()));
+        }
     }
+    /**
+     * Materializes all the entries into a new map. Prefer cursor() for big
+     * tries, it does not hold everything in memory at once.
+     * @return 
+     */
     public Map<List<K>,V> getKeyValueEntries() {
-        iterEntries(root, false);
+        Map<List<K>,V> keyListAndValues = new HashMap<>();
+        TrieCursor<K, V> cursor = cursor();
+        while (cursor.next()) {
+            List<K> key = new ArrayList<>(cursor.keyLength());
+            for (int i = 0; i < cursor.keyLength(); i++) {
+                key.add(cursor.keyAt(i));
+            }
+            keyListAndValues.put(key, cursor.value());
+        }
         return keyListAndValues;
     }
     /**
-     * Recursive in nature.
-     * @param t
-     * @param print
+     * Lazy cursor over the entries in key order. Every cursor has its own
+     * stack and key buffer so any number of them can be open at a time, the
+     * trie must not be modified while they are in use.
      * @return 
      */
-    private void iterEntries(TreeNode t, boolean print) {
-        Iterator<TreeNode> iter = t.iterator();
-        while (iter.hasNext()) {
-            TreeNode treeItem = iter.next();
-            boolean touched = false;
-            if (treeItem.data != null) {
-                touched = true;
-                partialKeyStack.push(treeItem.data.partialKey);
-                if (treeItem.data.value != null) {
-                    List<K> key = new ArrayList<>();
-                    for (int i = 0;i < partialKeyStack.size();i++) {
-                        key.add(partialKeyStack.get(i));
-                    }
-                    keyListAndValues.put(key, treeItem.data.value);
-                    if (print) {
-                        System.out.println(partialKeyStack + "," + treeItem.data.value);
-                    }
-                }
-            }
-            if (treeItem.data != null && treeItem.data.child != null) {
-                iterEntries(treeItem.data.child, print);
-            }
-            if (touched && !partialKeyStack.isEmpty()) {// If untouched do not pop!!.
-                partialKeyStack.pop();
-                touched = false;
-            }
-        }
-        //partialKeyStack.clear();
+    public TrieCursor<K, V> cursor() {
+        return new TrieCursor<>(this);
+    }
+    /**
+     * Stream of the entries in key order. The spliterator behind it splits on
+     * the top level children first and then on deeper subtrees, so
+     * entryStream().parallel() fans a full scan out over the fork/join pool.
+     * Entries are snapshots of key and value, the trie must not be modified
+     * while the stream is in use.
+     * @return 
+     */
+    public Stream<Map.Entry<List<K>,V>> entryStream() {
+        return StreamSupport.stream(new TrieSpliterator<>(this), false);
     }
     /**
      * Used for both adding and updating. sI and eI are the number of elements 
@@ -93,27 +159,13 @@ public class TrieMap<K extends Comparable<K>,V> {
      * @param value
      */
     public void add(K[] key, int sI, int eI, V value) {
-        TrieNode lastNode = root.get(key[sI]);
-
-        if (lastNode == null) {
-            lastNode = new TrieNode(key[sI], null);
-            root.add(lastNode);
-        }
-        TrieNode curNode = lastNode;
-        for (int i = sI + 1; i < eI; i++) {
-            curNode = lastNode.getChild(key[i]);
-            if (curNode == null) {
-                curNode = lastNode.addChild(key[i], null);
-                if (i == eI - 1) {
-                    size++;// Only when you are adding newly increase the size.
-                }
-            }
-            lastNode = curNode;
-        }
-        if (sI == eI - 1) {// Because the loop is never entered we take care of the edge case here.
-            size++;// Only when you are adding newly increase the size.
+        checkNotEmpty(sI, eI);
+        boolean timed = metrics != null && metrics.sample(TrieMetrics.Op.ADD);
+        long start = timed ? System.nanoTime() : 0;
+        int depth = put(key, sI, eI, value, false);
+        if (timed) {
+            metrics.record(TrieMetrics.Op.ADD, start, depth);
         }
-        curNode.value = value;
     }
     /**
      * Used for both adding and updating. sI and eI are the number of elements 
@@ -127,26 +179,15 @@ public class TrieMap<K extends Comparable<K>,V> {
      * @param value
      */
     public void addAll(K[] key, int sI, int eI, V value) {
-        TrieNode lastNode = root.get(key[sI]);
-
-        if (lastNode == null) {
-            lastNode = new TrieNode(key[sI], value);
-            root.add(lastNode);
-            size++;// Only when you are adding newly increase the size.
+        boolean timed = metrics != null && metrics.sample(TrieMetrics.Op.ADD_ALL);
+        long start = timed ? System.nanoTime() : 0;
+        int depth = 0;
+        for (int i = sI; i < eI; i++) {
+            depth += putPrefixes(key, i, eI, value);// The key and then its suffixes.
         }
-        TrieNode curNode = lastNode;
-        for (int i = sI + 1; i < eI; i++) {
-            addPrefixes(key, i, eI, value);// Add the suffixes to the path.
-            curNode = lastNode.getChild(key[i]);
-            if (curNode == null) {
-                curNode = lastNode.addChild(key[i], value);
-                size++;// Only when you are adding newly increase the size.
-            } else {
-                curNode.value = value;
-            }
-            lastNode = curNode;
+        if (timed) {
+            metrics.record(TrieMetrics.Op.ADD_ALL, start, depth);
         }
-        curNode.value = value;
     }
     
     /**
@@ -158,29 +199,12 @@ public class TrieMap<K extends Comparable<K>,V> {
      * @param value
      */
     public void addIfNull(K[] key, int sI, int eI, V value) {
-        TrieNode lastNode = root.get(key[sI]);
-
-        if (lastNode == null) {
-            lastNode = new TrieNode(key[sI], null);
-            root.add(lastNode);
-        }
-        TrieNode curNode = lastNode;
-        for (int i = sI + 1; i < eI; i++) {
-            curNode = lastNode.getChild(key[i]);
-            if (curNode == null) {
-                curNode = lastNode.addChild(key[i], null);
-                if (i == eI - 1) {
-                    size++;// Only when you are adding newly increase the size.
-                }
-            }
-            lastNode = curNode;
-        }
-        if (sI == eI - 1) {// Because the loop is never entered we take care of the edge case here.
-            if (curNode.value == null)// Because we will not change the value if value is not null.
-                size++;// Only when you are adding newly increase the size.
-        }
-        if (curNode.value == null) {
-            curNode.value = value;
+        checkNotEmpty(sI, eI);
+        boolean timed = metrics != null && metrics.sample(TrieMetrics.Op.ADD_IF_NULL);
+        long start = timed ? System.nanoTime() : 0;
+        int depth = put(key, sI, eI, value, true);
+        if (timed) {
+            metrics.record(TrieMetrics.Op.ADD_IF_NULL, start, depth);
         }
     }
 
@@ -196,26 +220,139 @@ public class TrieMap<K extends Comparable<K>,V> {
      * @param value
      */
     public void addPrefixes(K[] key, int sI, int eI, V value) {
-        TrieNode lastNode = root.get(key[sI]);
+        boolean timed = metrics != null && metrics.sample(TrieMetrics.Op.ADD_PREFIXES);
+        long start = timed ? System.nanoTime() : 0;
+        int depth = putPrefixes(key, sI, eI, value);
+        if (timed) {
+            metrics.record(TrieMetrics.Op.ADD_PREFIXES, start, depth);
+        }
+    }
 
-        if (lastNode == null) {
-            lastNode = new TrieNode(key[sI], value);
-            root.add(lastNode);
-            size++;// Only when you are adding newly increase the size.
+    /**
+     * The root is a sentinel, it can not hold the value of an empty key.
+     */
+    static void checkNotEmpty(int sI, int eI) {
+        if (sI >= eI) {
+            throw new IllegalArgumentException("key must not be empty, got sI=" + sI + ", eI=" + eI);
         }
-        TrieNode curNode = lastNode;
-        for (int i = sI + 1; i < eI; i++) {
-            curNode = lastNode.getChild(key[i]);
-            if (curNode == null) {
-                curNode = lastNode.addChild(key[i], value);
-                size++;// Only when you are adding newly increase the size.
-            } else {
-                curNode.value = value;
+    }
+
+    /**
+     * add()/addIfNull() without metrics, subclasses hook in here so that the
+     * public methods time them the same way.
+     * @return nodes descended, as returned by tracePath().
+     */
+    int put(K[] key, int sI, int eI, V value, boolean onlyIfNull) {
+        int depth = tracePath(key, sI, eI);
+        setValues(eI - sI, eI - sI, value, onlyIfNull);
+        return depth;
+    }
+
+    /**
+     * addPrefixes() without metrics, for addAll() and subclasses.
+     * @return nodes descended, as returned by tracePath().
+     */
+    int putPrefixes(K[] key, int sI, int eI, V value) {
+        int depth = tracePath(key, sI, eI);
+        setValues(1, eI - sI, value, false);
+        return depth;
+    }
+
+    /**
+     * Fills path[0..eI - sI] with the root and the nodes of key[sI..eI),
+     * missing nodes are created(without values).
+     * @return number of nodes which were there already(descended before the
+     * first one had to be created), the depth metrics record.
+     */
+    int tracePath(K[] key, int sI, int eI) {
+        ensurePath(eI - sI);
+        int existing = eI - sI;
+        TrieNode cur = root;
+        path[0] = cur;
+        for (int i = sI; i < eI; i++) {
+            TrieNode next = cur.getChild(key[i]);
+            if (next == null) {
+                next = cur.addChild(key[i], null);
+                existing = Math.min(existing, i - sI);
             }
-            lastNode = curNode;
+            cur = next;
+            path[i - sI + 1] = cur;
+        }
+        return existing;
+    }
+
+    void ensurePath(int depth) {
+        if (depth >= path.length) {
+            path = Arrays.copyOf(path, (depth + 1) * 2);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    TrieNode pathNode(int depth) {
+        return (TrieNode) path[depth];
+    }
+
+    /**
+     * Sets value on path[from..depth](only where there is no value yet when
+     * onlyIfNull) and fixes the subtree aggregates of path[0..depth].
+     */
+    void setValues(int from, int depth, V value, boolean onlyIfNull) {
+        int countDelta = 0;
+        long weightDelta = 0;
+        TrieNode below = null;
+        long belowOldPeak = 0;
+        for (int d = depth; d >= 0; d--) {
+            TrieNode node = pathNode(d);
+            long oldPeak = node.peak();
+            if (d >= from) {
+                if (!onlyIfNull || node.value == null) {
+                    countDelta += (value != null ? 1 : 0) - (node.value != null ? 1 : 0);
+                    weightDelta += weight(value) - weight(node.value);
+                    node.value = value;
+                }
+            } else if (countDelta == 0 && weightDelta == 0 && (below == null || below.peak() == belowOldPeak)) {
+                break;// Nothing changes above, e.g when a value is just replaced.
+            }
+            node.adjust(countDelta, weightDelta, below, belowOldPeak);
+            below = node;
+            belowOldPeak = oldPeak;
+        }
+    }
+
+    /**
+     * Adds countDelta/weightDelta to the aggregates of every node in path,
+     * after the value of the last one(whose peak() was tailOldPeak) changed.
+     */
+    void adjustPath(List<TrieNode> path, int countDelta, long weightDelta, long tailOldPeak) {
+        TrieNode below = null;
+        long belowOldPeak = 0;
+        for (int d = path.size() - 1; d >= 0; d--) {
+            TrieNode node = path.get(d);
+            long oldPeak = below == null ? tailOldPeak : node.peak();
+            node.adjust(countDelta, weightDelta, below, belowOldPeak);
+            below = node;
+            belowOldPeak = oldPeak;
+        }
+    }
+
+    /**
+     * Weight of a value in sum aggregates, there are none in a plain TrieMap.
+     */
+    long weight(V value) {
+        return 0;
+    }
+
+    /**
+     * @return node of key[sI..eI) or null.
+     */
+    TrieNode find(K[] key, int sI, int eI) {
+        TrieNode cur = root;
+        for (int i = sI; i < eI && cur != null; i++) {
+            cur = cur.getChild(key[i]);
         }
-        curNode.value = value;
+        return cur;
     }
+
     /**
      * Check if key exists.
      *
@@ -225,7 +362,10 @@ public class TrieMap<K extends Comparable<K>,V> {
      * @return
      */
     public boolean contains(K[] key, int sI, int eI) {
-        TrieNode lastNode = root.get(key[sI]);
+        if (sI >= eI) {
+            return false;
+        }
+        TrieNode lastNode = root.getChild(key[sI]);
         TrieNode curNode = null;
         if (lastNode == null) {
             return false;
@@ -250,7 +390,17 @@ public class TrieMap<K extends Comparable<K>,V> {
      * @return
      */
     public V get(K[] key, int sI, int eI) {
-        TrieNode lastNode = root.get(key[sI]);
+        if (metrics != null && metrics.sample(TrieMetrics.Op.GET)) {
+            return timedLookup(key, sI, eI);
+        }
+        return lookup(key, sI, eI);
+    }
+
+    private V lookup(K[] key, int sI, int eI) {
+        if (sI >= eI) {
+            return null;
+        }
+        TrieNode lastNode = root.getChild(key[sI]);
         TrieNode curNode = lastNode;
         if (lastNode == null) {
             return null;
@@ -265,147 +415,848 @@ public class TrieMap<K extends Comparable<K>,V> {
         return curNode.value;
     }
     /**
-     * If key if exists delete the element.
+     * lookup() which also records its time and the number of nodes it
+     * descended, in the same single descent.
+     */
+    private V timedLookup(K[] key, int sI, int eI) {
+        long start = System.nanoTime();
+        TrieNode curNode = sI < eI ? root.getChild(key[sI]) : null;
+        int depth = curNode == null ? 0 : 1;
+        for (int i = sI + 1; i < eI && curNode != null; i++) {
+            curNode = curNode.getChild(key[i]);
+            if (curNode != null) {
+                depth++;
+            }
+        }
+        V value = curNode == null ? null : curNode.value;
+        metrics.record(TrieMetrics.Op.GET, start, depth);
+        return value;
+    }
+
+    /**
+     * If key if exists delete it along with all the keys it is a prefix of
+     * (wild card remove). The nodes are unlinked from their child indexes,
+     * together with the ancestors left without any entry below them. The
+     * empty key(sI == eI) removes nothing, it is not a wild card for the
+     * whole trie.
      * @param key
      * @param sI
      * @param eI
      * @return 
      */
     public boolean remove(K[] key, int sI, int eI) {
-        TrieNode lastNode = root.get(key[sI]);
-        TrieNode curNode = lastNode;
-        if (lastNode == null) {
+        if (sI >= eI || traceExisting(key, sI, eI) < eI - sI) {
             return false;
         }
-        for (int i = sI+1; i < eI; i++) {
-            curNode = lastNode.getChild(key[i]);
-            if (curNode == null) {
-                return false;
-            }
-            lastNode = curNode;
-        }
+        TrieNode curNode = pathNode(eI - sI);
+        int count = curNode.count;
+        long sum = curNode.sum();
+        long oldPeak = curNode.peak();
         curNode.remove();
-        size--;
+        curNode.adjust(-count, -sum, null, 0);
+        TrieNode below = curNode;
+        for (int d = eI - sI - 1; d >= 0; d--) {
+            TrieNode node = pathNode(d);
+            long nodeOldPeak = node.peak();
+            node.adjust(-count, -sum, below, oldPeak);
+            below = node;
+            oldPeak = nodeOldPeak;
+        }
+        pruneEmpty(eI - sI);
         return true;
     }
 
     /**
-     * Number of trie entries.
-     *
-     * @return
+     * Deletes the value of key only, the keys it is a prefix of stay. Nodes
+     * left without any entry below them are unlinked.
+     * @param key
+     * @param sI
+     * @param eI
+     * @return false if key had no value.
      */
-    public int size() {
-        return size;
+    public boolean removeExact(K[] key, int sI, int eI) {
+        if (traceExisting(key, sI, eI) < eI - sI || pathNode(eI - sI).value == null) {
+            return false;
+        }
+        setValues(eI - sI, eI - sI, null, false);
+        pruneEmpty(eI - sI);
+        return true;
     }
 
     /**
-     * Use this method to add when all the elements in the key are part of the
-     * key.
-     *
-     * @param key
-     * @param value
+     * Fills path[0..] like tracePath() but without creating nodes, as far as
+     * key[sI..eI) is in the trie.
+     * @return number of nodes found below the root, eI - sI if the whole key
+     * is in the trie.
      */
-    public void add(K[] key, V value) {
-        add(key, 0, key.length, value);
+    int traceExisting(K[] key, int sI, int eI) {
+        ensurePath(eI - sI);
+        TrieNode cur = root;
+        path[0] = cur;
+        for (int i = sI; i < eI; i++) {
+            cur = cur.getChild(key[i]);
+            if (cur == null) {
+                return i - sI;
+            }
+            path[i - sI + 1] = cur;
+        }
+        return eI - sI;
     }
 
     /**
-     * Same as add() method but sets the value only when it is the first time.
-     * @param key
-     * @param value 
+     * Unlinks the topmost node of path[1..depth] whose subtree holds no
+     * entries(count 0) from its parent, the aggregates must be up to date.
      */
-    public void addIfNull(K[] key, V value) {
-        addIfNull(key, 0, key.length, value);
+    void pruneEmpty(int depth) {
+        for (int d = 1; d <= depth; d++) {
+            TrieNode node = pathNode(d);
+            if (node.count == 0) {
+                TrieNode parent = pathNode(d - 1);
+                parent.child.remove(node.partialKey);
+                if (parent.child.size() == 0) {
+                    parent.child = null;
+                }
+                return;
+            }
+        }
     }
+
     /**
-     * Use this method to add when all the elements in the key are part of the
-     * key and value has to be added all along the path(i.e prefixes).
-     *
+     * Longest stored key which is a prefix of key[sI..eI)(or all of it), in
+     * a single descent.
      * @param key
-     * @param value
+     * @param sI
+     * @param eI
+     * @return end index(exclusive) of the match in key, -1 if there is none.
      */
-    public void addPrefixes(K[] key, V value) {
-        addPrefixes(key, 0, key.length, value);
+    public int longestPrefixMatch(K[] key, int sI, int eI) {
+        int match = -1;
+        TrieNode cur = root;
+        for (int i = sI; i < eI; i++) {
+            cur = cur.getChild(key[i]);
+            if (cur == null) {
+                break;
+            }
+            if (cur.value != null) {
+                match = i + 1;
+            }
+        }
+        return match;
     }
 
     /**
-     * Use this method to add when all the elements in the key are part of the
-     * key and value has to be added to all suffixes and prefixes.
-     *
+     * Calls visitor for every stored key which is a prefix of key[sI..eI)(or
+     * all of it), shortest first, in a single descent.
      * @param key
-     * @param value
+     * @param sI
+     * @param eI
+     * @param visitor
      */
-    public void addAll(K[] key, V value) {
-        addAll(key, 0, key.length, value);
+    public void forEachPrefixMatch(K[] key, int sI, int eI, PrefixMatchVisitor<? super V> visitor) {
+        TrieNode cur = root;
+        for (int i = sI; i < eI; i++) {
+            cur = cur.getChild(key[i]);
+            if (cur == null) {
+                return;
+            }
+            if (cur.value != null) {
+                visitor.visit(i + 1, cur.value);
+            }
+        }
     }
+
     /**
-     * Use this method to search when all the elements in the key are part of
-     * the key.
-     *
-     * @param key
+     * Number of keys which start with prefix[sI..eI)(prefix itself included
+     * when it has a value). O(prefix length).
+     * @param prefix
+     * @param sI
+     * @param eI
      * @return
      */
-    public boolean contains(K[] key) {
-        return contains(key,0, key.length);
+    public int countUnder(K[] prefix, int sI, int eI) {
+        TrieNode node = find(prefix, sI, eI);
+        return node == null ? 0 : node.count;
     }
 
     /**
-     * Use this method to fetch value when all the elements in the key are part
-     * of the key.
-     *
-     * @param key
-     * @return
+     * Read only view of the keys which start with prefix[sI..eI). Keys of the
+     * view are relative to the prefix(the part after it) and it reads through
+     * to this trie, so later changes show up in it. The entry of prefix itself
+     * would have an empty key and is not part of the view.
+     * @param prefix
+     * @param sI
+     * @param eI
+     * @return the view, null if no key starts with prefix.
      */
-    public V get(K[] key) {
-        return get(key,0, key.length);
+    public TrieMap<K, V> prefixView(K[] prefix, int sI, int eI) {
+        TrieNode node = find(prefix, sI, eI);
+        return node == null ? null : new PrefixView<>(node, arrayChildLimit);
     }
+
     /**
-     * Use this method to delete when all the elements in the key are part
-     * of the key. Please NOTE that remove is a wild card remove which means that
-     * if 
-     * [{1,2,3},"A"]
-     * [{1,2,3,4},"B"]
-     * [{1,2,3,5},"C"]
-     * and if you delete {1,2,3} then {1,2,3,4} and {1,2,3,5} will also be deleted.
-     * @param key
-     * @return 
+     * Keys are ordered lexicographically by partial key, a key comes before
+     * its extensions. The navigation methods below return null when there is
+     * no such key.
+     * @return entry with the least key.
      */
-    public boolean remove(K[] key) {
-        return remove(key,0, key.length);
+    public Map.Entry<List<K>, V> firstEntry() {
+        TrieCursor<K, V> cursor = cursor();
+        return cursor.next() ? entryOf(cursor) : null;
     }
 
-/**
- * TrieNode has partial key,value(may be null) and additional child which is a TreeNode.
- * @param <V> 
- */
-    class TrieNode implements Comparable<TrieNode> {
-        K partialKey;
-        V value;
-        /**
-         * The other part of the whole key(suffix part) can be searched by going 
-         * deep into the child tree.
-         */
-        TreeNode child = null;
-
-        public TrieNode(K partialKey, V value) {
-            this.partialKey = partialKey;
-            this.value = value;
-            child = new TreeNode();
-        }
-        public TrieNode getChild(K partialKey) {
-            if (child != null)
-                return child.get(partialKey);
+    /**
+     * @return entry with the greatest key.
+     */
+    public Map.Entry<List<K>, V> lastEntry() {
+        if (size() == 0) {
             return null;
         }
+        List<K> key = new ArrayList<>();
+        TrieNode node = appendLast(root, key);
+        return new AbstractMap.SimpleImmutableEntry<>(key, node.value);
+    }
 
-        public TrieNode addChild(K partialKey, V value) {
-            TrieNode node = getChild(partialKey);
-            if (node == null) {
-                node = new TrieNode(partialKey, value);
-                child.add(node);
-            } else {
-                node.value = value;
-            }
+    /**
+     * @param key
+     * @param sI
+     * @param eI
+     * @return least key greater than or equal to key[sI..eI).
+     */
+    public List<K> ceilingKey(K[] key, int sI, int eI) {
+        return successor(key, sI, eI, true);
+    }
+
+    /**
+     * @param key
+     * @param sI
+     * @param eI
+     * @return least key strictly greater than key[sI..eI).
+     */
+    public List<K> higherKey(K[] key, int sI, int eI) {
+        return successor(key, sI, eI, false);
+    }
+
+    /**
+     * @param key
+     * @param sI
+     * @param eI
+     * @return greatest key less than or equal to key[sI..eI).
+     */
+    public List<K> floorKey(K[] key, int sI, int eI) {
+        return predecessor(key, sI, eI, true);
+    }
+
+    /**
+     * @param key
+     * @param sI
+     * @param eI
+     * @return greatest key strictly less than key[sI..eI).
+     */
+    public List<K> lowerKey(K[] key, int sI, int eI) {
+        return predecessor(key, sI, eI, false);
+    }
+
+    /**
+     * Cursor over the entries with fromKey &lt;= key &lt; toKey in key order.
+     * It seeks to fromKey in one descent and stops at toKey, so a scan costs
+     * O(key length * log fan-out + output).
+     * @param fromKey inclusive lower bound, null for no lower bound.
+     * @param toKey exclusive upper bound, null for no upper bound.
+     * @return 
+     */
+    public TrieCursor<K, V> range(K[] fromKey, K[] toKey) {
+        TrieCursor<K, V> cursor = cursor();
+        if (fromKey != null) {
+            cursor.seek(fromKey, 0, fromKey.length, true);
+        }
+        if (toKey != null) {
+            cursor.limit(toKey, 0, toKey.length);
+        }
+        return cursor;
+    }
+
+    private List<K> successor(K[] key, int sI, int eI, boolean inclusive) {
+        TrieCursor<K, V> cursor = cursor();
+        cursor.seek(key, sI, eI, inclusive);
+        return cursor.next() ? entryOf(cursor).getKey() : null;
+    }
+
+    /**
+     * Single descent along key: the best candidate is the deepest one, either
+     * the last entry below a smaller sibling of the next partial key or a
+     * proper prefix of key which has a value. Subtree counts skip subtrees
+     * without entries.
+     */
+    private List<K> predecessor(K[] key, int sI, int eI, boolean inclusive) {
+        TrieNode cur = root;
+        int bestDepth = -1;
+        TrieNode bestBelow = null;
+        for (int d = 0; d < eI - sI; d++) {
+            if (d > 0 && cur.value != null) {
+                bestDepth = d;
+                bestBelow = null;
+            }
+            if (cur.child == null) {
+                cur = null;
+                break;
+            }
+            TrieNode low = cur.child.lower(key[sI + d]);
+            while (low != null && low.count == 0) {
+                low = cur.child.lower(low.partialKey);
+            }
+            if (low != null) {
+                bestDepth = d;
+                bestBelow = low;
+            }
+            cur = cur.child.get(key[sI + d]);
+            if (cur == null) {
+                break;
+            }
+        }
+        List<K> out = new ArrayList<>();
+        if (inclusive && cur != null && cur != root && cur.value != null) {
+            bestDepth = eI - sI;
+            bestBelow = null;
+        } else if (bestDepth < 0) {
+            return null;
+        }
+        for (int i = 0; i < bestDepth; i++) {
+            out.add(key[sI + i]);
+        }
+        if (bestBelow != null) {
+            out.add(bestBelow.partialKey);
+            appendLast(bestBelow, out);
+        }
+        return out;
+    }
+
+    /**
+     * Appends the rest of the greatest key in the subtree of node(which must
+     * hold an entry) to out.
+     * @return node of that key.
+     */
+    private TrieNode appendLast(TrieNode node, List<K> out) {
+        while (node.child != null) {
+            TrieNode c = node.child.last();
+            while (c != null && c.count == 0) {
+                c = node.child.lower(c.partialKey);
+            }
+            if (c == null) {
+                break;
+            }
+            out.add(c.partialKey);
+            node = c;
+        }
+        return node;
+    }
+
+    private Map.Entry<List<K>, V> entryOf(TrieCursor<K, V> cursor) {
+        List<K> key = new ArrayList<>(cursor.keyLength());
+        for (int i = 0; i < cursor.keyLength(); i++) {
+            key.add(cursor.keyAt(i));
+        }
+        return new AbstractMap.SimpleImmutableEntry<>(key, cursor.value());
+    }
+
+    /**
+     * Adds a whole batch of keys(each key entirely, as in add(key, value)).
+     * The batch is put in key order(stable, so for duplicate keys the last
+     * one wins as with consecutive add() calls) and every key starts from the
+     * path of the previous one at their common prefix instead of descending
+     * from the root, which pays off for prefix clustered bulk loads. An empty
+     * key is rejected before anything is added.
+     *
+     * @param keys
+     * @param values values[i] is the value of keys[i].
+     */
+    public void addBatch(K[][] keys, V[] values) {
+        checkNotEmpty(keys);
+        List<TrieNode> path = new ArrayList<>();
+        path.add(root);
+        K[] prev = null;
+        for (int o : sortedOrder(keys)) {
+            K[] key = keys[o];
+            TrieNode tail = descend(path, prev, key);
+            int countDelta = (values[o] != null ? 1 : 0) - (tail.value != null ? 1 : 0);
+            long weightDelta = weight(values[o]) - weight(tail.value);
+            long oldPeak = tail.peak();
+            tail.value = values[o];
+            adjustPath(path, countDelta, weightDelta, oldPeak);
+            prev = key;
+        }
+    }
+
+    static <K> void checkNotEmpty(K[][] keys) {
+        for (K[] key : keys) {
+            checkNotEmpty(0, key.length);
+        }
+    }
+
+    /**
+     * Walks to the node of key reusing path, which holds the nodes of prev
+     * (path.get(d) is the node of prev[0..d)). Missing nodes are created.
+     * @return the node of the whole key, path now holds the nodes of key.
+     */
+    TrieNode descend(List<TrieNode> path, K[] prev, K[] key) {
+        int common = 0;
+        if (prev != null) {
+            int max = Math.min(prev.length, key.length);
+            while (common < max && prev[common].compareTo(key[common]) == 0) {
+                common++;
+            }
+        }
+        while (path.size() > common + 1) {
+            path.remove(path.size() - 1);
+        }
+        TrieNode cur = path.get(common);
+        for (int d = common; d < key.length; d++) {
+            TrieNode next = cur.getChild(key[d]);
+            if (next == null) {
+                next = cur.addChild(key[d], null);
+            }
+            path.add(next);
+            cur = next;
+        }
+        return cur;
+    }
+
+    /**
+     * @return indexes of keys in lexicographic key order, a stable sort so
+     * equal keys keep their relative order. Already sorted batches are not
+     * sorted again.
+     */
+    static <K extends Comparable<K>> Integer[] sortedOrder(final K[][] keys) {
+        Comparator<Integer> byKey = new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                K[] x = keys[a];
+                K[] y = keys[b];
+                int max = Math.min(x.length, y.length);
+                for (int i = 0; i < max; i++) {
+                    int cmp = x[i].compareTo(y[i]);
+                    if (cmp != 0) {
+                        return cmp;
+                    }
+                }
+                return x.length - y.length;
+            }
+        };
+        Integer[] order = new Integer[keys.length];
+        boolean sorted = true;
+        for (int i = 0; i < keys.length; i++) {
+            order[i] = i;
+            if (i > 0 && sorted && byKey.compare(i - 1, i) > 0) {
+                sorted = false;
+            }
+        }
+        if (!sorted) {
+            Arrays.sort(order, byKey);
+        }
+        return order;
+    }
+
+    /**
+     * Turns on sampled latency/depth metrics of get, add, addIfNull,
+     * addPrefixes, addAll and the NumTrieMap inc methods(see TrieMetrics.Op),
+     * in subclasses too, null turns them off. One TrieMetrics may be shared
+     * by several tries.
+     * @param metrics
+     */
+    public void setMetrics(TrieMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return metrics set by setMetrics() or null.
+     */
+    public TrieMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Compacts the whole trie in one go, see compact(long).
+     */
+    public void compact() {
+        compaction = null;// A pass started by compact(long) is redone from the top.
+        compact(Long.MAX_VALUE);
+    }
+
+    /**
+     * Time sliced compaction, for long lived tries under churn. Every child
+     * index is rebuilt into an exactly sized array or, above arrayChildLimit,
+     * into a perfectly balanced tree, subtrees without entries are dropped and
+     * the nodes are reallocated in depth first order so that a lookup walks
+     * memory allocated together. A pass works through the trie in key order
+     * over as many calls as it takes, the trie may be modified between
+     * calls(parts changed behind the pass are compacted by the next one).
+     * Cursors, streams and prefix views taken before must not be used after.
+     * @param maxNanos time to spend in this call, checked every few nodes.
+     * @return true if this call finished a pass, the next call starts over.
+     */
+    public boolean compact(long maxNanos) {
+        if (compaction == null) {
+            compaction = new Compaction();
+        }
+        if (compaction.run(maxNanos)) {
+            compaction = null;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * State of a compaction pass: the stack of(already relocated) nodes on the
+     * way down and, per level, the partial key of the last child visited. The
+     * next child is found with higher(), which stays valid when the siblings
+     * change between calls.
+     */
+    private class Compaction {
+        private final List<TrieNode> stack = new ArrayList<>();
+        private final List<K> visited = new ArrayList<>();
+
+        Compaction() {
+            rebuildIndex(root);
+            stack.add(root);
+            visited.add(null);
+        }
+
+        boolean run(long maxNanos) {
+            long start = System.nanoTime();
+            int steps = 0;
+            while (!stack.isEmpty()) {
+                if ((++steps & 63) == 0 && System.nanoTime() - start >= maxNanos) {
+                    return false;
+                }
+                int top = stack.size() - 1;
+                TrieNode parent = stack.get(top);
+                K last = visited.get(top);
+                TrieNode next = parent.child == null ? null
+                        : last == null ? parent.child.first() : parent.child.higher(last);
+                if (next == null) {
+                    stack.remove(top);
+                    visited.remove(top);
+                    continue;
+                }
+                visited.set(top, next.partialKey);
+                TrieNode copy = relocate(next, parent);
+                parent.child.replace(copy);
+                rebuildIndex(copy);
+                stack.add(copy);
+                visited.add(null);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Rebuilds the children of node into a fresh index of the layout
+     * newChildIndex() would end up with, leaving out the children without
+     * entries below them.
+     */
+    private void rebuildIndex(TrieNode node) {
+        if (node.child == null) {
+            return;
+        }
+        Object[] kept = new Object[node.child.size()];
+        int n = 0;
+        for (TrieNode c : node.child) {
+            if (c.count > 0) {
+                kept[n++] = c;
+            }
+        }
+        if (n == 0) {
+            node.child = null;
+        } else if (n <= arrayChildLimit) {
+            ArrayChildIndex array = new ArrayChildIndex();
+            array.nodes = n == kept.length ? kept : Arrays.copyOf(kept, n);
+            array.count = n;
+            node.child = array;
+        } else {
+            TreeChildIndex tree = new TreeChildIndex();
+            tree.top = tree.buildBalanced(kept, 0, n - 1);
+            tree.count = n;
+            node.child = tree;
+        }
+    }
+
+    /**
+     * Fresh copy of node for compaction, taking over its value, children and
+     * aggregates. parent is the(already relocated) parent of node.
+     */
+    TrieNode relocate(TrieNode node, TrieNode parent) {
+        TrieNode copy = newNode(node.partialKey, node.value);
+        copy.child = node.child;
+        copy.copyAggregates(node);
+        return copy;
+    }
+
+    /**
+     * Snapshot of the shape of the trie: node and child index counts, fan-out
+     * and AVL height per level, key length histogram and a heap estimate. One
+     * iterative walk over the nodes, O(nodes) time and O(depth) extra space.
+     * @return
+     */
+    public TrieStats stats() {
+        TrieStats stats = new TrieStats(size());
+        ArrayDeque<Iterator<TrieNode>> stack = new ArrayDeque<>();
+        visit(stats, root, 0, stack);
+        while (!stack.isEmpty()) {
+            Iterator<TrieNode> iter = stack.peek();
+            if (!iter.hasNext()) {
+                stack.pop();
+                continue;
+            }
+            visit(stats, iter.next(), stack.size(), stack);
+        }
+        return stats;
+    }
+
+    private void visit(TrieStats stats, TrieNode node, int depth, ArrayDeque<Iterator<TrieNode>> stack) {
+        stats.node(depth, node.value != null && depth > 0, nodeBytes());
+        ChildIndex index = node.child;
+        if (index == null || index.size() == 0) {
+            return;
+        }
+        index.countInto(stats, depth);
+        stack.push(index.iterator());
+    }
+
+    /**
+     * Shallow size of one node for TrieStats, subclasses with bigger nodes
+     * add their fields.
+     */
+    int nodeBytes() {
+        return TrieStats.TRIE_NODE;
+    }
+
+    /**
+     * Number of trie entries.
+     *
+     * @return
+     */
+    public int size() {
+        return root.value != null ? root.count - 1 : root.count;// Root of a view may have a value.
+    }
+
+    /**
+     * Use this method to add when all the elements in the key are part of the
+     * key.
+     *
+     * @param key
+     * @param value
+     */
+    public void add(K[] key, V value) {
+        add(key, 0, key.length, value);
+    }
+
+    /**
+     * Same as add() method but sets the value only when it is the first time.
+     * @param key
+     * @param value 
+     */
+    public void addIfNull(K[] key, V value) {
+        addIfNull(key, 0, key.length, value);
+    }
+    /**
+     * Use this method to add when all the elements in the key are part of the
+     * key and value has to be added all along the path(i.e prefixes).
+     *
+     * @param key
+     * @param value
+     */
+    public void addPrefixes(K[] key, V value) {
+        addPrefixes(key, 0, key.length, value);
+    }
+
+    /**
+     * Use this method to add when all the elements in the key are part of the
+     * key and value has to be added to all suffixes and prefixes.
+     *
+     * @param key
+     * @param value
+     */
+    public void addAll(K[] key, V value) {
+        addAll(key, 0, key.length, value);
+    }
+    /**
+     * Use this method to search when all the elements in the key are part of
+     * the key.
+     *
+     * @param key
+     * @return
+     */
+    public boolean contains(K[] key) {
+        return contains(key,0, key.length);
+    }
+
+    /**
+     * Use this method to fetch value when all the elements in the key are part
+     * of the key.
+     *
+     * @param key
+     * @return
+     */
+    public V get(K[] key) {
+        return get(key,0, key.length);
+    }
+    /**
+     * Use this method to delete when all the elements in the key are part
+     * of the key. Please NOTE that remove is a wild card remove which means that
+     * if 
+     * [{1,2,3},"A"]
+     * [{1,2,3,4},"B"]
+     * [{1,2,3,5},"C"]
+     * and if you delete {1,2,3} then {1,2,3,4} and {1,2,3,5} will also be deleted.
+     * @param key
+     * @return 
+     */
+    public boolean remove(K[] key) {
+        return remove(key,0, key.length);
+    }
+    /**
+     * Use this method to delete when all the elements in the key are part
+     * of the key. Unlike remove() only the value of key itself is deleted.
+     * @param key
+     * @return 
+     */
+    public boolean removeExact(K[] key) {
+        return removeExact(key, 0, key.length);
+    }
+    /**
+     * Entire array is used as key.
+     * @param key
+     * @return 
+     */
+    public List<K> ceilingKey(K[] key) {
+        return ceilingKey(key, 0, key.length);
+    }
+    /**
+     * Entire array is used as key.
+     * @param key
+     * @return 
+     */
+    public List<K> higherKey(K[] key) {
+        return higherKey(key, 0, key.length);
+    }
+    /**
+     * Entire array is used as key.
+     * @param key
+     * @return 
+     */
+    public List<K> floorKey(K[] key) {
+        return floorKey(key, 0, key.length);
+    }
+    /**
+     * Entire array is used as key.
+     * @param key
+     * @return 
+     */
+    public List<K> lowerKey(K[] key) {
+        return lowerKey(key, 0, key.length);
+    }
+    /**
+     * Entire array is used as key.
+     * @param key
+     * @return 
+     */
+    public int longestPrefixMatch(K[] key) {
+        return longestPrefixMatch(key, 0, key.length);
+    }
+    /**
+     * Entire array is used as key.
+     * @param key
+     * @param visitor
+     */
+    public void forEachPrefixMatch(K[] key, PrefixMatchVisitor<? super V> visitor) {
+        forEachPrefixMatch(key, 0, key.length, visitor);
+    }
+    /**
+     * Entire array is used as prefix.
+     * @param prefix
+     * @return 
+     */
+    public int countUnder(K[] prefix) {
+        return countUnder(prefix, 0, prefix.length);
+    }
+    /**
+     * Entire array is used as prefix.
+     * @param prefix
+     * @return 
+     */
+    public TrieMap<K, V> prefixView(K[] prefix) {
+        return prefixView(prefix, 0, prefix.length);
+    }
+
+/**
+ * TrieNode has partial key,value(may be null) and additional children which
+ * are kept in a ChildIndex(created lazily on the first addChild()).
+ * @param <V> 
+ */
+    class TrieNode implements Comparable<TrieNode> {
+        K partialKey;
+        V value;
+        /**
+         * The other part of the whole key(suffix part) can be searched by going 
+         * deep into the child index.
+         */
+        ChildIndex child = null;
+        /**
+         * Number of entries in this subtree, this node included.
+         */
+        int count;
+
+        public TrieNode(K partialKey, V value) {
+            this.partialKey = partialKey;
+            this.value = value;
+        }
+
+        /**
+         * Applies a change of the entries below(or at) this node to the
+         * subtree aggregates. changed is the child on the changed path(null
+         * when only this node's value changed) and changedOldPeak its peak()
+         * before the change.
+         */
+        void adjust(int countDelta, long weightDelta, TrieNode changed, long changedOldPeak) {
+            count += countDelta;
+        }
+
+        /**
+         * Takes over the subtree aggregates of other, for compaction.
+         */
+        void copyAggregates(TrieNode other) {
+            count = other.count;
+        }
+
+        /**
+         * @return sum of weight() over the values in this subtree.
+         */
+        long sum() {
+            return 0;
+        }
+
+        /**
+         * @return greatest weight() in this subtree, kept by subclasses only.
+         */
+        long peak() {
+            return 0;
+        }
+        public TrieNode getChild(K partialKey) {
+            if (child != null)
+                return child.get(partialKey);
+            return null;
+        }
+
+        public TrieNode addChild(K partialKey, V value) {
+            TrieNode node = getChild(partialKey);
+            if (node == null) {
+                node = newNode(partialKey, value);
+                if (child == null) {
+                    child = newChildIndex();
+                }
+                child = child.add(node);// The index may have been promoted.
+            } else {
+                node.value = value;
+            }
             return node;
         }
         
@@ -421,136 +1272,550 @@ public class TrieMap<K extends Comparable<K>,V> {
 
         @Override
         public String toString() {
-            return "[" +partialKey + "," +value.toString() + "]";
+            return "[" +partialKey + "," +value + "]";
         }
 
     }
+
     /**
-     * Special Binary tree.
-     * @param <V> 
+     * Creates every node of the trie, subclasses which keep more subtree
+     * aggregates return their own TrieNode subclass.
+     * @param partialKey
+     * @param value
+     * @return 
      */
-    class TreeNode implements Iterable<TreeNode>{
+    TrieNode newNode(K partialKey, V value) {
+        return new TrieNode(partialKey, value);
+    }
 
-        TreeNode left;
-        TreeNode right;
-        
-        TrieNode data;
-        public void print() {
-            if (data != null) {
-                System.out.print("<" +data.partialKey + "," +data.value+ ">");
+    /**
+     * Creates the index which holds the children of a newly branched TrieNode:
+     * a sorted array while arrayChildLimit allows one, an AVL tree otherwise.
+     * @return 
+     */
+    ChildIndex newChildIndex() {
+        if (arrayChildLimit > 0) {
+            return new ArrayChildIndex();
+        }
+        return new TreeChildIndex();
+    }
+
+    /**
+     * Children of a TrieNode ordered by their partial keys. Iteration is in
+     * ascending order of partial key.
+     */
+    abstract class ChildIndex implements Iterable<TrieNode> {
+        /**
+         * @param partialKey
+         * @return child with the given partial key or null.
+         */
+        abstract TrieNode get(K partialKey);
+        /**
+         * Adds a node whose partial key is not present yet.
+         * @param node
+         * @return the index which holds the children from now on, this or a
+         * promoted index when the fan-out outgrew this one.
+         */
+        abstract ChildIndex add(TrieNode node);
+        /**
+         * @return number of children.
+         */
+        abstract int size();
+        /**
+         * @return child with the smallest partial key or null.
+         */
+        abstract TrieNode first();
+        /**
+         * @param partialKey
+         * @return child with the smallest partial key greater than the given
+         * one or null.
+         */
+        abstract TrieNode higher(K partialKey);
+        /**
+         * @return child with the greatest partial key or null.
+         */
+        abstract TrieNode last();
+        /**
+         * @param partialKey
+         * @return child with the greatest partial key less than the given one
+         * or null.
+         */
+        abstract TrieNode lower(K partialKey);
+        /**
+         * @param partialKey
+         * @return false if there is no child with the given partial key.
+         */
+        abstract boolean remove(K partialKey);
+        /**
+         * Puts node in place of the child with the same partial key, which
+         * must be present.
+         * @param node
+         */
+        abstract void replace(TrieNode node);
+        /**
+         * Adds this index(of a node at depth) to stats.
+         */
+        void countInto(TrieStats stats, int depth) {
+            stats.arrayIndex(depth, size(), size());
+        }
+    }
+
+    /**
+     * Sorted array of children searched by binary search. Good for small 
+     * fan-out, gets promoted to a TreeChildIndex once it grows beyond 
+     * arrayChildLimit entries.
+     */
+    class ArrayChildIndex extends ChildIndex {
+        Object[] nodes = new Object[2];
+        int count = 0;
+
+        @SuppressWarnings("unchecked")
+        TrieNode at(int i) {
+            return (TrieNode) nodes[i];
+        }
+        /**
+         * @param partialKey
+         * @return index of the key if found else (-(insertion point) - 1).
+         */
+        int indexOf(K partialKey) {
+            int lo = 0;
+            int hi = count - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int cmp = at(mid).partialKey.compareTo(partialKey);
+                if (cmp < 0) {
+                    lo = mid + 1;
+                } else if (cmp > 0) {
+                    hi = mid - 1;
+                } else {
+                    return mid;
+                }
             }
-            if (left != null) {
-                left.print();
+            return -(lo + 1);
+        }
+
+        @Override
+        TrieNode get(K partialKey) {
+            int i = indexOf(partialKey);
+            return i >= 0 ? at(i) : null;
+        }
+
+        @Override
+        ChildIndex add(TrieNode node) {
+            if (count >= arrayChildLimit) {
+                TreeChildIndex tree = new TreeChildIndex();
+                tree.top = tree.buildBalanced(nodes, 0, count - 1);
+                tree.count = count;
+                return tree.add(node);
             }
-            if (right != null) {
-                right.print();
+            int i = -(indexOf(node.partialKey) + 1);
+            if (count == nodes.length) {
+                Object[] grown = new Object[Math.min(nodes.length * 2, Math.max(arrayChildLimit, 2))];
+                System.arraycopy(nodes, 0, grown, 0, count);
+                nodes = grown;
             }
+            System.arraycopy(nodes, i, nodes, i + 1, count - i);
+            nodes[i] = node;
+            count++;
+            return this;
         }
-        public void add(TrieNode data) {
-            if (this.data == null) {
-                this.data = data;
-                return;
+
+        @Override
+        int size() {
+            return count;
+        }
+
+        @Override
+        TrieNode first() {
+            return count > 0 ? at(0) : null;
+        }
+
+        @Override
+        TrieNode higher(K partialKey) {
+            int i = indexOf(partialKey);
+            i = i >= 0 ? i + 1 : -(i + 1);
+            return i < count ? at(i) : null;
+        }
+
+        @Override
+        TrieNode last() {
+            return count > 0 ? at(count - 1) : null;
+        }
+
+        @Override
+        TrieNode lower(K partialKey) {
+            int i = indexOf(partialKey);
+            i = i >= 0 ? i - 1 : -(i + 1) - 1;
+            return i >= 0 ? at(i) : null;
+        }
+
+        @Override
+        boolean remove(K partialKey) {
+            int i = indexOf(partialKey);
+            if (i < 0) {
+                return false;
             }
-            if (data.compareTo(this.data) < 0) {
-                if (left == null) {
-                    left = new TreeNode();
+            System.arraycopy(nodes, i + 1, nodes, i, count - i - 1);
+            nodes[--count] = null;
+            return true;
+        }
+
+        @Override
+        void countInto(TrieStats stats, int depth) {
+            stats.arrayIndex(depth, count, nodes.length);
+        }
+
+        @Override
+        void replace(TrieNode node) {
+            nodes[indexOf(node.partialKey)] = node;
+        }
+
+        @Override
+        public Iterator<TrieNode> iterator() {
+            return new Iterator<TrieNode>() {
+                int i = 0;
+                @Override
+                public boolean hasNext() {
+                    return i < count;
                 }
-                left.add(data);
-            } else {
-                if (right == null) {
-                    right = new TreeNode();
+                @Override
+                public TrieNode next() {
+                    if (i >= count) {
+                        throw new NoSuchElementException();
+                    }
+                    return at(i++);
                 }
-                right.add(data);
-            }
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
         }
+    }
+
+    /**
+     * AVL tree of TreeNodes, used for large fan-out. Stays balanced no matter
+     * in which order the partial keys arrive(ascending id sequences would 
+     * otherwise turn a plain BST into a linked list).
+     */
+    class TreeChildIndex extends ChildIndex {
+        TreeNode top;
+        int count = 0;
 
         /**
-         * This method is the exact reason we implemented a TreeNode and did not use
-         * TreeNodeSet(you do not have get() in TreeNodeSet as it does not make sense) 
-         * but in our case we should be able to search the TrieNode based on a part of 
-         * the TrieNode i.e a key.
-         *
-         * @param partialKey
-         * @return
+         * Builds a perfectly balanced tree out of an already sorted array.
          */
-        public TrieNode get(K partialKey) {
-            if (data == null) {
+        @SuppressWarnings("unchecked")
+        TreeNode buildBalanced(Object[] sorted, int lo, int hi) {
+            if (lo > hi) {
                 return null;
             }
-            if (data.partialKey.compareTo(partialKey) == 0) {
-                return data;
+            int mid = (lo + hi) >>> 1;
+            TreeNode t = new TreeNode((TrieNode) sorted[mid]);
+            t.left = buildBalanced(sorted, lo, mid - 1);
+            t.right = buildBalanced(sorted, mid + 1, hi);
+            t.fixHeight();
+            return t;
+        }
+
+        @Override
+        TrieNode get(K partialKey) {
+            TreeNode t = top;
+            while (t != null) {
+                int cmp = partialKey.compareTo(t.data.partialKey);
+                if (cmp == 0) {
+                    return t.data;
+                }
+                t = cmp < 0 ? t.left : t.right;
+            }
+            return null;
+        }
+
+        @Override
+        ChildIndex add(TrieNode node) {
+            top = insert(top, node);
+            count++;
+            return this;
+        }
+
+        private TreeNode insert(TreeNode t, TrieNode node) {
+            if (t == null) {
+                return new TreeNode(node);
+            }
+            if (node.compareTo(t.data) < 0) {
+                t.left = insert(t.left, node);
+            } else {
+                t.right = insert(t.right, node);
+            }
+            return t.rebalance();
+        }
+
+        @Override
+        int size() {
+            return count;
+        }
+
+        @Override
+        TrieNode first() {
+            TreeNode t = top;
+            while (t != null && t.left != null) {
+                t = t.left;
+            }
+            return t == null ? null : t.data;
+        }
+
+        @Override
+        TrieNode higher(K partialKey) {
+            TreeNode t = top;
+            TrieNode best = null;
+            while (t != null) {
+                if (t.data.partialKey.compareTo(partialKey) > 0) {
+                    best = t.data;
+                    t = t.left;
+                } else {
+                    t = t.right;
+                }
+            }
+            return best;
+        }
+
+        @Override
+        TrieNode last() {
+            TreeNode t = top;
+            while (t != null && t.right != null) {
+                t = t.right;
             }
-            if (partialKey.compareTo(data.partialKey) < 0) {
-                if (left != null) {
-                    return left.get(partialKey);
+            return t == null ? null : t.data;
+        }
+
+        @Override
+        TrieNode lower(K partialKey) {
+            TreeNode t = top;
+            TrieNode best = null;
+            while (t != null) {
+                if (t.data.partialKey.compareTo(partialKey) < 0) {
+                    best = t.data;
+                    t = t.right;
+                } else {
+                    t = t.left;
                 }
+            }
+            return best;
+        }
+
+        @Override
+        boolean remove(K partialKey) {
+            if (get(partialKey) == null) {
+                return false;
+            }
+            top = delete(top, partialKey);
+            count--;
+            return true;
+        }
+
+        @Override
+        void countInto(TrieStats stats, int depth) {
+            stats.treeIndex(depth, count, top == null ? 0 : top.height);
+        }
+
+        @Override
+        void replace(TrieNode node) {
+            TreeNode t = top;
+            int cmp;
+            while ((cmp = node.partialKey.compareTo(t.data.partialKey)) != 0) {
+                t = cmp < 0 ? t.left : t.right;
+            }
+            t.data = node;
+        }
+
+        /**
+         * AVL delete of a key which is present, a node with two children
+         * takes over the data of its inorder successor.
+         */
+        private TreeNode delete(TreeNode t, K partialKey) {
+            int cmp = partialKey.compareTo(t.data.partialKey);
+            if (cmp < 0) {
+                t.left = delete(t.left, partialKey);
+            } else if (cmp > 0) {
+                t.right = delete(t.right, partialKey);
             } else {
-                if (right != null) {
-                    return right.get(partialKey);
+                if (t.left == null) {
+                    return t.right;
+                }
+                if (t.right == null) {
+                    return t.left;
                 }
+                TreeNode successor = t.right;
+                while (successor.left != null) {
+                    successor = successor.left;
+                }
+                t.data = successor.data;
+                t.right = delete(t.right, successor.data.partialKey);
             }
-            return null;
+            return t.rebalance();
         }
 
-        private TreeNode currentIterNode = this;
-        private final Stack<TreeNode> iterStack = new Stack<>();
         /**
-         * If there is an iterator open already its next()/hasNext() will 
-         * malfunction when this is called again.
+         * Inorder traversal without recursion, every iterator has its own stack
+         * so several of them can be open at the same time.
          * @return 
          */
         @Override
-        public Iterator<TreeNode> iterator() {
-            currentIterNode = this;
-            iterStack.clear();
-            Iterator<TreeNode> iter = new Iterator<TreeNode>() {
-                @Override
-                public void remove() {
-                    //TODO: Implement something here please.
+        public Iterator<TrieNode> iterator() {
+            return new Iterator<TrieNode>() {
+                private final ArrayDeque<TreeNode> iterStack = new ArrayDeque<>();
+                {
+                    pushLeftMost(top);
                 }
-                boolean firstAccess = true;
-                /**
-                 * Part of the effort to enable inorder traversal without recursion.
-                 */
-                private void gotoLeftMost() {
-                    while (currentIterNode != null) {
-                        iterStack.push(currentIterNode);
-                        currentIterNode = currentIterNode.left;
+                private void pushLeftMost(TreeNode t) {
+                    while (t != null) {
+                        iterStack.push(t);
+                        t = t.left;
                     }
                 }
                 @Override
                 public boolean hasNext() {
-                    if (firstAccess) {
-                        firstAccess = false;
-                    }
-                    gotoLeftMost();
                     return !iterStack.isEmpty();
                 }
-/**
- * Fetches elements in an inorder fashion.
- * @return 
- */
                 @Override
-                public TreeNode next() {
-                    if (firstAccess) {
-                        gotoLeftMost();
-                        firstAccess = false;
-                    }
-                    TreeNode poppedItem = null;
-                    if (!iterStack.isEmpty()) {
-                        poppedItem = iterStack.pop();
-                        if (poppedItem.right != null) {
-                            currentIterNode = poppedItem.right;
-                            gotoLeftMost();
-                        }
+                public TrieNode next() {
+                    if (iterStack.isEmpty()) {
+                        throw new NoSuchElementException();
                     }
-                    return poppedItem;
+                    TreeNode poppedItem = iterStack.pop();
+                    pushLeftMost(poppedItem.right);
+                    return poppedItem.data;
+                }
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
                 }
-                
             };
-            return iter;
         }
     }
 
-    
+    /**
+     * Node of the AVL tree kept by TreeChildIndex.
+     */
+    class TreeNode {
+
+        TreeNode left;
+        TreeNode right;
+        int height = 1;
+        
+        TrieNode data;
+
+        TreeNode(TrieNode data) {
+            this.data = data;
+        }
+
+        public void print() {
+            if (data != null) {
+                System.out.print("<" +data.partialKey + "," +data.value+ ">");
+            }
+            if (left != null) {
+                left.print();
+            }
+            if (right != null) {
+                right.print();
+            }
+        }
+
+        private int height(TreeNode t) {
+            return t == null ? 0 : t.height;
+        }
+
+        void fixHeight() {
+            height = Math.max(height(left), height(right)) + 1;
+        }
+
+        private TreeNode rotateRight() {
+            TreeNode l = left;
+            left = l.right;
+            l.right = this;
+            fixHeight();
+            l.fixHeight();
+            return l;
+        }
+
+        private TreeNode rotateLeft() {
+            TreeNode r = right;
+            right = r.left;
+            r.left = this;
+            fixHeight();
+            r.fixHeight();
+            return r;
+        }
+
+        /**
+         * @return the new subtree root after restoring the AVL invariant.
+         */
+        TreeNode rebalance() {
+            fixHeight();
+            int balance = height(left) - height(right);
+            if (balance > 1) {
+                if (height(left.left) < height(left.right)) {
+                    left = left.rotateLeft();
+                }
+                return rotateRight();
+            }
+            if (balance < -1) {
+                if (height(right.right) < height(right.left)) {
+                    right = right.rotateRight();
+                }
+                return rotateLeft();
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Read only TrieMap over the subtree of one node, see prefixView().
+     */
+    static class PrefixView<K extends Comparable<K>, V> extends TrieMap<K, V> {
+
+        PrefixView(TrieMap<K, V>.TrieNode root, int arrayChildLimit) {
+            super(root, arrayChildLimit);
+        }
+
+        @Override
+        public void add(K[] key, int sI, int eI, V value) {
+            throw new UnsupportedOperationException("Prefix views are read only");
+        }
+
+        @Override
+        public void addAll(K[] key, int sI, int eI, V value) {
+            throw new UnsupportedOperationException("Prefix views are read only");
+        }
+
+        @Override
+        public void addIfNull(K[] key, int sI, int eI, V value) {
+            throw new UnsupportedOperationException("Prefix views are read only");
+        }
+
+        @Override
+        public void addPrefixes(K[] key, int sI, int eI, V value) {
+            throw new UnsupportedOperationException("Prefix views are read only");
+        }
+
+        @Override
+        public void addBatch(K[][] keys, V[] values) {
+            throw new UnsupportedOperationException("Prefix views are read only");
+        }
+
+        @Override
+        public boolean remove(K[] key, int sI, int eI) {
+            throw new UnsupportedOperationException("Prefix views are read only");
+        }
+
+        @Override
+        public boolean removeExact(K[] key, int sI, int eI) {
+            throw new UnsupportedOperationException("Prefix views are read only");
+        }
+
+        @Override
+        public boolean compact(long maxNanos) {
+            throw new UnsupportedOperationException("Prefix views are read only");
+        }
+    }
 }
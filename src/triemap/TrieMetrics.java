@@ -0,0 +1,296 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Opt-in call metrics for TrieMap/NumTrieMap, see TrieMap.setMetrics(). Every
+ * call is counted(for the rate) and one call in sampleInterval is timed, the
+ * latency going into a log-linear(HDR style) histogram whose buckets are
+ * within 1/16 of the values they hold, together with the traversal depth of
+ * the call(nodes descended: nodes found by get, nodes which existed already
+ * by add/inc, summed over the descents of addAll/incAll). A trie without
+ * metrics pays one null check per call.
+ *
+ * Counters and histograms are per thread, so one TrieMetrics can be shared by
+ * the tries of several threads without contention. snapshot() adds them up
+ * without stopping the writers, a snapshot taken under traffic may miss the
+ * calls being recorded at that moment. The counters of threads which have
+ * ended are folded into one total(on the next snapshot() or new thread), so
+ * memory follows the number of live threads, not of all threads ever seen.
+ *
+ * @author srikalyc
+ */
+public class TrieMetrics {
+
+    public enum Op {
+        GET, ADD, ADD_IF_NULL, ADD_PREFIXES, ADD_ALL, INC, INC_PREFIXES, INC_ALL
+    }
+
+    /**
+     * Values below this get a bucket of their own, above it every power of 2
+     * range is split into SUB_BUCKETS buckets.
+     */
+    static final int LINEAR = 32;
+    static final int SUB_BITS = 4;
+    static final int SUB_BUCKETS = 1 << SUB_BITS;
+    static final int BUCKETS = LINEAR + (63 - 5) * SUB_BUCKETS;
+    /**
+     * Depths from here on share the last depth bucket.
+     */
+    static final int MAX_DEPTH = 64;
+
+    private final int sampleMask;
+    private final long startNanos = System.nanoTime();
+    /**
+     * Recorders of the threads which may still be recording, guarded by
+     * itself like retired.
+     */
+    private final List<Recorder> recorders = new ArrayList<>();
+    /**
+     * Totals of the threads which have ended.
+     */
+    private final Recorder retired = new Recorder(null);
+    private final ThreadLocal<Recorder> local = new ThreadLocal<Recorder>() {
+        @Override
+        protected Recorder initialValue() {
+            Recorder recorder = new Recorder(Thread.currentThread());
+            synchronized (recorders) {
+                retireEnded();
+                recorders.add(recorder);
+            }
+            return recorder;
+        }
+    };
+
+    /**
+     * Times every 64th call.
+     */
+    public TrieMetrics() {
+        this(64);
+    }
+
+    /**
+     * @param sampleInterval one call in this many is timed, a power of 2(1 to
+     * time every call).
+     */
+    public TrieMetrics(int sampleInterval) {
+        if (sampleInterval < 1 || Integer.bitCount(sampleInterval) != 1) {
+            throw new IllegalArgumentException("sampleInterval must be a power of 2, got " + sampleInterval);
+        }
+        this.sampleMask = sampleInterval - 1;
+    }
+
+    /**
+     * Counters of one thread.
+     */
+    private static class Recorder {
+        /**
+         * Weak, the metrics must not keep ended threads around.
+         */
+        final WeakReference<Thread> owner;
+        final long[] calls = new long[Op.values().length];
+        final long[][] latency = new long[Op.values().length][BUCKETS];
+        final long[][] depth = new long[Op.values().length][MAX_DEPTH];
+
+        Recorder(Thread owner) {
+            this.owner = new WeakReference<>(owner);
+        }
+
+        boolean ended() {
+            Thread thread = owner.get();
+            return thread == null || !thread.isAlive();
+        }
+
+        void addTo(Recorder total) {
+            for (int op = 0; op < calls.length; op++) {
+                total.calls[op] += calls[op];
+                for (int b = 0; b < BUCKETS; b++) {
+                    total.latency[op][b] += latency[op][b];
+                }
+                for (int d = 0; d < MAX_DEPTH; d++) {
+                    total.depth[op][d] += depth[op][d];
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves the counters of ended threads into retired. Seeing a thread ended
+     * (isAlive() false) also makes all its writes visible here. Called with
+     * the lock of recorders held.
+     */
+    private void retireEnded() {
+        for (Iterator<Recorder> iter = recorders.iterator(); iter.hasNext();) {
+            Recorder recorder = iter.next();
+            if (recorder.ended()) {
+                recorder.addTo(retired);
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Counts a call of op.
+     * @return true if the call should be timed and record()ed.
+     */
+    boolean sample(Op op) {
+        return (local.get().calls[op.ordinal()]++ & sampleMask) == 0;
+    }
+
+    /**
+     * Records a sampled call which started at startNanos(System.nanoTime())
+     * and descended depth nodes(existing ones only).
+     */
+    void record(Op op, long startNanos, int depth) {
+        Recorder recorder = local.get();
+        recorder.latency[op.ordinal()][bucket(System.nanoTime() - startNanos)]++;
+        recorder.depth[op.ordinal()][Math.min(depth, MAX_DEPTH - 1)]++;
+    }
+
+    static int bucket(long nanos) {
+        if (nanos < LINEAR) {
+            return nanos < 0 ? 0 : (int) nanos;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR + (exp - 5) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return greatest value which falls into bucket.
+     */
+    static long bucketValue(int bucket) {
+        if (bucket < LINEAR) {
+            return bucket;
+        }
+        int exp = (bucket - LINEAR) / SUB_BUCKETS + 5;
+        long sub = (bucket - LINEAR) % SUB_BUCKETS;
+        long width = 1L << (exp - SUB_BITS);
+        return ((SUB_BUCKETS + sub) << (exp - SUB_BITS)) + width - 1;
+    }
+
+    /**
+     * @param op
+     * @return totals of op over all the threads so far.
+     */
+    public Snapshot snapshot(Op op) {
+        Snapshot snapshot = new Snapshot(System.nanoTime() - startNanos);
+        synchronized (recorders) {
+            retireEnded();
+            List<Recorder> all = new ArrayList<>(recorders);
+            all.add(retired);
+            for (Recorder recorder : all) {
+                snapshot.calls += recorder.calls[op.ordinal()];
+                long[] latency = recorder.latency[op.ordinal()];
+                for (int b = 0; b < BUCKETS; b++) {
+                    snapshot.latency[b] += latency[b];
+                }
+                long[] depth = recorder.depth[op.ordinal()];
+                for (int d = 0; d < MAX_DEPTH; d++) {
+                    snapshot.depth[d] += depth[d];
+                }
+            }
+        }
+        for (long n : snapshot.latency) {
+            snapshot.sampled += n;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Totals of one operation.
+     */
+    public static class Snapshot {
+        private final long elapsedNanos;
+        private long calls = 0;
+        private long sampled = 0;
+        private final long[] latency = new long[BUCKETS];
+        private final long[] depth = new long[MAX_DEPTH];
+
+        Snapshot(long elapsedNanos) {
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return number of calls.
+         */
+        public long calls() {
+            return calls;
+        }
+
+        /**
+         * @return number of timed calls.
+         */
+        public long sampled() {
+            return sampled;
+        }
+
+        /**
+         * @return calls per second since the metrics were created.
+         */
+        public double rate() {
+            return elapsedNanos <= 0 ? 0 : calls * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * @param quantile e.g 0.5, 0.99, 0.999.
+         * @return latency in nanoseconds which quantile of the timed calls did
+         * not exceed(within 1/16), 0 when nothing was timed.
+         */
+        public long percentile(double quantile) {
+            if (sampled == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * sampled));
+            long seen = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                seen += latency[b];
+                if (seen >= rank) {
+                    return bucketValue(b);
+                }
+            }
+            return bucketValue(BUCKETS - 1);
+        }
+
+        /**
+         * @return mean nodes descended by the timed calls.
+         */
+        public double meanDepth() {
+            long total = 0;
+            long n = 0;
+            for (int d = 0; d < MAX_DEPTH; d++) {
+                total += d * depth[d];
+                n += depth[d];
+            }
+            return n == 0 ? 0 : (double) total / n;
+        }
+
+        /**
+         * @return number of timed calls by depth, the last entry counts
+         * MAX_DEPTH - 1 and deeper.
+         */
+        public long[] depthHistogram() {
+            return Arrays.copyOf(depth, depth.length);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("calls=%d rate=%.0f/s sampled=%d p50=%dns p99=%dns p999=%dns meanDepth=%.2f",
+                    calls, rate(), sampled, percentile(0.5), percentile(0.99), percentile(0.999), meanDepth());
+        }
+    }
+}
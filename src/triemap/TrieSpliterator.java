@@ -0,0 +1,190 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap;
+
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator over the entries of a TrieMap in key order. It covers a run of
+ * sibling subtrees which share a prefix: splitting hands half of the run to
+ * the new spliterator, and a run of a single subtree is split by taking over
+ * the entries on the way down to its first node with several children and
+ * replacing it by the run of those children(so tries whose keys share a long
+ * leading prefix split too). A scan fans out over the top level children
+ * first and then over deeper subtrees.
+ *
+ * @author srikalyc
+ * @param <K>
+ * @param <V> value type.
+ */
+class TrieSpliterator<K extends Comparable<K>, V> implements Spliterator<Map.Entry<List<K>, V>> {
+
+    /**
+     * Partial keys leading to the nodes of the run.
+     */
+    private Object[] prefix;
+    private Object[] nodes;
+    private int lo;
+    private int hi;
+    /**
+     * Entries on the way down to the run still to be reported(they come
+     * before it), or null.
+     */
+    private ArrayDeque<Map.Entry<List<K>, V>> own;
+    /**
+     * Walk below nodes[lo - 1], null when none is in progress.
+     */
+    private TrieCursor<K, V> cursor;
+    private long estimate;
+
+    TrieSpliterator(TrieMap<K, V> trie) {
+        this(new Object[0], children(trie.root), trie.size());
+    }
+
+    private TrieSpliterator(Object[] prefix, Object[] nodes, long estimate) {
+        this(prefix, nodes, 0, nodes.length, estimate);
+    }
+
+    private TrieSpliterator(Object[] prefix, Object[] nodes, int lo, int hi, long estimate) {
+        this.prefix = prefix;
+        this.nodes = nodes;
+        this.lo = lo;
+        this.hi = hi;
+        this.estimate = estimate;
+    }
+
+    private static <K extends Comparable<K>, V> Object[] children(TrieMap<K, V>.TrieNode node) {
+        if (node.child == null) {
+            return new Object[0];
+        }
+        Object[] out = new Object[node.child.size()];
+        int i = 0;
+        for (Iterator<TrieMap<K, V>.TrieNode> iter = node.child.iterator(); iter.hasNext();) {
+            out[i++] = iter.next();
+        }
+        return out;
+    }
+
+    @SuppressWarnings("unchecked")
+    private TrieMap<K, V>.TrieNode node(int i) {
+        return (TrieMap<K, V>.TrieNode) nodes[i];
+    }
+
+    private Map.Entry<List<K>, V> entry(TrieCursor<K, V> c) {
+        List<K> key = new ArrayList<>(c.keyLength());
+        for (int i = 0; i < c.keyLength(); i++) {
+            key.add(c.keyAt(i));
+        }
+        return new AbstractMap.SimpleImmutableEntry<>(key, c.value());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map.Entry<List<K>, V> entry(Object[] keyElements, int length, V value) {
+        List<K> key = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            key.add((K) keyElements[i]);
+        }
+        return new AbstractMap.SimpleImmutableEntry<>(key, value);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Map.Entry<List<K>, V>> action) {
+        if (own != null && !own.isEmpty()) {
+            action.accept(own.poll());
+            return true;
+        }
+        while (true) {
+            if (cursor != null) {
+                if (cursor.next()) {
+                    action.accept(entry(cursor));
+                    return true;
+                }
+                cursor = null;
+            }
+            if (lo >= hi) {
+                return false;
+            }
+            TrieMap<K, V>.TrieNode n = node(lo++);
+            Object[] key = Arrays.copyOf(prefix, prefix.length + 1);
+            key[prefix.length] = n.partialKey;
+            cursor = new TrieCursor<>(n, key, key.length);
+            if (n.value != null) {
+                action.accept(entry(key, key.length, n.value));
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public Spliterator<Map.Entry<List<K>, V>> trySplit() {
+        if (cursor != null) {// Only split runs which have not been started.
+            return null;
+        }
+        if (hi - lo == 1) {// Run over the children of the first node below with several.
+            TrieMap<K, V>.TrieNode branch = node(lo);
+            int chain = 1;
+            while (branch.child != null && branch.child.size() == 1) {
+                branch = branch.child.first();
+                chain++;
+            }
+            if (branch.child == null || branch.child.size() < 2) {
+                return null;
+            }
+            if (own == null) {
+                own = new ArrayDeque<>();
+            }
+            Object[] key = Arrays.copyOf(prefix, prefix.length + chain);
+            TrieMap<K, V>.TrieNode n = node(lo);
+            for (int i = prefix.length; i < key.length; i++) {
+                key[i] = n.partialKey;
+                if (n.value != null) {
+                    own.add(entry(key, i + 1, n.value));
+                }
+                if (i + 1 < key.length) {
+                    n = n.child.first();
+                }
+            }
+            prefix = key;
+            nodes = children(branch);
+            lo = 0;
+            hi = nodes.length;
+        }
+        if (hi - lo < 2) {
+            return null;
+        }
+        int mid = (lo + hi) >>> 1;
+        estimate >>>= 1;
+        // ORDERED, the part split off has to be the one that comes first.
+        TrieSpliterator<K, V> lower = new TrieSpliterator<>(prefix, nodes, lo, mid, estimate);
+        lower.own = own;
+        own = null;
+        lo = mid;
+        return lower;
+    }
+
+    @Override
+    public long estimateSize() {
+        return estimate;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | DISTINCT | NONNULL;
+    }
+}
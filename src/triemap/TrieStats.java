@@ -0,0 +1,334 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Snapshot of the shape of a TrieMap, see TrieMap.stats(). Level d is the
+ * nodes at depth d(level 0 is the root), so the fan-out of level d is the
+ * number of children of its nodes and the tree height of level d is the height
+ * of the AVL trees holding those children(0 where they are kept in arrays).
+ *
+ * The memory estimate is the shallow size of the nodes and child indexes on a
+ * 64 bit JVM with compressed references, partial keys and values themselves
+ * are not counted(boxed keys are often shared).
+ *
+ * @author srikalyc
+ */
+public class TrieStats implements TrieStatsMXBean {
+
+    static final int HEADER = 12;
+    static final int REF = 4;
+    /**
+     * TrieNode: partialKey, value, child, the outer trie and count.
+     */
+    static final int TRIE_NODE = HEADER + 4 * REF + 4;
+    /**
+     * TreeNode: left, right, data, the outer trie and height.
+     */
+    static final int TREE_NODE = HEADER + 4 * REF + 4;
+    /**
+     * ArrayChildIndex or TreeChildIndex: array or top, the outer trie and count.
+     */
+    static final int CHILD_INDEX = HEADER + 2 * REF + 4;
+    static final int ARRAY_HEADER = 16;
+
+    private final int size;
+    private long trieNodes = 0;
+    private long treeNodes = 0;
+    private long arrayIndexes = 0;
+    private long treeIndexes = 0;
+    private long estimatedBytes = 0;
+    private int levels = 0;
+    private long[] depthHistogram = new long[16];
+    private long[] levelNodes = new long[16];
+    private long[] levelChildren = new long[16];
+    private long[] levelBranching = new long[16];
+    private int[] levelMaxFanOut = new int[16];
+    private int[] levelMaxTreeHeight = new int[16];
+
+    TrieStats(int size) {
+        this.size = size;
+    }
+
+    static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    private void level(int depth) {
+        if (depth >= levelNodes.length) {
+            int cap = (depth + 1) * 2;
+            depthHistogram = Arrays.copyOf(depthHistogram, cap);
+            levelNodes = Arrays.copyOf(levelNodes, cap);
+            levelChildren = Arrays.copyOf(levelChildren, cap);
+            levelBranching = Arrays.copyOf(levelBranching, cap);
+            levelMaxFanOut = Arrays.copyOf(levelMaxFanOut, cap);
+            levelMaxTreeHeight = Arrays.copyOf(levelMaxTreeHeight, cap);
+        }
+        levels = Math.max(levels, depth + 1);
+    }
+
+    /**
+     * Counts a trie node at depth, of nodeBytes shallow size.
+     */
+    void node(int depth, boolean hasValue, int nodeBytes) {
+        level(depth);
+        trieNodes++;
+        levelNodes[depth]++;
+        if (hasValue) {
+            depthHistogram[depth]++;
+        }
+        estimatedBytes += align(nodeBytes);
+    }
+
+    /**
+     * Counts the children of a node at depth kept in a sorted array.
+     */
+    void arrayIndex(int depth, int fanOut, int capacity) {
+        arrayIndexes++;
+        children(depth, fanOut);
+        estimatedBytes += align(CHILD_INDEX) + align(ARRAY_HEADER + (long) capacity * REF);
+    }
+
+    /**
+     * Counts the children of a node at depth kept in an AVL tree.
+     */
+    void treeIndex(int depth, int fanOut, int height) {
+        treeIndexes++;
+        treeNodes += fanOut;
+        children(depth, fanOut);
+        levelMaxTreeHeight[depth] = Math.max(levelMaxTreeHeight[depth], height);
+        estimatedBytes += align(CHILD_INDEX) + fanOut * align(TREE_NODE);
+    }
+
+    private void children(int depth, int fanOut) {
+        level(depth);
+        levelChildren[depth] += fanOut;
+        levelBranching[depth]++;
+        levelMaxFanOut[depth] = Math.max(levelMaxFanOut[depth], fanOut);
+    }
+
+    /**
+     * @return number of entries.
+     */
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return number of TrieNodes, the root included.
+     */
+    @Override
+    public long getTrieNodeCount() {
+        return trieNodes;
+    }
+
+    /**
+     * @return number of AVL TreeNodes over all the tree child indexes.
+     */
+    @Override
+    public long getTreeNodeCount() {
+        return treeNodes;
+    }
+
+    @Override
+    public long getArrayIndexCount() {
+        return arrayIndexes;
+    }
+
+    @Override
+    public long getTreeIndexCount() {
+        return treeIndexes;
+    }
+
+    /**
+     * @return depth of the deepest node, 0 for an empty trie.
+     */
+    @Override
+    public int getMaxDepth() {
+        return Math.max(levels - 1, 0);
+    }
+
+    /**
+     * @return estimated retained heap of the trie structure in bytes.
+     */
+    @Override
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    /**
+     * @return number of keys of every length, index is the key length.
+     */
+    @Override
+    public long[] getDepthHistogram() {
+        return Arrays.copyOf(depthHistogram, levels);
+    }
+
+    /**
+     * @return number of nodes on every level.
+     */
+    @Override
+    public long[] getLevelNodeCounts() {
+        return Arrays.copyOf(levelNodes, levels);
+    }
+
+    /**
+     * @return mean number of children of the nodes on every level which have
+     * any.
+     */
+    @Override
+    public double[] getLevelMeanFanOut() {
+        double[] mean = new double[levels];
+        for (int d = 0; d < levels; d++) {
+            mean[d] = levelBranching[d] == 0 ? 0 : (double) levelChildren[d] / levelBranching[d];
+        }
+        return mean;
+    }
+
+    @Override
+    public int[] getLevelMaxFanOut() {
+        return Arrays.copyOf(levelMaxFanOut, levels);
+    }
+
+    /**
+     * @return height of the tallest AVL child index on every level, 0 where
+     * all the children are in arrays.
+     */
+    @Override
+    public int[] getLevelMaxTreeHeight() {
+        return Arrays.copyOf(levelMaxTreeHeight, levels);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("size=").append(size)
+                .append(" trieNodes=").append(trieNodes)
+                .append(" treeNodes=").append(treeNodes)
+                .append(" arrayIndexes=").append(arrayIndexes)
+                .append(" treeIndexes=").append(treeIndexes)
+                .append(" estimatedBytes=").append(estimatedBytes);
+        double[] mean = getLevelMeanFanOut();
+        for (int d = 0; d < levels; d++) {
+            sb.append(String.format("%n  level %d: nodes=%d keys=%d fanOut(mean=%.2f max=%d) treeHeight=%d",
+                    d, levelNodes[d], depthHistogram[d], mean[d], levelMaxFanOut[d], levelMaxTreeHeight[d]));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Registers a Monitor under the given JMX object name with the platform
+     * MBean server. The monitor serves the last snapshot given to update(),
+     * so the walk runs on the thread which owns the trie and not on a JMX
+     * thread.
+     * @param objectName e.g "triemap:type=TrieStats,name=sessions".
+     * @return
+     * @throws JMException
+     */
+    public static Monitor register(String objectName) throws JMException {
+        Monitor monitor = new Monitor(new ObjectName(objectName));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(monitor, monitor.name);
+        return monitor;
+    }
+
+    /**
+     * MXBean publishing the latest snapshot of one trie.
+     */
+    public static class Monitor implements TrieStatsMXBean {
+        private final ObjectName name;
+        private volatile TrieStats latest = new TrieStats(0);
+
+        Monitor(ObjectName name) {
+            this.name = name;
+        }
+
+        /**
+         * @param stats snapshot to publish from now on, e.g trie.stats().
+         */
+        public void update(TrieStats stats) {
+            latest = stats;
+        }
+
+        public void unregister() throws JMException {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        }
+
+        @Override
+        public int getSize() {
+            return latest.getSize();
+        }
+
+        @Override
+        public long getTrieNodeCount() {
+            return latest.getTrieNodeCount();
+        }
+
+        @Override
+        public long getTreeNodeCount() {
+            return latest.getTreeNodeCount();
+        }
+
+        @Override
+        public long getArrayIndexCount() {
+            return latest.getArrayIndexCount();
+        }
+
+        @Override
+        public long getTreeIndexCount() {
+            return latest.getTreeIndexCount();
+        }
+
+        @Override
+        public int getMaxDepth() {
+            return latest.getMaxDepth();
+        }
+
+        @Override
+        public long getEstimatedBytes() {
+            return latest.getEstimatedBytes();
+        }
+
+        @Override
+        public long[] getDepthHistogram() {
+            return latest.getDepthHistogram();
+        }
+
+        @Override
+        public long[] getLevelNodeCounts() {
+            return latest.getLevelNodeCounts();
+        }
+
+        @Override
+        public double[] getLevelMeanFanOut() {
+            return latest.getLevelMeanFanOut();
+        }
+
+        @Override
+        public int[] getLevelMaxFanOut() {
+            return latest.getLevelMaxFanOut();
+        }
+
+        @Override
+        public int[] getLevelMaxTreeHeight() {
+            return latest.getLevelMaxTreeHeight();
+        }
+    }
+}
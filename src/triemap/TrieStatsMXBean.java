@@ -0,0 +1,44 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap;
+
+/**
+ * Attributes of a TrieStats snapshot, for JMX monitoring(see
+ * TrieStats.register()).
+ *
+ * @author srikalyc
+ */
+public interface TrieStatsMXBean {
+
+    int getSize();
+
+    long getTrieNodeCount();
+
+    long getTreeNodeCount();
+
+    long getArrayIndexCount();
+
+    long getTreeIndexCount();
+
+    int getMaxDepth();
+
+    long getEstimatedBytes();
+
+    long[] getDepthHistogram();
+
+    long[] getLevelNodeCounts();
+
+    double[] getLevelMeanFanOut();
+
+    int[] getLevelMaxFanOut();
+
+    int[] getLevelMaxTreeHeight();
+}
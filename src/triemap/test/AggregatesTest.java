@@ -0,0 +1,199 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap.test;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import triemap.BoundedTrieMap;
+import triemap.NumTrieMap;
+import triemap.TrieCursor;
+import triemap.TrieMap;
+import static triemap.test.TestUtil.check;
+import static triemap.test.TestUtil.randomKey;
+import static triemap.test.TestUtil.removeUnder;
+import static triemap.test.TestUtil.startsWith;
+
+/**
+ * countUnder(), NumTrieMap.sumUnder() and prefixView() against a brute force
+ * scan of a HashMap after random add/addPrefixes/inc/incPrefixes/remove/
+ * removeExact/compact, for every prefix of up to 3 elements(the empty one
+ * included). A view must list, in key order, exactly the entries below its
+ * prefix with the prefix cut off, and must read through to later adds.
+ *
+ * @author srikalyc
+ */
+public class AggregatesTest {
+
+    private static final int OPS = 20000;
+    private static final int ALPHABET = 3;
+    private static final Comparator<List<Integer>> ORDER = new Comparator<List<Integer>>() {
+        @Override
+        public int compare(List<Integer> a, List<Integer> b) {
+            int n = Math.min(a.size(), b.size());
+            for (int i = 0; i < n; i++) {
+                int cmp = a.get(i).compareTo(b.get(i));
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return a.size() - b.size();
+        }
+    };
+
+    public static void main(String[] args) {
+        run(new TrieMap<Integer, Integer>(), 1);
+        run(new NumTrieMap<Integer>(), 2);
+        // Large enough never to evict.
+        run(new BoundedTrieMap<Integer, Integer>(BoundedTrieMap.Policy.LRU, 1 << 20), 3);
+        System.out.println("AggregatesTest ok");
+    }
+
+    private static void run(TrieMap<Integer, Integer> trie, long seed) {
+        String name = trie.getClass().getSimpleName();
+        NumTrieMap<Integer> num = trie instanceof NumTrieMap ? (NumTrieMap<Integer>) trie : null;
+        Random random = new Random(seed);
+        Map<List<Integer>, Integer> model = new HashMap<>();
+        for (int op = 0; op < OPS; op++) {
+            Integer[] key = randomKey(random, 5, ALPHABET);
+            List<Integer> list = Arrays.asList(key);
+            int value = random.nextInt(21) - 5;
+            switch (random.nextInt(8)) {
+                case 0:
+                    check(trie.remove(key) == removeUnder(model, list), name + ": remove " + list);
+                    break;
+                case 1:
+                    check(trie.removeExact(key) == (model.remove(list) != null), name + ": removeExact " + list);
+                    break;
+                case 2:
+                    if (random.nextBoolean()) {
+                        trie.compact(random.nextInt(20000));
+                    } else {
+                        trie.compact();
+                    }
+                    break;
+                case 3:
+                    if (num != null) {
+                        num.incPrefixes(key, value);
+                        for (int d = 1; d <= key.length; d++) {
+                            inc(model, list.subList(0, d), value);
+                        }
+                    } else {
+                        trie.addPrefixes(key, value);
+                        for (int d = 1; d <= key.length; d++) {
+                            model.put(new ArrayList<>(list.subList(0, d)), value);
+                        }
+                    }
+                    break;
+                default:
+                    if (num != null && random.nextBoolean()) {
+                        num.inc(key, value);
+                        inc(model, list, value);
+                    } else {
+                        trie.add(key, value);
+                        model.put(list, value);
+                    }
+                    break;
+            }
+            if (op % 100 == 0) {
+                compare(trie, num, model, name + " op " + op);
+            }
+        }
+        compare(trie, num, model, name + " at the end");
+
+        Integer[] prefix = {0};
+        TrieMap<Integer, Integer> view = trie.prefixView(prefix);
+        check(view != null, name + ": no view of " + Arrays.toString(prefix));
+        Integer[] key = {0, ALPHABET, 1};
+        trie.add(key, 7);
+        model.put(Arrays.asList(key), 7);
+        sameView(view, model, Arrays.asList(prefix), name + ": view after an add");
+    }
+
+    private static void inc(Map<List<Integer>, Integer> model, List<Integer> key, int value) {
+        Integer old = model.get(key);
+        model.put(new ArrayList<>(key), old == null ? value : old + value);
+    }
+
+    private static void compare(TrieMap<Integer, Integer> trie, NumTrieMap<Integer> num,
+            Map<List<Integer>, Integer> model, String what) {
+        check(trie.getKeyValueEntries().equals(model), what + ": entries differ");
+        List<List<Integer>> prefixes = new ArrayList<>();
+        prefixes.add(new ArrayList<Integer>());
+        for (int i = 0; i < prefixes.size(); i++) {
+            List<Integer> prefix = prefixes.get(i);
+            if (prefix.size() < 3) {
+                for (int c = 0; c < ALPHABET; c++) {
+                    List<Integer> longer = new ArrayList<>(prefix);
+                    longer.add(c);
+                    prefixes.add(longer);
+                }
+            }
+        }
+        for (List<Integer> prefix : prefixes) {
+            Integer[] array = prefix.toArray(new Integer[0]);
+            int count = 0;
+            long sum = 0;
+            for (Map.Entry<List<Integer>, Integer> e : model.entrySet()) {
+                if (startsWith(e.getKey(), prefix)) {
+                    count++;
+                    sum += e.getValue();
+                }
+            }
+            check(trie.countUnder(array) == count, what + ": countUnder " + prefix + " "
+                    + trie.countUnder(array) + " != " + count);
+            if (num != null) {
+                check(num.sumUnder(array) == sum, what + ": sumUnder " + prefix + " "
+                        + num.sumUnder(array) + " != " + sum);
+            }
+            if (!prefix.isEmpty()) {
+                TrieMap<Integer, Integer> view = trie.prefixView(array);
+                check((view == null) == (count == 0), what + ": view of " + prefix + " is " + view
+                        + " with " + count + " keys under it");
+                if (view != null) {
+                    sameView(view, model, prefix, what + ": view of " + prefix);
+                }
+            }
+        }
+    }
+
+    /**
+     * The view lists the entries strictly below prefix, relative to it and in
+     * key order.
+     */
+    private static void sameView(TrieMap<Integer, Integer> view, Map<List<Integer>, Integer> model,
+            List<Integer> prefix, String what) {
+        TreeMap<List<Integer>, Integer> expected = new TreeMap<>(ORDER);
+        for (Map.Entry<List<Integer>, Integer> e : model.entrySet()) {
+            if (e.getKey().size() > prefix.size() && startsWith(e.getKey(), prefix)) {
+                expected.put(e.getKey().subList(prefix.size(), e.getKey().size()), e.getValue());
+            }
+        }
+        List<Map.Entry<List<Integer>, Integer>> listed = new ArrayList<>();
+        TrieCursor<Integer, Integer> cursor = view.cursor();
+        while (cursor.next()) {
+            List<Integer> key = new ArrayList<>();
+            for (int i = 0; i < cursor.keyLength(); i++) {
+                key.add(cursor.keyAt(i));
+            }
+            listed.add(new AbstractMap.SimpleImmutableEntry<>(key, cursor.value()));
+        }
+        check(listed.equals(new ArrayList<>(expected.entrySet())), what + ": " + listed + " != " + expected);
+        check(view.size() == expected.size(), what + ": size " + view.size() + " != " + expected.size());
+        check(view.getKeyValueEntries().equals(expected), what + ": entries differ");
+    }
+}
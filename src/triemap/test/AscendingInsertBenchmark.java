@@ -0,0 +1,59 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap.test;
+
+import triemap.TrieMap;
+
+/**
+ * Inserts keys in ascending order(as id-sequence loaders produce them) so that
+ * the fan-out of a single level grows large, and prints the cost per add/get.
+ * With an unbalanced BST per level the per op cost grows linearly with the
+ * fan-out, with the balanced child index it should only grow logarithmically.
+ *
+ * @author srikalyc
+ */
+public class AscendingInsertBenchmark {
+
+    public static void main(String[] args) {
+        int[] fanOuts = {1000, 10000, 100000, 1000000};
+        for (int round = 0; round < 2; round++) {// First round is JIT warm up.
+            for (int fanOut : fanOuts) {
+                run(fanOut, round == 1);
+            }
+        }
+    }
+
+    private static void run(int fanOut, boolean print) {
+        TrieMap<Integer, Integer> trie = new TrieMap<>();
+        Integer[][] keys = new Integer[fanOut][];
+        for (int i = 0; i < fanOut; i++) {
+            keys[i] = new Integer[]{7, i};// All keys share one parent, so level 2 has fanOut children.
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < fanOut; i++) {
+            trie.add(keys[i], i);
+        }
+        long addNanos = System.nanoTime() - start;
+
+        long sum = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < fanOut; i++) {
+            sum += trie.get(keys[i]);
+        }
+        long getNanos = System.nanoTime() - start;
+        if (print) {
+            System.out.println("fanOut=" + fanOut
+                    + " add=" + (addNanos / fanOut) + "ns/op"
+                    + " get=" + (getNanos / fanOut) + "ns/op"
+                    + " (checksum " + sum + ")");
+        }
+    }
+}
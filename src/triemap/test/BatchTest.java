@@ -0,0 +1,184 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap.test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import triemap.BoundedTrieMap;
+import triemap.IntCountTrieMap;
+import triemap.NumTrieMap;
+import triemap.TrieMap;
+import static triemap.test.TestUtil.check;
+import static triemap.test.TestUtil.randomKey;
+
+/**
+ * addBatch()/incBatch() of TrieMap, BoundedTrieMap, NumTrieMap and
+ * IntCountTrieMap against add()/inc() of every key in turn on a twin. Keys
+ * come from a small alphabet so that batches are full of duplicates and of
+ * keys which are prefixes of others, and are given both in key order and
+ * shuffled. An empty key fails the whole batch of the TrieMap family without
+ * changing anything, IntCountTrieMap counts it on the root as inc() does.
+ *
+ * @author srikalyc
+ */
+public class BatchTest {
+
+    private static final int ROUNDS = 300;
+
+    public static void main(String[] args) {
+        trieMap(new TrieMap<Integer, Integer>(), new TrieMap<Integer, Integer>());
+        trieMap(new BoundedTrieMap<Integer, Integer>(BoundedTrieMap.Policy.LRU, 60),
+                new BoundedTrieMap<Integer, Integer>(BoundedTrieMap.Policy.LRU, 60));
+        trieMap(new BoundedTrieMap<Integer, Integer>(BoundedTrieMap.Policy.LFU, 60),
+                new BoundedTrieMap<Integer, Integer>(BoundedTrieMap.Policy.LFU, 60));
+        numTrieMap();
+        intCountTrieMap();
+        System.out.println("BatchTest ok");
+    }
+
+    private static Integer[][] randomBatch(Random random) {
+        Integer[][] keys = new Integer[random.nextInt(40)][];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = randomKey(random, 4, 3);
+        }
+        if (random.nextBoolean()) {
+            Arrays.sort(keys, new Comparator<Integer[]>() {
+                @Override
+                public int compare(Integer[] a, Integer[] b) {
+                    for (int i = 0; i < a.length && i < b.length; i++) {
+                        if (!a[i].equals(b[i])) {
+                            return a[i] < b[i] ? -1 : 1;
+                        }
+                    }
+                    return a.length - b.length;
+                }
+            });
+        }
+        return keys;
+    }
+
+    /**
+     * @return keys with an empty key put at a random position.
+     */
+    private static Integer[][] withEmptyKey(Random random, Integer[][] keys) {
+        Integer[][] bad = Arrays.copyOf(keys, keys.length + 1);
+        int at = random.nextInt(bad.length);
+        bad[bad.length - 1] = bad[at];
+        bad[at] = new Integer[0];
+        return bad;
+    }
+
+    private static void trieMap(TrieMap<Integer, Integer> trie, TrieMap<Integer, Integer> twin) {
+        String name = trie.getClass().getSimpleName();
+        Random random = new Random(8);
+        for (int round = 0; round < ROUNDS; round++) {
+            Integer[][] keys = randomBatch(random);
+            Integer[] values = new Integer[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                values[i] = random.nextInt(1000);
+            }
+            if (random.nextInt(10) == 0) {
+                try {
+                    trie.addBatch(withEmptyKey(random, keys), Arrays.copyOf(values, keys.length + 1));
+                    throw new AssertionError(name + ": batch with an empty key did not throw");
+                } catch (IllegalArgumentException expected) {
+                }
+            } else {
+                trie.addBatch(keys, values);
+                for (int i = 0; i < keys.length; i++) {
+                    twin.add(keys[i], values[i]);
+                }
+            }
+            check(trie.size() == twin.size(), name + " round " + round + ": size "
+                    + trie.size() + " != " + twin.size());
+            check(trie.getKeyValueEntries().equals(twin.getKeyValueEntries()), name + " round " + round
+                    + ": entries differ");
+            check(trie.stats().getTrieNodeCount() == twin.stats().getTrieNodeCount(), name + " round " + round
+                    + ": nodes " + trie.stats().getTrieNodeCount() + " != " + twin.stats().getTrieNodeCount());
+        }
+    }
+
+    private static void numTrieMap() {
+        Random random = new Random(9);
+        NumTrieMap<Integer> trie = new NumTrieMap<>();
+        NumTrieMap<Integer> twin = new NumTrieMap<>();
+        for (int round = 0; round < ROUNDS; round++) {
+            Integer[][] keys = randomBatch(random);
+            int[] deltas = new int[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                deltas[i] = random.nextInt(21) - 5;
+            }
+            if (random.nextInt(10) == 0) {
+                try {
+                    trie.incBatch(withEmptyKey(random, keys), Arrays.copyOf(deltas, keys.length + 1));
+                    throw new AssertionError("NumTrieMap: batch with an empty key did not throw");
+                } catch (IllegalArgumentException expected) {
+                }
+            } else {
+                trie.incBatch(keys, deltas);
+                for (int i = 0; i < keys.length; i++) {
+                    twin.inc(keys[i], deltas[i]);
+                }
+            }
+            check(trie.size() == twin.size(), "NumTrieMap round " + round + ": size "
+                    + trie.size() + " != " + twin.size());
+            check(trie.getKeyValueEntries().equals(twin.getKeyValueEntries()), "NumTrieMap round " + round
+                    + ": entries differ");
+            for (int first = 0; first < 3; first++) {
+                Integer[] prefix = {first};
+                check(trie.sumUnder(prefix) == twin.sumUnder(prefix), "NumTrieMap round " + round
+                        + ": sumUnder " + first);
+            }
+            check(trie.sumUnder(new Integer[0]) == twin.sumUnder(new Integer[0]), "NumTrieMap round " + round
+                    + ": total sum");
+        }
+    }
+
+    private static void intCountTrieMap() {
+        Random random = new Random(10);
+        IntCountTrieMap trie = new IntCountTrieMap();
+        IntCountTrieMap twin = new IntCountTrieMap();
+        int empties = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            Integer[][] keys = randomBatch(random);
+            if (random.nextInt(5) == 0) {
+                keys = withEmptyKey(random, keys);
+                empties++;
+            }
+            int[] offsets = new int[keys.length + 1];
+            for (int i = 0; i < keys.length; i++) {
+                offsets[i + 1] = offsets[i] + keys[i].length;
+            }
+            int[] flat = new int[offsets[keys.length]];
+            int[] deltas = new int[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                for (int j = 0; j < keys[i].length; j++) {
+                    flat[offsets[i] + j] = keys[i][j];
+                }
+                deltas[i] = random.nextInt(21) - 5;
+            }
+            trie.incBatch(flat, offsets, deltas);
+            for (int i = 0; i < keys.length; i++) {
+                twin.inc(flat, offsets[i], offsets[i + 1], deltas[i]);
+            }
+            check(trie.size() == twin.size(), "IntCountTrieMap round " + round + ": size "
+                    + trie.size() + " != " + twin.size());
+            check(trie.get(new int[0]) == twin.get(new int[0]), "IntCountTrieMap round " + round
+                    + ": root count " + trie.get(new int[0]) + " != " + twin.get(new int[0]));
+            check(trie.getKeyValueEntries().equals(twin.getKeyValueEntries()), "IntCountTrieMap round " + round
+                    + ": entries differ");
+            check(trie.liveNodes() == twin.liveNodes(), "IntCountTrieMap round " + round + ": nodes "
+                    + trie.liveNodes() + " != " + twin.liveNodes());
+        }
+        check(empties > 0, "no batch had an empty key");
+    }
+}
@@ -0,0 +1,224 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import triemap.BoundedTrieMap;
+import static triemap.test.TestUtil.check;
+import static triemap.test.TestUtil.randomKey;
+import static triemap.test.TestUtil.startsWith;
+
+/**
+ * Random add/addIfNull/addPrefixes/get/remove/removeExact/compact on a
+ * BoundedTrieMap against a reference model: an access ordered LinkedHashMap
+ * for LRU, use counts plus last use for LFU. After every operation the
+ * entries the model evicts must be exactly the ones gone from the trie, and
+ * size(), totalWeight(), evictions() and the contents must agree.
+ *
+ * @author srikalyc
+ */
+public class BoundedTrieMapTest {
+
+    private static final int OPS = 100000;
+
+    public static void main(String[] args) {
+        for (BoundedTrieMap.Policy policy : BoundedTrieMap.Policy.values()) {
+            run(policy, 20, false);
+            run(policy, 40, true);
+        }
+        System.out.println("BoundedTrieMapTest ok");
+    }
+
+    /**
+     * Weight of an entry when a weigher is used.
+     */
+    private static long weigh(Integer value) {
+        return value % 3 + 1;
+    }
+
+    /**
+     * Reference cache. Entries are kept in insertion order of (re)use, which
+     * is the LRU order, and with their use count for LFU.
+     */
+    private static class Model {
+        final BoundedTrieMap.Policy policy;
+        final long capacity;
+        final boolean weighed;
+        final LinkedHashMap<List<Integer>, Integer> values = new LinkedHashMap<>(16, 0.75f, true);
+        final Map<List<Integer>, Long> uses = new HashMap<>();
+        final Map<List<Integer>, Long> lastUse = new HashMap<>();
+        long clock = 0;
+        long totalWeight = 0;
+        long evictions = 0;
+
+        Model(BoundedTrieMap.Policy policy, long capacity, boolean weighed) {
+            this.policy = policy;
+            this.capacity = capacity;
+            this.weighed = weighed;
+        }
+
+        long weight(Integer value) {
+            return weighed ? weigh(value) : 1;
+        }
+
+        void put(List<Integer> key, Integer value) {
+            Integer old = values.put(key, value);
+            totalWeight += weight(value) - (old == null ? 0 : weight(old));
+            Long u = uses.get(key);
+            uses.put(key, u == null ? 1 : u + 1);
+            lastUse.put(key, clock++);
+        }
+
+        void use(List<Integer> key) {
+            values.get(key);
+            uses.put(key, uses.get(key) + 1);
+            lastUse.put(key, clock++);
+        }
+
+        void remove(List<Integer> key) {
+            Integer old = values.remove(key);
+            if (old != null) {
+                totalWeight -= weight(old);
+                uses.remove(key);
+                lastUse.remove(key);
+            }
+        }
+
+        /**
+         * @return the evicted keys, in eviction order.
+         */
+        List<List<Integer>> evict() {
+            List<List<Integer>> evicted = new ArrayList<>();
+            while (totalWeight > capacity) {
+                List<Integer> victim = null;
+                if (policy == BoundedTrieMap.Policy.LRU) {
+                    victim = values.keySet().iterator().next();
+                } else {
+                    for (List<Integer> k : values.keySet()) {
+                        if (victim == null || uses.get(k) < uses.get(victim)
+                                || (uses.get(k).equals(uses.get(victim)) && lastUse.get(k) < lastUse.get(victim))) {
+                            victim = k;
+                        }
+                    }
+                }
+                remove(victim);
+                evicted.add(victim);
+                evictions++;
+            }
+            return evicted;
+        }
+    }
+
+    private static void run(BoundedTrieMap.Policy policy, long capacity, boolean weighed) {
+        String what = policy + (weighed ? " weighed" : "");
+        BoundedTrieMap<Integer, Integer> trie = new BoundedTrieMap<>(policy, capacity, !weighed ? null
+                : new BoundedTrieMap.Weigher<Integer, Integer>() {
+                    @Override
+                    public long weigh(Integer[] key, int sI, int eI, Integer value) {
+                        return BoundedTrieMapTest.weigh(value);
+                    }
+                });
+        Model model = new Model(policy, capacity, weighed);
+        Random random = new Random(policy.ordinal() * 2 + (weighed ? 1 : 0));
+        for (int op = 0; op < OPS; op++) {
+            Integer[] key = randomKey(random, 3, 4);
+            List<Integer> list = Arrays.asList(key);
+            int value = random.nextInt(1000);
+            List<List<Integer>> evicted = new ArrayList<>();
+            switch (random.nextInt(10)) {
+                case 0:
+                case 1:
+                case 2:
+                    trie.add(key, value);
+                    model.put(list, value);
+                    evicted = model.evict();
+                    break;
+                case 3:
+                    trie.addIfNull(key, value);
+                    if (model.values.containsKey(list)) {
+                        model.use(list);
+                    } else {
+                        model.put(list, value);
+                    }
+                    evicted = model.evict();
+                    break;
+                case 4:
+                    trie.addPrefixes(key, value);
+                    for (int d = 1; d <= key.length; d++) {
+                        model.put(new ArrayList<>(list.subList(0, d)), value);
+                    }
+                    evicted = model.evict();
+                    break;
+                case 5:
+                case 6: {
+                    Integer expected = model.values.containsKey(list) ? model.values.get(list) : null;
+                    long hits = trie.hits();
+                    Integer got = trie.get(key);
+                    check(expected == null ? got == null : expected.equals(got),
+                            what + " op " + op + ": get " + list + " " + got + " != " + expected);
+                    check(trie.hits() == hits + (got == null ? 0 : 1), what + ": hits");
+                    if (expected != null) {
+                        model.use(list);
+                    }
+                    break;
+                }
+                case 7: {
+                    boolean expected = false;
+                    for (List<Integer> k : new ArrayList<>(model.values.keySet())) {
+                        if (startsWith(k, list)) {
+                            model.remove(k);
+                            expected = true;
+                        }
+                    }
+                    // Valueless prefixes are pruned, so the path exists exactly when an entry is below it.
+                    check(trie.remove(key) == expected, what + " op " + op + ": remove " + list);
+                    break;
+                }
+                case 8: {
+                    boolean expected = model.values.containsKey(list);
+                    model.remove(list);
+                    check(trie.removeExact(key) == expected, what + " op " + op + ": removeExact " + list);
+                    break;
+                }
+                default:
+                    if (random.nextBoolean()) {
+                        trie.compact(random.nextInt(20000));
+                    } else {
+                        trie.compact();
+                    }
+                    break;
+            }
+            if (!evicted.isEmpty()) {
+                Map<List<Integer>, Integer> entries = trie.getKeyValueEntries();
+                for (List<Integer> k : evicted) {
+                    check(!entries.containsKey(k), what + " op " + op + ": " + k + " should have been evicted");
+                }
+            }
+            check(trie.size() == model.values.size(), what + " op " + op + ": size "
+                    + trie.size() + " != " + model.values.size());
+            check(trie.totalWeight() == model.totalWeight, what + " op " + op + ": totalWeight "
+                    + trie.totalWeight() + " != " + model.totalWeight);
+            check(trie.totalWeight() <= capacity, what + ": over capacity");
+            check(trie.evictions() == model.evictions, what + " op " + op + ": evictions "
+                    + trie.evictions() + " != " + model.evictions);
+            if (op % 100 == 0 || !evicted.isEmpty()) {
+                check(trie.getKeyValueEntries().equals(new HashMap<>(model.values)),
+                        what + " op " + op + ": entries differ");
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import triemap.TrieCursor;
+import triemap.TrieMap;
+import static triemap.test.TestUtil.check;
+
+/**
+ * Checks the child indexes of TrieMap against a TreeMap: single level keys
+ * inserted in ascending, descending and random order past arrayChildLimit
+ * (so the sorted array is promoted to an AVL tree) and then removed again,
+ * comparing get(), iteration order and size() along the way.
+ *
+ * @author srikalyc
+ */
+public class ChildIndexTest {
+
+    private static final int KEYS = 500;
+
+    public static void main(String[] args) {
+        for (int limit : new int[]{0, 1, 8, 16, 64}) {
+            for (String order : new String[]{"ascending", "descending", "random"}) {
+                run(limit, order);
+            }
+        }
+        System.out.println("ChildIndexTest ok");
+    }
+
+    private static List<Integer> keys(String order, Random random) {
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < KEYS; i++) {
+            keys.add(i * 3);// Gaps, so lookups of missing keys fall between children.
+        }
+        if (order.equals("descending")) {
+            Collections.reverse(keys);
+        } else if (order.equals("random")) {
+            Collections.shuffle(keys, random);
+        }
+        return keys;
+    }
+
+    private static void run(int limit, String order) {
+        Random random = new Random(limit * 31 + order.hashCode());
+        TrieMap<Integer, Integer> trie = new TrieMap<>(limit);
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        String name = "limit=" + limit + " " + order;
+        for (int k : keys(order, random)) {
+            trie.add(new Integer[]{k}, k + 1);
+            expected.put(k, k + 1);
+            if (expected.size() == limit || expected.size() == limit + 1 || expected.size() % 97 == 0) {
+                compare(trie, expected, name + " adding");
+            }
+        }
+        compare(trie, expected, name + " added");
+        check(trie.stats().getTreeIndexCount() == 1, name + ": root children were not promoted to a tree");
+        for (int k : keys(order, random)) {
+            if (random.nextBoolean()) {
+                check(trie.remove(new Integer[]{k}), name + ": remove " + k);
+                check(!trie.remove(new Integer[]{k}), name + ": second remove " + k);
+                expected.remove(k);
+            }
+        }
+        compare(trie, expected, name + " half removed");
+        for (int k : keys(order, random)) {
+            if (expected.remove(k) != null) {
+                check(trie.removeExact(new Integer[]{k}), name + ": removeExact " + k);
+            }
+        }
+        compare(trie, expected, name + " emptied");
+        check(trie.stats().getTrieNodeCount() == 1, name + ": removed nodes left behind");
+    }
+
+    private static void compare(TrieMap<Integer, Integer> trie, TreeMap<Integer, Integer> expected, String name) {
+        check(trie.size() == expected.size(), name + ": size " + trie.size() + " != " + expected.size());
+        for (int k = -1; k <= KEYS * 3; k++) {
+            Integer[] key = {k};
+            Integer value = expected.get(k);
+            check(value == null ? trie.get(key) == null : value.equals(trie.get(key)), name + ": get " + k);
+            check(trie.contains(key) == (value != null), name + ": contains " + k);
+        }
+        TrieCursor<Integer, Integer> cursor = trie.cursor();
+        for (Map.Entry<Integer, Integer> e : expected.entrySet()) {
+            check(cursor.next(), name + ": cursor ended before " + e.getKey());
+            check(cursor.keyLength() == 1 && cursor.keyAt(0).equals(e.getKey())
+                    && cursor.value().equals(e.getValue()), name + ": cursor order at " + e.getKey());
+        }
+        check(!cursor.next(), name + ": cursor has extra entries");
+    }
+}
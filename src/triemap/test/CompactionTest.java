@@ -0,0 +1,178 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import triemap.BoundedTrieMap;
+import triemap.NumTrieMap;
+import static triemap.test.TestUtil.check;
+
+/**
+ * Interleaves short compact(maxNanos) slices(and the odd full compact()) with
+ * inc/add/remove/removeExact. Every operation also goes to a twin which is
+ * never compacted: contents, size(), sumUnder() and topK() of a NumTrieMap,
+ * and contents, size(), totalWeight() and the evictions of a BoundedTrieMap
+ * must stay the same as the twin's.
+ *
+ * @author srikalyc
+ */
+public class CompactionTest {
+
+    private static final int OPS = 40000;
+    /**
+     * Wide enough at the first level for the root index to be a tree.
+     */
+    private static final int FIRST = 40;
+
+    public static void main(String[] args) {
+        numTrieMap();
+        boundedTrieMap(BoundedTrieMap.Policy.LRU);
+        boundedTrieMap(BoundedTrieMap.Policy.LFU);
+        System.out.println("CompactionTest ok");
+    }
+
+    private static Integer[] randomKey(Random random) {
+        Integer[] key = new Integer[random.nextInt(4) + 1];
+        key[0] = random.nextInt(FIRST);
+        for (int i = 1; i < key.length; i++) {
+            key[i] = random.nextInt(4);
+        }
+        return key;
+    }
+
+    /**
+     * Runs a slice most of the time, a full compaction now and then.
+     */
+    private static int compactSlice(Random random, NumTrieMap<Integer> num,
+            BoundedTrieMap<Integer, Integer> bounded) {
+        boolean full = random.nextInt(50) == 0;
+        long maxNanos = random.nextInt(3) == 0 ? 0 : random.nextInt(30000);
+        if (num != null) {
+            if (full) {
+                num.compact();
+                return 1;
+            }
+            return num.compact(maxNanos) ? 1 : 0;
+        }
+        if (full) {
+            bounded.compact();
+            return 1;
+        }
+        return bounded.compact(maxNanos) ? 1 : 0;
+    }
+
+    private static void numTrieMap() {
+        Random random = new Random(1);
+        NumTrieMap<Integer> trie = new NumTrieMap<>();
+        NumTrieMap<Integer> twin = new NumTrieMap<>();
+        int passes = 0;
+        for (int op = 0; op < OPS; op++) {
+            Integer[] key = randomKey(random);
+            int value = random.nextInt(21) - 5;
+            switch (random.nextInt(8)) {
+                case 0:
+                    check(trie.remove(key) == twin.remove(key), "remove at op " + op);
+                    break;
+                case 1:
+                    check(trie.removeExact(key) == twin.removeExact(key), "removeExact at op " + op);
+                    break;
+                case 2:
+                    trie.incPrefixes(key, value);
+                    twin.incPrefixes(key, value);
+                    break;
+                case 3:
+                    trie.add(key, value);
+                    twin.add(key, value);
+                    break;
+                default:
+                    trie.inc(key, value);
+                    twin.inc(key, value);
+                    break;
+            }
+            passes += compactSlice(random, trie, null);
+            check(trie.size() == twin.size(), "op " + op + ": size " + trie.size() + " != " + twin.size());
+            Integer[] prefix = {random.nextInt(FIRST)};
+            check(trie.sumUnder(prefix) == twin.sumUnder(prefix), "op " + op + ": sumUnder " + prefix[0]);
+            check(trie.sumUnder(new Integer[0]) == twin.sumUnder(new Integer[0]), "op " + op + ": total sum");
+            if (op % 200 == 0) {
+                Map<List<Integer>, Integer> entries = twin.getKeyValueEntries();
+                check(trie.getKeyValueEntries().equals(entries), "op " + op + ": entries differ");
+                sameTopK(trie.topK(10), twin.topK(10), entries, "op " + op + ": topK");
+                sameTopK(trie.topK(prefix, 5), twin.topK(prefix, 5), entries, "op " + op + ": prefix topK");
+            }
+        }
+        check(passes > 0, "no compaction pass finished");
+        trie.compact();
+        check(trie.getKeyValueEntries().equals(twin.getKeyValueEntries()), "entries after a full compaction");
+        check(trie.stats().getTrieNodeCount() <= twin.stats().getTrieNodeCount(), "compaction added nodes");
+    }
+
+    /**
+     * Entries with equal values may come in either order.
+     */
+    private static void sameTopK(List<Map.Entry<List<Integer>, Integer>> got,
+            List<Map.Entry<List<Integer>, Integer>> expected, Map<List<Integer>, Integer> entries, String what) {
+        check(got.size() == expected.size(), what + " size " + got.size() + " != " + expected.size());
+        List<Integer> gotValues = new ArrayList<>();
+        List<Integer> expectedValues = new ArrayList<>();
+        for (int i = 0; i < got.size(); i++) {
+            gotValues.add(got.get(i).getValue());
+            expectedValues.add(expected.get(i).getValue());
+            check(got.get(i).getValue().equals(entries.get(got.get(i).getKey())), what + " wrong value " + got.get(i));
+        }
+        check(gotValues.equals(expectedValues), what + " " + gotValues + " != " + expectedValues);
+    }
+
+    private static void boundedTrieMap(BoundedTrieMap.Policy policy) {
+        Random random = new Random(2 + policy.ordinal());
+        BoundedTrieMap<Integer, Integer> trie = new BoundedTrieMap<>(policy, 60);
+        BoundedTrieMap<Integer, Integer> twin = new BoundedTrieMap<>(policy, 60);
+        int passes = 0;
+        for (int op = 0; op < OPS; op++) {
+            Integer[] key = randomKey(random);
+            int value = random.nextInt(1000);
+            switch (random.nextInt(6)) {
+                case 0:
+                    check(trie.remove(key) == twin.remove(key), policy + " remove at op " + op);
+                    break;
+                case 1:
+                    check(trie.removeExact(key) == twin.removeExact(key), policy + " removeExact at op " + op);
+                    break;
+                case 2: {
+                    Integer got = trie.get(key);
+                    Integer expected = twin.get(key);
+                    check(got == null ? expected == null : got.equals(expected), policy + " get at op " + op);
+                    break;
+                }
+                case 3:
+                    trie.addPrefixes(key, value);
+                    twin.addPrefixes(key, value);
+                    break;
+                default:
+                    trie.add(key, value);
+                    twin.add(key, value);
+                    break;
+            }
+            passes += compactSlice(random, null, trie);
+            check(trie.size() == twin.size(), policy + " op " + op + ": size " + trie.size() + " != " + twin.size());
+            check(trie.totalWeight() == twin.totalWeight(), policy + " op " + op + ": totalWeight");
+            check(trie.evictions() == twin.evictions(), policy + " op " + op + ": evictions");
+            if (op % 50 == 0) {
+                check(trie.getKeyValueEntries().equals(twin.getKeyValueEntries()), policy + " op " + op + ": entries differ");
+            }
+        }
+        check(passes > 0, policy + ": no compaction pass finished");
+        check(trie.getKeyValueEntries().equals(twin.getKeyValueEntries()), policy + ": entries at the end");
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap.test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import triemap.ConcurrentNumTrieMap;
+import static triemap.test.TestUtil.check;
+import static triemap.test.TestUtil.randomKey;
+import static triemap.test.TestUtil.runThreads;
+
+/**
+ * Several threads inc/incPrefixes/incAll overlapping keys of one
+ * ConcurrentNumTrieMap(no removes). Afterwards every count must be exactly
+ * what replaying all the threads' operations one after the other gives.
+ *
+ * @author srikalyc
+ */
+public class ConcurrentNumTrieMapTest {
+
+    private static final int THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+    private static final int OPS_PER_THREAD = 100000;
+    private static final int ALPHABET = 6;
+    private static final int MAX_LENGTH = 4;
+
+    public static void main(String[] args) throws InterruptedException {
+        for (int limit : new int[]{2, 32}) {
+            final ConcurrentNumTrieMap<Integer> trie = new ConcurrentNumTrieMap<>(limit);
+            runThreads(THREADS, 0, new TestUtil.Worker() {
+                @Override
+                public void run(int t, Random random) {
+                    for (int i = 0; i < OPS_PER_THREAD; i++) {
+                        Integer[] key = randomKey(random, MAX_LENGTH, ALPHABET);
+                        int value = random.nextInt(5) + 1;
+                        switch (random.nextInt(3)) {
+                            case 0:
+                                trie.inc(key, value);
+                                break;
+                            case 1:
+                                trie.incPrefixes(key, value);
+                                break;
+                            default:
+                                trie.incAll(key, value);
+                                break;
+                        }
+                    }
+                }
+            });
+            Map<List<Integer>, Long> expected = replay();
+            check(trie.getKeyValueEntries().equals(expected), "limit " + limit + ": counts differ");
+            check(trie.size() == expected.size(), "limit " + limit + ": size " + trie.size() + " != " + expected.size());
+            for (Map.Entry<List<Integer>, Long> e : expected.entrySet()) {
+                long got = trie.get(e.getKey().toArray(new Integer[0]));
+                check(got == e.getValue(), "limit " + limit + ": " + e.getKey() + " " + got + " != " + e.getValue());
+            }
+            check(trie.get(new Integer[]{ALPHABET}) == 0, "count of a missing key");
+        }
+        System.out.println("ConcurrentNumTrieMapTest ok");
+    }
+
+    /**
+     * The same operations as the threads, one thread after the other, counted
+     * into a HashMap.
+     */
+    private static Map<List<Integer>, Long> replay() {
+        Map<List<Integer>, Long> counts = new HashMap<>();
+        for (int t = 0; t < THREADS; t++) {
+            Random random = new Random(t);
+            for (int i = 0; i < OPS_PER_THREAD; i++) {
+                Integer[] key = randomKey(random, MAX_LENGTH, ALPHABET);
+                int value = random.nextInt(5) + 1;
+                switch (random.nextInt(3)) {
+                    case 0:
+                        add(counts, key, 0, key.length, value);
+                        break;
+                    case 1:
+                        for (int e = 1; e <= key.length; e++) {
+                            add(counts, key, 0, e, value);
+                        }
+                        break;
+                    default:
+                        for (int s = 0; s < key.length; s++) {
+                            for (int e = s + 1; e <= key.length; e++) {
+                                add(counts, key, s, e, value);
+                            }
+                        }
+                        break;
+                }
+            }
+        }
+        return counts;
+    }
+
+    private static void add(Map<List<Integer>, Long> counts, Integer[] key, int sI, int eI, int value) {
+        List<Integer> k = Arrays.asList(Arrays.copyOfRange(key, sI, eI));
+        Long old = counts.get(k);
+        counts.put(k, old == null ? value : old + value);
+    }
+}
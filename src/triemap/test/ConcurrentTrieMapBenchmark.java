@@ -0,0 +1,76 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap.test;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import triemap.ConcurrentTrieMap;
+
+/**
+ * Runs a 90/10 get/add mix on one ConcurrentTrieMap with 1, 2, 4 .. N threads
+ * (N = available processors) and prints the total throughput of each run.
+ *
+ * @author srikalyc
+ */
+public class ConcurrentTrieMapBenchmark {
+    private static final int KEYS = 200000;
+    private static final int OPS_PER_THREAD = 2000000;
+
+    public static void main(String[] args) throws InterruptedException {
+        final Integer[][] keys = new Integer[KEYS][];
+        Random random = new Random(42);
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = new Integer[]{random.nextInt(64), random.nextInt(1024), random.nextInt(1024)};
+        }
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            run(keys, threads);
+        }
+    }
+
+    private static void run(final Integer[][] keys, int threads) throws InterruptedException {
+        final ConcurrentTrieMap<Integer, Integer> trie = new ConcurrentTrieMap<>();
+        for (int i = 0; i < KEYS; i += 2) {// Half of the keys are there up front.
+            trie.add(keys[i], i);
+        }
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            new Thread() {
+                @Override
+                public void run() {
+                    Random random = new Random(seed);
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < OPS_PER_THREAD; i++) {
+                        int k = random.nextInt(KEYS);
+                        if (random.nextInt(10) == 0) {
+                            trie.add(keys[k], k);
+                        } else {
+                            trie.get(keys[k]);
+                        }
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long nanos = System.nanoTime() - begin;
+        System.out.println("threads=" + threads + " "
+                + (long) threads * OPS_PER_THREAD * 1000000000L / nanos + " ops/s (size " + trie.size() + ")");
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap.test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import triemap.ConcurrentTrieMap;
+import static triemap.test.TestUtil.check;
+import static triemap.test.TestUtil.runThreads;
+
+/**
+ * Hammers a ConcurrentTrieMap from several threads and checks it against a
+ * ConcurrentHashMap oracle once the threads are done. Keys are {a, b, c} with
+ * few distinct a and b so every thread works under the same prefixes, and a
+ * small arrayChildLimit so the children flip between the copy on write array
+ * and the skip list while the threads race.
+ *
+ * @author srikalyc
+ */
+public class ConcurrentTrieMapTest {
+
+    private static final int THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+    private static final int OPS_PER_THREAD = 200000;
+    private static final int A = 4;
+    private static final int B = 8;
+    private static final int C = 64;
+
+    public static void main(String[] args) throws InterruptedException {
+        for (int limit : new int[]{2, 32}) {
+            for (int round = 0; round < 5; round++) {
+                ownedLeaves(limit, round);
+                prefixRemoves(limit, round);
+            }
+        }
+        System.out.println("ConcurrentTrieMapTest ok");
+    }
+
+    private static Integer[] key(int a, int b, int c) {
+        return new Integer[]{a, b, c};
+    }
+
+    /**
+     * Value a key always gets, so whichever add wins a race the oracle agrees.
+     */
+    private static int valueOf(Integer[] key) {
+        return (key[0] * B + key[1]) * C + key[2];
+    }
+
+    /**
+     * Every thread adds and removes full keys of its own(c % THREADS), all of
+     * them sharing the {a} and {a, b} nodes: removes of one thread race with
+     * adds of the others on the same parents. Each key has one writer, so the
+     * oracle is exact.
+     */
+    private static void ownedLeaves(int limit, final int round) throws InterruptedException {
+        final ConcurrentTrieMap<Integer, Integer> trie = new ConcurrentTrieMap<>(limit);
+        final ConcurrentHashMap<List<Integer>, Integer> oracle = new ConcurrentHashMap<>();
+        runThreads(THREADS, round * 1000L, new TestUtil.Worker() {
+            @Override
+            public void run(int t, Random random) {
+                for (int i = 0; i < OPS_PER_THREAD; i++) {
+                    int c = random.nextInt(C / THREADS + 1) * THREADS + t;
+                    if (c >= C) {
+                        continue;
+                    }
+                    Integer[] key = key(random.nextInt(A), random.nextInt(B), c);
+                    List<Integer> list = Arrays.asList(key);
+                    switch (random.nextInt(4)) {
+                        case 0:
+                            check(trie.remove(key) == oracle.containsKey(list), "remove of " + list);
+                            oracle.remove(list);
+                            break;
+                        case 1:
+                            trie.addIfNull(key, valueOf(key));
+                            oracle.putIfAbsent(list, valueOf(key));
+                            break;
+                        default:
+                            trie.add(key, valueOf(key));
+                            oracle.put(list, valueOf(key));
+                            break;
+                    }
+                }
+            }
+        });
+        compare(trie, oracle, "owned leaves limit " + limit);
+    }
+
+    /**
+     * Writers add full keys while removers wipe whole {a} and {a, b} prefixes
+     * (wild card remove), so adds keep landing in subtrees being detached.
+     * Which of them survive is up to the scheduler, so the check is that what
+     * survived was added with its value, that size() counts exactly what is
+     * left, and that the trie is still fully usable afterwards.
+     */
+    private static void prefixRemoves(int limit, final int round) throws InterruptedException {
+        final ConcurrentTrieMap<Integer, Integer> trie = new ConcurrentTrieMap<>(limit);
+        final ConcurrentHashMap<List<Integer>, Integer> added = new ConcurrentHashMap<>();
+        runThreads(THREADS, round * 1000L, new TestUtil.Worker() {
+            @Override
+            public void run(int t, Random random) {
+                boolean remover = t % 4 == 0;
+                for (int i = 0; i < OPS_PER_THREAD; i++) {
+                    int a = random.nextInt(A);
+                    int b = random.nextInt(B);
+                    if (remover) {
+                        if (random.nextBoolean()) {
+                            trie.remove(new Integer[]{a});
+                        } else {
+                            trie.remove(new Integer[]{a, b});
+                        }
+                    } else {
+                        Integer[] key = key(a, b, random.nextInt(C));
+                        added.put(Arrays.asList(key), valueOf(key));
+                        trie.add(key, valueOf(key));
+                        Integer got = trie.get(key);
+                        check(got == null || got == valueOf(key), "read " + got + " for " + Arrays.asList(key));
+                    }
+                }
+            }
+        });
+        Map<List<Integer>, Integer> entries = trie.getKeyValueEntries();
+        check(trie.size() == entries.size(), "size " + trie.size() + " != " + entries.size() + " entries");
+        for (Map.Entry<List<Integer>, Integer> e : entries.entrySet()) {
+            check(e.getValue().equals(added.get(e.getKey())), "never added " + e);
+        }
+        // Everything removed or not, adding all keys again must restore them.
+        for (Map.Entry<List<Integer>, Integer> e : added.entrySet()) {
+            trie.add(e.getKey().toArray(new Integer[0]), e.getValue());
+        }
+        compare(trie, added, "prefix removes limit " + limit);
+        for (int a = 0; a < A; a++) {
+            trie.remove(new Integer[]{a});
+        }
+        check(trie.size() == 0, "size " + trie.size() + " after removing every prefix");
+        check(trie.getKeyValueEntries().isEmpty(), "entries left after removing every prefix");
+    }
+
+    private static void compare(ConcurrentTrieMap<Integer, Integer> trie,
+            Map<List<Integer>, Integer> oracle, String what) {
+        check(trie.size() == oracle.size(), what + ": size " + trie.size() + " != " + oracle.size());
+        check(trie.getKeyValueEntries().equals(oracle), what + ": entries differ");
+        for (int a = 0; a < A; a++) {
+            for (int b = 0; b < B; b++) {
+                for (int c = 0; c < C; c++) {
+                    Integer[] key = key(a, b, c);
+                    Integer expected = oracle.get(Arrays.asList(key));
+                    Integer got = trie.get(key);
+                    check(expected == null ? got == null : expected.equals(got),
+                            what + ": get " + Arrays.asList(key) + " " + got + " != " + expected);
+                }
+            }
+        }
+    }
+}
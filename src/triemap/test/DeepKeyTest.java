@@ -0,0 +1,92 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import triemap.FrozenTrieMap;
+import triemap.IntCountTrieMap;
+import triemap.MappedTrieMap;
+import triemap.NumTrieMap;
+import static triemap.test.TestUtil.check;
+
+/**
+ * Writes tries with very long keys(far deeper than the thread stack would
+ * allow a recursive walk) to the mapped format and reads them back, prunes
+ * them and freezes them.
+ *
+ * @author srikalyc
+ */
+public class DeepKeyTest {
+
+    private static final int DEPTH = 200000;
+
+    public static void main(String[] args) throws IOException {
+        Integer[] key = new Integer[DEPTH];
+        int[] intKey = new int[DEPTH];
+        for (int i = 0; i < DEPTH; i++) {
+            key[i] = i % 7;
+            intKey[i] = i % 7;
+        }
+        NumTrieMap<Integer> trie = new NumTrieMap<>();
+        trie.incPrefixes(key, 3);
+        trie.inc(new Integer[]{1, 2}, 5);
+        IntCountTrieMap counts = new IntCountTrieMap();
+        counts.incPrefixes(intKey, 3);
+
+        File file = File.createTempFile("deepkey", ".trie");
+        try {
+            MappedTrieMap.write(trie, file);
+            checkMapped(file, intKey, trie.size());
+            MappedTrieMap.write(counts, file);
+            checkMapped(file, intKey, counts.size());
+        } finally {
+            file.delete();
+        }
+
+        // Pruning walks the whole depth too: only the middle key is left.
+        counts.inc(intKey, 0, DEPTH / 2, 10);
+        check(counts.prune(4) == DEPTH - 1, "pruned entries");
+        check(counts.size() == 1 && counts.get(intKey, 0, DEPTH / 2) == 13, "entry left after prune");
+        check(counts.liveNodes() == DEPTH / 2 + 1, "nodes left after prune " + counts.liveNodes());
+
+        FrozenTrieMap<Integer, Integer> frozen = FrozenTrieMap.copyOf(trie);
+        check(frozen.size() == trie.size(), "frozen size " + frozen.size() + " != " + trie.size());
+        check(frozen.get(key) == 3, "frozen deepest value");
+        check(frozen.get(key, 0, DEPTH / 2) == 3, "frozen middle value");
+        check(frozen.get(new Integer[]{1, 2}) == 5, "frozen short key");
+
+        // Values only at the tails, so listing the entries stays linear.
+        NumTrieMap<Integer> tails = new NumTrieMap<>();
+        tails.inc(key, 3);
+        tails.inc(new Integer[]{1, 2}, 5);
+        Map<List<Integer>, Integer> entries = FrozenTrieMap.copyOf(tails).getKeyValueEntries();
+        check(entries.size() == 2, "frozen entries " + entries.size());
+        check(entries.get(Arrays.asList(key)) == 3, "frozen deep entry");
+        check(entries.get(Arrays.asList(1, 2)) == 5, "frozen short entry");
+        System.out.println("DeepKeyTest ok");
+    }
+
+    private static void checkMapped(File file, int[] key, int size) throws IOException {
+        MappedTrieMap mapped = MappedTrieMap.open(file);
+        try {
+            check(mapped.size() == size, "mapped size " + mapped.size() + " != " + size);
+            check(mapped.get(key) == 3, "deepest value");
+            check(mapped.get(key, 0, DEPTH / 2) == 3, "middle value");
+            check(!mapped.contains(new int[]{6}), "missing key found");
+        } finally {
+            mapped.close();
+        }
+    }
+}
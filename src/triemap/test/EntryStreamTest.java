@@ -0,0 +1,123 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap.test;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import triemap.TrieCursor;
+import triemap.TrieMap;
+import static triemap.test.TestUtil.check;
+import static triemap.test.TestUtil.randomKey;
+
+/**
+ * entryStream() sequential and parallel against a cursor scan: the same
+ * entries in the same order from collect(), the same count() and the same
+ * entries through an unordered parallel forEach(). The spliterator is also
+ * split by hand down to its leaves, which must cover the entries in order,
+ * and a trie whose keys all share a leading prefix(with entries along it)
+ * must still split.
+ *
+ * @author srikalyc
+ */
+public class EntryStreamTest {
+
+    public static void main(String[] args) {
+        Random random = new Random(9);
+        for (int size : new int[]{0, 1, 10, 1000, 20000}) {
+            for (int shared : new int[]{0, 1, 5}) {
+                TrieMap<Integer, Integer> trie = new TrieMap<>(random.nextBoolean() ? 4 : 64);
+                Integer[] head = new Integer[shared];
+                for (int i = 0; i < shared; i++) {
+                    head[i] = 7;
+                    if (random.nextBoolean()) {
+                        trie.add(Arrays.copyOf(head, i + 1), -i);// Entries along the shared prefix.
+                    }
+                }
+                for (int i = 0; i < size; i++) {
+                    Integer[] tail = randomKey(random, 5, 12);
+                    Integer[] key = Arrays.copyOf(head, shared + tail.length);
+                    System.arraycopy(tail, 0, key, shared, tail.length);
+                    trie.add(key, i);
+                }
+                compare(trie, "size " + size + " shared " + shared);
+            }
+        }
+        System.out.println("EntryStreamTest ok");
+    }
+
+    private static List<Map.Entry<List<Integer>, Integer>> scan(TrieMap<Integer, Integer> trie) {
+        List<Map.Entry<List<Integer>, Integer>> entries = new ArrayList<>();
+        TrieCursor<Integer, Integer> cursor = trie.cursor();
+        while (cursor.next()) {
+            Integer[] key = new Integer[cursor.keyLength()];
+            cursor.copyKeyInto(key);
+            entries.add(new AbstractMap.SimpleImmutableEntry<>(Arrays.asList(key), cursor.value()));
+        }
+        return entries;
+    }
+
+    private static void compare(TrieMap<Integer, Integer> trie, String what) {
+        List<Map.Entry<List<Integer>, Integer>> expected = scan(trie);
+        check(expected.size() == trie.size(), what + ": cursor saw " + expected.size());
+        check(trie.entryStream().collect(Collectors.<Map.Entry<List<Integer>, Integer>>toList()).equals(expected),
+                what + ": sequential stream differs");
+        check(trie.entryStream().parallel().collect(Collectors.<Map.Entry<List<Integer>, Integer>>toList())
+                .equals(expected), what + ": parallel stream differs");
+        check(trie.entryStream().count() == expected.size(), what + ": sequential count");
+        check(trie.entryStream().parallel().count() == expected.size(), what + ": parallel count");
+
+        final Map<List<Integer>, Integer> seen = new ConcurrentHashMap<>();
+        final AtomicLong calls = new AtomicLong();
+        trie.entryStream().parallel().forEach(new Consumer<Map.Entry<List<Integer>, Integer>>() {
+            @Override
+            public void accept(Map.Entry<List<Integer>, Integer> e) {
+                seen.put(e.getKey(), e.getValue());
+                calls.incrementAndGet();
+            }
+        });
+        check(calls.get() == expected.size() && seen.equals(trie.getKeyValueEntries()), what + ": parallel forEach");
+
+        List<Map.Entry<List<Integer>, Integer>> leaves = new ArrayList<>();
+        int parts = split(trie.entryStream().spliterator(), leaves);
+        check(leaves.equals(expected), what + ": split parts do not add up to the entries");
+        if (expected.size() >= 10) {
+            check(parts > 1, what + ": did not split");
+        }
+    }
+
+    /**
+     * Splits s as far as it goes, draining the parts in order into out.
+     * @return number of parts.
+     */
+    private static int split(Spliterator<Map.Entry<List<Integer>, Integer>> s,
+            final List<Map.Entry<List<Integer>, Integer>> out) {
+        Spliterator<Map.Entry<List<Integer>, Integer>> lower = s.trySplit();
+        if (lower == null) {
+            s.forEachRemaining(new Consumer<Map.Entry<List<Integer>, Integer>>() {
+                @Override
+                public void accept(Map.Entry<List<Integer>, Integer> e) {
+                    out.add(e);
+                }
+            });
+            return 1;
+        }
+        return split(lower, out) + split(s, out);
+    }
+}
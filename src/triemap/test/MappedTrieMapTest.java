@@ -0,0 +1,193 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import triemap.ByteCountTrieMap;
+import triemap.IntCountTrieMap;
+import triemap.MappedTrieMap;
+import triemap.NumTrieMap;
+import static triemap.test.TestUtil.check;
+import static triemap.test.TestUtil.startsWith;
+
+/**
+ * Writes random NumTrieMap, IntCountTrieMap and ByteCountTrieMap tries to the
+ * mapped format and compares get/contains/forEachUnder(and its key order) with the in memory
+ * entries, the empty key included. After close() every method but close()
+ * must throw IllegalStateException, the empty key as well.
+ *
+ * @author srikalyc
+ */
+public class MappedTrieMapTest {
+
+    private static final int KEYS = 3000;
+
+    public static void main(String[] args) throws IOException {
+        Random random = new Random(5);
+        NumTrieMap<Integer> num = new NumTrieMap<>();
+        IntCountTrieMap ints = new IntCountTrieMap();
+        ByteCountTrieMap bytes = new ByteCountTrieMap();
+        Map<List<Long>, Long> model = new HashMap<>();
+        for (int k = 0; k < KEYS; k++) {
+            int[] key = new int[random.nextInt(5) + 1];
+            Integer[] boxed = new Integer[key.length];
+            byte[] byteKey = new byte[key.length];
+            List<Long> list = new ArrayList<>();
+            for (int i = 0; i < key.length; i++) {
+                key[i] = random.nextInt(5) - 1;// A negative partial key too.
+                boxed[i] = key[i];
+                byteKey[i] = (byte) key[i];
+                list.add((long) key[i]);
+            }
+            int value = random.nextInt(100) + 1;
+            num.inc(boxed, value);
+            ints.inc(key, value);
+            bytes.inc(byteKey, value);
+            Long old = model.get(list);
+            model.put(list, old == null ? value : old + value);
+        }
+        ints.inc(new int[0], 7);// Counted on the root.
+        bytes.inc(new byte[0], 7);
+
+        File file = File.createTempFile("mapped", ".trie");
+        try {
+            MappedTrieMap.write(num, file);
+            compare(MappedTrieMap.open(file), model, 0, "NumTrieMap");
+            MappedTrieMap.write(ints, file);
+            compare(MappedTrieMap.open(file), model, 7, "IntCountTrieMap");
+            MappedTrieMap.write(bytes, file);
+            compare(MappedTrieMap.open(file), model, 7, "ByteCountTrieMap");
+        } finally {
+            file.delete();
+        }
+        System.out.println("MappedTrieMapTest ok");
+    }
+
+    /**
+     * Checks mapped against model and closes it.
+     * @param root count of the empty key, 0 if there is none.
+     */
+    private static void compare(final MappedTrieMap mapped, Map<List<Long>, Long> model, long root, String name) {
+        check(mapped.size() == model.size() + (root == 0 ? 0 : 1), name + ": size " + mapped.size());
+        check(mapped.get(new long[0]) == root && mapped.get(new int[0]) == root, name + ": empty key " + mapped.get(new long[0]));
+        for (Map.Entry<List<Long>, Long> e : model.entrySet()) {
+            long[] key = new long[e.getKey().size()];
+            int[] intKey = new int[key.length];
+            Integer[] boxed = new Integer[key.length];
+            byte[] byteKey = new byte[key.length];
+            for (int i = 0; i < key.length; i++) {
+                key[i] = e.getKey().get(i);
+                intKey[i] = (int) key[i];
+                boxed[i] = intKey[i];
+                byteKey[i] = (byte) key[i];
+            }
+            long value = e.getValue();
+            check(mapped.get(key) == value && mapped.get(intKey) == value && mapped.get(boxed) == value
+                    && mapped.get(byteKey) == value, name + ": get " + e.getKey() + " " + mapped.get(key));
+            check(mapped.contains(key) && mapped.contains(intKey), name + ": contains " + e.getKey());
+        }
+        check(!mapped.contains(new int[]{9}) && mapped.get(new long[]{3, 9}) == 0, name + ": missing key found");
+
+        for (long first = -1; first < 4; first++) {
+            final List<Long> prefix = new ArrayList<>();
+            prefix.add(first);
+            Map<List<Long>, Long> expected = new HashMap<>();
+            for (Map.Entry<List<Long>, Long> e : model.entrySet()) {
+                if (startsWith(e.getKey(), prefix)) {
+                    expected.put(e.getKey(), e.getValue());
+                }
+            }
+            final Map<List<Long>, Long> visited = new HashMap<>();
+            final List<List<Long>> order = new ArrayList<>();
+            mapped.forEachUnder(new long[]{first}, new MappedTrieMap.EntryVisitor() {
+                @Override
+                public void visit(long[] key, int keyLength, long value) {
+                    List<Long> list = new ArrayList<>();
+                    for (int i = 0; i < keyLength; i++) {
+                        list.add(key[i]);
+                    }
+                    visited.put(list, value);
+                    order.add(list);
+                }
+            });
+            check(visited.equals(expected), name + ": forEachUnder " + prefix);
+            for (int i = 1; i < order.size(); i++) {
+                check(before(order.get(i - 1), order.get(i)), name + ": forEachUnder " + prefix + " visited "
+                        + order.get(i - 1) + " before " + order.get(i));
+            }
+        }
+
+        mapped.close();
+        mapped.close();// Does nothing.
+        closed(new Runnable() {
+            @Override
+            public void run() {
+                mapped.get(new long[0]);
+            }
+        }, name + ": get of the empty key");
+        closed(new Runnable() {
+            @Override
+            public void run() {
+                mapped.get(new int[]{1, 2});
+            }
+        }, name + ": get");
+        closed(new Runnable() {
+            @Override
+            public void run() {
+                mapped.contains(new Number[0]);
+            }
+        }, name + ": contains of the empty key");
+        closed(new Runnable() {
+            @Override
+            public void run() {
+                mapped.contains(new byte[]{1});
+            }
+        }, name + ": contains");
+        closed(new Runnable() {
+            @Override
+            public void run() {
+                mapped.forEachUnder(new long[0], null);
+            }
+        }, name + ": forEachUnder");
+        closed(new Runnable() {
+            @Override
+            public void run() {
+                mapped.size();
+            }
+        }, name + ": size");
+    }
+
+    /**
+     * @return true if a is less than b, a key coming before its extensions.
+     */
+    private static boolean before(List<Long> a, List<Long> b) {
+        for (int i = 0; i < a.size() && i < b.size(); i++) {
+            if (!a.get(i).equals(b.get(i))) {
+                return a.get(i) < b.get(i);
+            }
+        }
+        return a.size() < b.size();
+    }
+
+    private static void closed(Runnable read, String what) {
+        try {
+            read.run();
+            throw new AssertionError(what + " after close did not throw");
+        } catch (IllegalStateException expected) {
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap.test;
+
+import triemap.BoundedTrieMap;
+import triemap.NumTrieMap;
+import triemap.TrieMap;
+import triemap.TrieMetrics;
+import static triemap.test.TestUtil.check;
+
+/**
+ * Every public add/get/inc method counts exactly one call of its own
+ * TrieMetrics.Op(methods built on others are not counted twice), on TrieMap,
+ * NumTrieMap and BoundedTrieMap alike, every op records the depth it actually
+ * descended(the nodes which existed already for add/inc), and the counts of
+ * threads which have ended are kept.
+ *
+ * @author srikalyc
+ */
+public class MetricsTest {
+
+    public static void main(String[] args) throws InterruptedException {
+        allOps(new TrieMap<Integer, Integer>());
+        allOps(new NumTrieMap<Integer>());
+        allOps(new BoundedTrieMap<Integer, Integer>(BoundedTrieMap.Policy.LRU, 100));
+
+        TrieMetrics metrics = new TrieMetrics(1);
+        NumTrieMap<Integer> num = new NumTrieMap<>();
+        num.setMetrics(metrics);
+        num.inc(new Integer[]{1, 2}, 1);
+        num.incPrefixes(new Integer[]{1, 2, 3}, 1);
+        num.incAll(new Integer[]{1, 2, 3}, 1);
+        num.incAll(new Integer[]{1, 2, 3}, 1, 2);
+        calls(metrics, TrieMetrics.Op.INC, 1);
+        calls(metrics, TrieMetrics.Op.INC_PREFIXES, 1);
+        calls(metrics, TrieMetrics.Op.INC_ALL, 2);
+        depth(metrics, TrieMetrics.Op.INC, 0);
+        depth(metrics, TrieMetrics.Op.INC_PREFIXES, 2);
+        // {1, 2, 3} then new {2, 3} and {3}; windows {1, 2}, {2, 3} and {3}.
+        depth(metrics, TrieMetrics.Op.INC_ALL, (3 + 5) / 2.0);
+
+        endedThreads();
+        System.out.println("MetricsTest ok");
+    }
+
+    private static void allOps(TrieMap<Integer, Integer> trie) {
+        TrieMetrics metrics = new TrieMetrics(1);
+        trie.setMetrics(metrics);
+        Integer[] key = {1, 2, 3};
+        trie.add(key, 1);
+        trie.addIfNull(key, 2);
+        trie.addPrefixes(key, 3);
+        trie.addAll(key, 4);
+        for (TrieMetrics.Op op : new TrieMetrics.Op[]{TrieMetrics.Op.ADD, TrieMetrics.Op.ADD_IF_NULL,
+            TrieMetrics.Op.ADD_PREFIXES, TrieMetrics.Op.ADD_ALL}) {
+            calls(metrics, op, 1);
+        }
+        // Only nodes which were there count: none for the first add, then all
+        // three, and addAll creates {2, 3} and {3} after descending {1, 2, 3}.
+        depth(metrics, TrieMetrics.Op.ADD, 0);
+        depth(metrics, TrieMetrics.Op.ADD_IF_NULL, 3);
+        depth(metrics, TrieMetrics.Op.ADD_PREFIXES, 3);
+        depth(metrics, TrieMetrics.Op.ADD_ALL, 3);
+        trie.addAll(key, 5);
+        depth(metrics, TrieMetrics.Op.ADD_ALL, (3 + 6) / 2.0);
+        calls(metrics, TrieMetrics.Op.GET, 0);
+
+        // Found, stopping one node short, and missing at the first node.
+        trie.get(key);
+        trie.get(new Integer[]{1, 2, 9});
+        trie.get(new Integer[]{9, 2, 3});
+        long[] depths = metrics.snapshot(TrieMetrics.Op.GET).depthHistogram();
+        check(depths[3] == 1 && depths[2] == 1 && depths[0] == 1, trie.getClass().getSimpleName()
+                + ": get depths " + depths[0] + "," + depths[1] + "," + depths[2] + "," + depths[3]);
+        calls(metrics, TrieMetrics.Op.GET, 3);
+    }
+
+    /**
+     * Counts of threads which have ended are kept after their recorders are
+     * folded, and keep adding up with the live ones.
+     */
+    private static void endedThreads() throws InterruptedException {
+        final TrieMetrics metrics = new TrieMetrics(1);
+        for (int round = 0; round < 3; round++) {
+            final NumTrieMap<Integer> trie = new NumTrieMap<>();
+            trie.setMetrics(metrics);
+            Thread[] threads = new Thread[20];
+            for (int t = 0; t < threads.length; t++) {
+                threads[t] = new Thread() {
+                    @Override
+                    public void run() {
+                        trie.inc(new Integer[]{1}, 1);
+                    }
+                };
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            calls(metrics, TrieMetrics.Op.INC, 20 * (round + 1));
+        }
+        NumTrieMap<Integer> trie = new NumTrieMap<>();
+        trie.setMetrics(metrics);
+        trie.inc(new Integer[]{1}, 1);
+        calls(metrics, TrieMetrics.Op.INC, 61);
+    }
+
+    private static void calls(TrieMetrics metrics, TrieMetrics.Op op, long expected) {
+        TrieMetrics.Snapshot snapshot = metrics.snapshot(op);
+        check(snapshot.calls() == expected && snapshot.sampled() == expected,
+                op + ": " + snapshot.calls() + " calls, " + snapshot.sampled() + " sampled, expected " + expected);
+    }
+
+    private static void depth(TrieMetrics metrics, TrieMetrics.Op op, double expected) {
+        check(metrics.snapshot(op).meanDepth() == expected, op + ": depth " + metrics.snapshot(op).meanDepth());
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap.test;
+
+import java.util.Arrays;
+import java.util.Random;
+import triemap.ByteCountTrieMap;
+import triemap.IntCountTrieMap;
+import static triemap.test.TestUtil.check;
+
+/**
+ * Streams tokens through the n-gram ingestors of IntCountTrieMap and
+ * ByteCountTrieMap while keys are removed from the trie mid stream(without
+ * reset()), and compares the counts with a second trie which gets the same
+ * n-grams through plain inc() and the same removes. Right after a remove
+ * the ingestors must not have brought back paths they do not count under.
+ *
+ * @author srikalyc
+ */
+public class NGramIngestorTest {
+
+    private static final int MAX_DEPTH = 4;
+    private static final int TOKENS = 50000;
+
+    public static void main(String[] args) {
+        Random random = new Random(11);
+        int[] stream = new int[TOKENS];
+        byte[] bytes = new byte[TOKENS];
+        for (int i = 0; i < TOKENS; i++) {
+            stream[i] = random.nextInt(5);
+            bytes[i] = (byte) stream[i];
+        }
+
+        IntCountTrieMap ints = new IntCountTrieMap();
+        IntCountTrieMap intExpected = new IntCountTrieMap();
+        IntCountTrieMap.NGramIngestor intIngestor = ints.ngramIngestor(MAX_DEPTH);
+        ByteCountTrieMap bytesTrie = new ByteCountTrieMap();
+        ByteCountTrieMap byteExpected = new ByteCountTrieMap();
+        ByteCountTrieMap.NGramIngestor byteIngestor = bytesTrie.ngramIngestor(MAX_DEPTH);
+        boolean removed = false;
+        for (int i = 0; i < TOKENS; i++) {
+            intIngestor.accept(stream[i]);
+            byteIngestor.accept(bytes[i]);
+            for (int d = 1; d <= MAX_DEPTH && d <= i + 1; d++) {
+                intExpected.inc(stream, i - d + 1, i + 1, 1);
+                byteExpected.inc(bytes, i - d + 1, i + 1, 1);
+            }
+            if (removed) {
+                samePaths(ints, intExpected, bytesTrie, byteExpected, new int[0], "after the remove at " + (i - 1));
+                removed = false;
+            }
+            if (random.nextInt(100) == 0) {// Frees nodes the ingestors may be standing on.
+                int len = random.nextInt(2) + 1;
+                int[] key = new int[len];
+                byte[] byteKey = new byte[len];
+                for (int k = 0; k < len; k++) {
+                    key[k] = random.nextInt(5);
+                    byteKey[k] = (byte) key[k];
+                }
+                check(ints.remove(key) == intExpected.remove(key), "int remove at " + i);
+                check(bytesTrie.remove(byteKey) == byteExpected.remove(byteKey), "byte remove at " + i);
+                removed = true;
+            }
+        }
+        check(ints.getKeyValueEntries().equals(intExpected.getKeyValueEntries()), "int n-gram counts differ");
+        check(ints.size() == intExpected.size(), "int size " + ints.size() + " != " + intExpected.size());
+        check(bytesTrie.getKeyValueEntries().equals(byteExpected.getKeyValueEntries()), "byte n-gram counts differ");
+        check(bytesTrie.size() == byteExpected.size(), "byte size " + bytesTrie.size() + " != " + byteExpected.size());
+        System.out.println("NGramIngestorTest ok");
+    }
+
+    /**
+     * contains() of every key of up to MAX_DEPTH tokens starting with prefix
+     * agrees with the expected tries, so the ingestors did not bring back
+     * removed paths they are not counting under.
+     */
+    private static void samePaths(IntCountTrieMap ints, IntCountTrieMap intExpected, ByteCountTrieMap bytes,
+            ByteCountTrieMap byteExpected, int[] prefix, String what) {
+        for (int t = 0; t < 5; t++) {
+            int[] key = Arrays.copyOf(prefix, prefix.length + 1);
+            key[prefix.length] = t;
+            byte[] byteKey = new byte[key.length];
+            for (int k = 0; k < key.length; k++) {
+                byteKey[k] = (byte) key[k];
+            }
+            check(ints.contains(key) == intExpected.contains(key), what + ": int contains "
+                    + Arrays.toString(key) + " " + ints.contains(key));
+            check(bytes.contains(byteKey) == byteExpected.contains(byteKey), what + ": byte contains "
+                    + Arrays.toString(key) + " " + bytes.contains(byteKey));
+            if (key.length < MAX_DEPTH && intExpected.contains(key)) {
+                samePaths(ints, intExpected, bytes, byteExpected, key, what);
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap.test;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+import triemap.TrieCursor;
+import triemap.TrieMap;
+import static triemap.test.TestUtil.check;
+import static triemap.test.TestUtil.randomKey;
+
+/**
+ * floorKey/lowerKey/ceilingKey/higherKey/firstEntry/lastEntry and range()
+ * cursors of a TrieMap against a TreeMap of List keys ordered the same way
+ * (by partial key, a key before its extensions). Stored keys use even partial
+ * keys only, probes use any, so probes hit stored keys, proper prefixes of
+ * stored keys, extensions of them and keys falling between children. Tries
+ * with only sorted array children, only AVL tree children and a mix of both
+ * are checked, empty and as they fill up and shrink again.
+ *
+ * @author srikalyc
+ */
+public class NavigationTest {
+
+    private static final Comparator<List<Integer>> ORDER = new Comparator<List<Integer>>() {
+        @Override
+        public int compare(List<Integer> a, List<Integer> b) {
+            int n = Math.min(a.size(), b.size());
+            for (int i = 0; i < n; i++) {
+                int cmp = a.get(i).compareTo(b.get(i));
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return a.size() - b.size();
+        }
+    };
+
+    private static final int OPS = 6000;
+    private static final int MAX_LENGTH = 4;
+    /**
+     * Stored partial keys are 0, 2, .. 2 * (ALPHABET - 1).
+     */
+    private static final int ALPHABET = 6;
+
+    public static void main(String[] args) {
+        for (int limit : new int[]{0, 3, 64}) {
+            run(limit);
+        }
+        System.out.println("NavigationTest ok");
+    }
+
+    private static Integer[] probe(Random random) {
+        Integer[] key = new Integer[random.nextInt(MAX_LENGTH + 2)];// Empty keys too.
+        for (int i = 0; i < key.length; i++) {
+            key[i] = random.nextInt(2 * ALPHABET + 1) - 1;
+        }
+        return key;
+    }
+
+    private static void run(int limit) {
+        Random random = new Random(limit);
+        TrieMap<Integer, Integer> trie = new TrieMap<>(limit);
+        TreeMap<List<Integer>, Integer> expected = new TreeMap<>(ORDER);
+        String what = "limit " + limit;
+        compare(trie, expected, random, what + " empty");
+        boolean arrays = false;
+        boolean trees = false;
+        int peak = 0;
+        for (int op = 0; op < OPS; op++) {
+            // Mostly adds in the first half, mostly removes in the second.
+            boolean grow = op < OPS / 2 ? random.nextInt(4) != 0 : random.nextInt(4) == 0;
+            Integer[] key = randomKey(random, MAX_LENGTH, ALPHABET);
+            for (int i = 0; i < key.length; i++) {
+                key[i] *= 2;
+            }
+            List<Integer> list = Arrays.asList(key);
+            if (grow) {
+                trie.add(key, op);
+                expected.put(list, op);
+                peak = Math.max(peak, expected.size());
+            } else {
+                if (random.nextBoolean() && expected.ceilingKey(list) != null) {
+                    list = expected.ceilingKey(list);// Mostly remove keys which are there.
+                    key = list.toArray(new Integer[0]);
+                }
+                check(trie.removeExact(key) == (expected.remove(list) != null), what + ": removeExact " + list);
+            }
+            compare(trie, expected, random, what + " op " + op);
+            arrays |= trie.stats().getArrayIndexCount() > 0;
+            trees |= trie.stats().getTreeIndexCount() > 0;
+        }
+        check(arrays == limit > 0, what + ": array indexes " + arrays);
+        check(trees == limit < 64, what + ": tree indexes " + trees);
+        check(expected.size() < peak / 2, what + ": " + expected.size() + " of " + peak + " keys left");
+    }
+
+    private static void compare(TrieMap<Integer, Integer> trie, TreeMap<List<Integer>, Integer> expected,
+            Random random, String what) {
+        check(same(trie.firstEntry(), expected.firstEntry()), what + ": firstEntry " + trie.firstEntry());
+        check(same(trie.lastEntry(), expected.lastEntry()), what + ": lastEntry " + trie.lastEntry());
+        for (int p = 0; p < 5; p++) {
+            Integer[] key = probe(random);
+            List<Integer> list = Arrays.asList(key);
+            int n = key.length;
+            check(same(trie.floorKey(key, 0, n), expected.floorKey(list)), what + ": floorKey " + list);
+            check(same(trie.lowerKey(key, 0, n), expected.lowerKey(list)), what + ": lowerKey " + list);
+            check(same(trie.ceilingKey(key, 0, n), expected.ceilingKey(list)), what + ": ceilingKey " + list);
+            check(same(trie.higherKey(key, 0, n), expected.higherKey(list)), what + ": higherKey " + list);
+            // A sub range of a longer array.
+            Integer[] padded = new Integer[n + 2];
+            padded[0] = -5;
+            System.arraycopy(key, 0, padded, 1, n);
+            padded[n + 1] = 99;
+            check(same(trie.floorKey(padded, 1, n + 1), expected.floorKey(list)), what + ": floorKey of range " + list);
+            check(same(trie.higherKey(padded, 1, n + 1), expected.higherKey(list)), what + ": higherKey of range " + list);
+        }
+        for (int r = 0; r < 3; r++) {
+            Integer[] from = random.nextInt(5) == 0 ? null : probe(random);
+            Integer[] to = random.nextInt(5) == 0 ? null : probe(random);
+            NavigableMap<List<Integer>, Integer> sub = expected;
+            if (from != null) {
+                sub = sub.tailMap(Arrays.asList(from), true);
+            }
+            if (to != null) {
+                if (from != null && ORDER.compare(Arrays.asList(from), Arrays.asList(to)) > 0) {
+                    sub = new TreeMap<>(ORDER);// An inverted range is empty.
+                } else {
+                    sub = sub.headMap(Arrays.asList(to), false);
+                }
+            }
+            List<Map.Entry<List<Integer>, Integer>> entries = new ArrayList<>();
+            TrieCursor<Integer, Integer> cursor = trie.range(from, to);
+            while (cursor.next()) {
+                Integer[] key = new Integer[cursor.keyLength()];
+                cursor.copyKeyInto(key);
+                entries.add(new AbstractMap.SimpleImmutableEntry<>(Arrays.asList(key), cursor.value()));
+            }
+            check(!cursor.next(), what + ": range cursor moved past its end");
+            String range = (from == null ? "null" : Arrays.asList(from)) + ".." + (to == null ? "null" : Arrays.asList(to));
+            check(entries.equals(new ArrayList<>(sub.entrySet())), what + ": range " + range + " " + entries
+                    + " != " + sub);
+        }
+    }
+
+    private static boolean same(Object got, Object expected) {
+        return got == null ? expected == null : got.equals(expected);
+    }
+}
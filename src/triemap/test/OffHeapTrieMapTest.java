@@ -0,0 +1,203 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import triemap.OffHeapTrieMap;
+import static triemap.test.TestUtil.check;
+
+/**
+ * Random inc/incPrefixes/incAll on an OffHeapTrieMap with int[], byte[] and
+ * Number[] keys(one map per key type) against a HashMap of counts, through
+ * enough nodes and edges that more node slabs get allocated and the edge hash
+ * table is resized a few times. get() and contains() are compared for present,
+ * missing and valueless keys, and after close() every method must throw
+ * IllegalStateException.
+ *
+ * @author srikalyc
+ */
+public class OffHeapTrieMapTest {
+
+    private static final int OPS = 100000;
+    private static final int MAX_LENGTH = 6;
+    private static final int ALPHABET = 40;
+
+    private static final int INTS = 0;
+    private static final int BYTES = 1;
+    private static final int NUMBERS = 2;
+
+    public static void main(String[] args) {
+        for (int kind : new int[]{INTS, BYTES, NUMBERS}) {
+            run(kind);
+        }
+        System.out.println("OffHeapTrieMapTest ok");
+    }
+
+    private static int[] ints(List<Long> key) {
+        int[] a = new int[key.size()];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = key.get(i).intValue();
+        }
+        return a;
+    }
+
+    private static byte[] bytes(List<Long> key) {
+        byte[] a = new byte[key.size()];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = key.get(i).byteValue();
+        }
+        return a;
+    }
+
+    /**
+     * Mixes boxed types, a Number partial key is its longValue().
+     */
+    private static Number[] numbers(List<Long> key) {
+        Number[] a = new Number[key.size()];
+        for (int i = 0; i < a.length; i++) {
+            long k = key.get(i);
+            a[i] = i % 2 == 0 ? (Number) Long.valueOf(k) : (Number) Integer.valueOf((int) k);
+        }
+        return a;
+    }
+
+    /**
+     * @param op 0 inc, 1 incPrefixes, 2 incAll.
+     */
+    private static void inc(OffHeapTrieMap trie, int kind, int op, List<Long> key, int value) {
+        switch (kind * 3 + op) {
+            case 0: trie.inc(ints(key), value); break;
+            case 1: trie.incPrefixes(ints(key), value); break;
+            case 2: trie.incAll(ints(key), value); break;
+            case 3: trie.inc(bytes(key), value); break;
+            case 4: trie.incPrefixes(bytes(key), value); break;
+            case 5: trie.incAll(bytes(key), value); break;
+            case 6: trie.inc(numbers(key), value); break;
+            case 7: trie.incPrefixes(numbers(key), value); break;
+            default: trie.incAll(numbers(key), value); break;
+        }
+    }
+
+    private static long get(OffHeapTrieMap trie, int kind, List<Long> key) {
+        switch (kind) {
+            case INTS: return trie.get(ints(key));
+            case BYTES: return trie.get(bytes(key));
+            default: return trie.get(numbers(key));
+        }
+    }
+
+    private static boolean contains(OffHeapTrieMap trie, int kind, List<Long> key) {
+        switch (kind) {
+            case INTS: return trie.contains(ints(key));
+            case BYTES: return trie.contains(bytes(key));
+            default: return trie.contains(numbers(key));
+        }
+    }
+
+    /**
+     * Adds value to key in the reference and records every node on its path.
+     */
+    private static void add(Map<List<Long>, Long> counts, Set<List<Long>> nodes, List<Long> key, int value) {
+        Long old = counts.get(key);
+        counts.put(key, old == null ? value : old + value);
+        for (int d = 1; d <= key.size(); d++) {
+            nodes.add(key.subList(0, d));
+        }
+    }
+
+    private static List<Long> randomKey(Random random) {
+        List<Long> key = new ArrayList<>();
+        for (int i = random.nextInt(MAX_LENGTH) + 1; i > 0; i--) {
+            key.add((long) (random.nextInt(ALPHABET) - ALPHABET / 2));
+        }
+        return key;
+    }
+
+    private static void run(int kind) {
+        String what = new String[]{"int[]", "byte[]", "Number[]"}[kind];
+        Random random = new Random(kind);
+        OffHeapTrieMap trie = new OffHeapTrieMap(1000);
+        long initialBytes = trie.offHeapBytes();
+        Map<List<Long>, Long> counts = new HashMap<>();
+        Set<List<Long>> nodes = new HashSet<>();
+        for (int i = 0; i < OPS; i++) {
+            List<Long> key = randomKey(random);
+            int value = random.nextInt(9) - 2;
+            int op = random.nextInt(3);
+            inc(trie, kind, op, key, value);
+            if (op == 0) {
+                add(counts, nodes, key, value);
+            } else if (op == 1) {
+                for (int e = 1; e <= key.size(); e++) {
+                    add(counts, nodes, new ArrayList<>(key.subList(0, e)), value);
+                }
+            } else {
+                for (int s = 0; s < key.size(); s++) {
+                    for (int e = s + 1; e <= key.size(); e++) {
+                        add(counts, nodes, new ArrayList<>(key.subList(s, e)), value);
+                    }
+                }
+            }
+            check(trie.size() == counts.size(), what + " op " + i + ": size " + trie.size() + " != " + counts.size());
+            for (int probe = 0; probe < 3; probe++) {
+                List<Long> k = randomKey(random);
+                Long expected = counts.get(k);
+                check(get(trie, kind, k) == (expected == null ? 0 : expected), what + " op " + i + ": get " + k);
+                check(contains(trie, kind, k) == nodes.contains(k), what + " op " + i + ": contains " + k);
+            }
+        }
+        // Past two node slabs, and one edge per node is enough to double the
+        // edge table(2^16 slots at load factor 0.7) twice.
+        check(nodes.size() > 2 << 16, what + ": only " + nodes.size() + " nodes");
+        check(trie.offHeapBytes() > initialBytes, what + ": no memory was added");
+        check(trie.getKeyValueEntries().equals(counts), what + ": entries differ");
+        for (Map.Entry<List<Long>, Long> e : counts.entrySet()) {
+            check(get(trie, kind, e.getKey()) == e.getValue(), what + ": get " + e.getKey());
+        }
+        List<Long> missing = new ArrayList<>();
+        missing.add((long) ALPHABET);
+        check(get(trie, kind, missing) == 0 && !contains(trie, kind, missing), what + ": missing key");
+        List<Long> empty = new ArrayList<>();
+        check(get(trie, kind, empty) == 0 && contains(trie, kind, empty), what + ": empty key is the root");
+
+        trie.close();
+        trie.close();// Closing twice is fine.
+        for (List<Long> k : Arrays.asList(empty, missing, counts.keySet().iterator().next())) {
+            closed(trie, kind, k, what);
+        }
+    }
+
+    private static void closed(final OffHeapTrieMap trie, int kind, List<Long> key, String what) {
+        for (int call = 0; call < 8; call++) {
+            try {
+                switch (call) {
+                    case 0: inc(trie, kind, 0, key, 1); break;
+                    case 1: inc(trie, kind, 1, key, 1); break;
+                    case 2: inc(trie, kind, 2, key, 1); break;
+                    case 3: get(trie, kind, key); break;
+                    case 4: contains(trie, kind, key); break;
+                    case 5: trie.size(); break;
+                    case 6: trie.offHeapBytes(); break;
+                    default: trie.getKeyValueEntries(); break;
+                }
+                throw new AssertionError(what + ": call " + call + " on " + key + " after close did not throw");
+            } catch (IllegalStateException expected) {
+            }
+        }
+    }
+}
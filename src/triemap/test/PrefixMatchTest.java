@@ -0,0 +1,188 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import triemap.ByteCountTrieMap;
+import triemap.IntCountTrieMap;
+import triemap.NumTrieMap;
+import triemap.TrieMap;
+import static triemap.test.TestUtil.check;
+
+/**
+ * longestPrefixMatch()/forEachPrefixMatch() of NumTrieMap(TrieMap's),
+ * IntCountTrieMap and ByteCountTrieMap: no match, a match only at the full
+ * key, matches at several prefix lengths and inside a window of the query,
+ * then random tries and queries against a brute force check of every
+ * prefix. The count tries also match a count on the empty key.
+ *
+ * @author srikalyc
+ */
+public class PrefixMatchTest {
+
+    /**
+     * The same keys in the three tries. compare() checks a query against a scan
+     * of every prefix, visits as end, count pairs in the order they come.
+     */
+    private static class Tries {
+        final NumTrieMap<Integer> num = new NumTrieMap<>();
+        final IntCountTrieMap ints = new IntCountTrieMap();
+        final ByteCountTrieMap bytes = new ByteCountTrieMap();
+        final Map<List<Integer>, Long> model = new HashMap<>();
+
+        void inc(int[] key, int value) {
+            if (key.length > 0) {
+                num.inc(boxed(key), value);
+            }
+            ints.inc(key, value);
+            bytes.inc(bytes(key), value);
+            List<Integer> list = Arrays.asList(boxed(key));
+            Long old = model.get(list);
+            model.put(list, old == null ? value : old + value);
+        }
+
+        void compare(int[] query, int sI, int eI, String what) {
+            int expected = -1;
+            List<Long> expectedEnds = new ArrayList<>();
+            for (int end = sI; end <= eI; end++) {
+                Long value = model.get(Arrays.asList(boxed(Arrays.copyOfRange(query, sI, end))));
+                if (value != null) {
+                    expected = end;
+                    expectedEnds.add((long) end);
+                    expectedEnds.add(value);
+                }
+            }
+            what += " " + Arrays.toString(query) + "[" + sI + ".." + eI + ")";
+            check(ints.longestPrefixMatch(query, sI, eI) == expected, what + ": ints "
+                    + ints.longestPrefixMatch(query, sI, eI) + " != " + expected);
+            check(bytes.longestPrefixMatch(bytes(query), sI, eI) == expected, what + ": bytes "
+                    + bytes.longestPrefixMatch(bytes(query), sI, eI) + " != " + expected);
+            final List<Long> ends = new ArrayList<>();
+            ints.forEachPrefixMatch(query, sI, eI, new IntCountTrieMap.PrefixMatchVisitor() {
+                @Override
+                public void visit(int end, long count) {
+                    ends.add((long) end);
+                    ends.add(count);
+                }
+            });
+            check(ends.equals(expectedEnds), what + ": ints visited " + ends + " != " + expectedEnds);
+            ends.clear();
+            bytes.forEachPrefixMatch(bytes(query), sI, eI, new ByteCountTrieMap.PrefixMatchVisitor() {
+                @Override
+                public void visit(int end, long count) {
+                    ends.add((long) end);
+                    ends.add(count);
+                }
+            });
+            check(ends.equals(expectedEnds), what + ": bytes visited " + ends + " != " + expectedEnds);
+
+            // The empty key can not be stored in a TrieMap, so it never matches there.
+            if (model.containsKey(new ArrayList<Integer>())) {
+                expectedEnds = expectedEnds.subList(2, expectedEnds.size());
+                expected = expectedEnds.isEmpty() ? -1 : expected;
+            }
+            check(num.longestPrefixMatch(boxed(query), sI, eI) == expected, what + ": num "
+                    + num.longestPrefixMatch(boxed(query), sI, eI) + " != " + expected);
+            ends.clear();
+            num.forEachPrefixMatch(boxed(query), sI, eI, new TrieMap.PrefixMatchVisitor<Integer>() {
+                @Override
+                public void visit(int end, Integer value) {
+                    ends.add((long) end);
+                    ends.add((long) value);
+                }
+            });
+            check(ends.equals(expectedEnds), what + ": num visited " + ends + " != " + expectedEnds);
+        }
+    }
+
+    public static void main(String[] args) {
+        fixed();
+        randomTries();
+        System.out.println("PrefixMatchTest ok");
+    }
+
+    private static void fixed() {
+        Tries tries = new Tries();
+        tries.inc(new int[]{1}, 10);
+        tries.inc(new int[]{1, 2, 3}, 20);
+        tries.inc(new int[]{1, 2, 3, 4, 5}, 30);
+        tries.inc(new int[]{7, 8}, 40);
+        int[] several = {1, 2, 3, 4, 5, 6};
+        check(tries.ints.longestPrefixMatch(several) == 5, "longest of several");
+        check(tries.ints.longestPrefixMatch(new int[]{2, 1}) == -1, "no node");
+        check(tries.ints.longestPrefixMatch(new int[]{7}) == -1, "node without value");
+        check(tries.ints.longestPrefixMatch(new int[]{7, 8}) == 2, "full key only");
+        tries.compare(new int[]{2, 1}, 0, 2, "no match");
+        tries.compare(new int[]{7}, 0, 1, "path without a value");
+        tries.compare(new int[]{7, 8}, 0, 2, "full key only");
+        tries.compare(new int[]{7, 8, 9}, 0, 3, "shorter key only");
+        tries.compare(several, 0, 6, "several lengths");
+        tries.compare(several, 0, 4, "window cut");
+        tries.compare(new int[]{9, 1, 2, 3, 9}, 1, 4, "window start");
+        tries.compare(several, 2, 2, "empty window");
+
+        // A count on the empty key matches every query at its start.
+        tries.inc(new int[0], 5);
+        check(tries.ints.longestPrefixMatch(new int[]{2, 1}) == 0, "empty key match");
+        tries.compare(new int[]{2, 1}, 0, 2, "only the empty key");
+        tries.compare(several, 0, 6, "empty key and several lengths");
+        tries.compare(new int[]{9, 1, 2, 3, 9}, 1, 4, "empty key in a window");
+        tries.compare(several, 3, 3, "empty window with the empty key");
+    }
+
+    private static void randomTries() {
+        Random random = new Random(15);
+        for (int round = 0; round < 50; round++) {
+            Tries tries = new Tries();
+            int alphabet = 2 + random.nextInt(4);
+            int keys = random.nextInt(60);
+            for (int k = 0; k < keys; k++) {
+                int[] key = randomKey(random, random.nextInt(20) == 0 ? 0 : 6, alphabet);
+                tries.inc(key, random.nextInt(21) - 5);
+            }
+            for (int q = 0; q < 200; q++) {
+                int[] query = randomKey(random, 8, alphabet);
+                int sI = random.nextInt(query.length + 1);
+                int eI = sI + random.nextInt(query.length - sI + 1);
+                tries.compare(query, sI, eI, "round " + round);
+            }
+        }
+    }
+
+    private static int[] randomKey(Random random, int maxLength, int alphabet) {
+        int[] key = new int[maxLength == 0 ? 0 : random.nextInt(maxLength) + 1];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = random.nextInt(alphabet);
+        }
+        return key;
+    }
+
+    private static Integer[] boxed(int[] key) {
+        Integer[] boxed = new Integer[key.length];
+        for (int i = 0; i < key.length; i++) {
+            boxed[i] = key[i];
+        }
+        return boxed;
+    }
+
+    private static byte[] bytes(int[] key) {
+        byte[] bytes = new byte[key.length];
+        for (int i = 0; i < key.length; i++) {
+            bytes[i] = (byte) key[i];
+        }
+        return bytes;
+    }
+}
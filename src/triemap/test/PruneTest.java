@@ -0,0 +1,207 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import triemap.CountMinSketch;
+import triemap.IntCountTrieMap;
+import static triemap.test.TestUtil.check;
+import static triemap.test.TestUtil.removeUnder;
+
+/**
+ * IntCountTrieMap.prune() against a HashMap: the number of entries dropped,
+ * the entries and the number of nodes left. With an overflow sketch get() of
+ * a pruned key must return an estimate no lower than its pruned counts, and
+ * under a node budget the automatic prune must double its threshold until
+ * enough nodes are gone.
+ *
+ * @author srikalyc
+ */
+public class PruneTest {
+
+    public static void main(String[] args) {
+        prune(false);
+        prune(true);
+        budget();
+        System.out.println("PruneTest ok");
+    }
+
+    private static int[] randomKey(Random random) {
+        int[] key = new int[random.nextInt(4) + 1];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = random.nextInt(5);
+        }
+        return key;
+    }
+
+    private static List<Integer> list(int[] key, int eI) {
+        List<Integer> list = new ArrayList<>();
+        for (int i = 0; i < eI; i++) {
+            list.add(key[i]);
+        }
+        return list;
+    }
+
+    private static int[] array(List<Integer> key) {
+        int[] a = new int[key.size()];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = key.get(i);
+        }
+        return a;
+    }
+
+    private static void add(Map<List<Integer>, Long> counts, List<Integer> key, long value) {
+        Long old = counts.get(key);
+        counts.put(key, old == null ? value : old + value);
+    }
+
+    /**
+     * @return the nodes a trie holding exactly keys needs, the root included.
+     */
+    private static int nodesFor(Set<List<Integer>> keys) {
+        Set<List<Integer>> nodes = new HashSet<>();
+        for (List<Integer> k : keys) {
+            for (int d = 1; d <= k.size(); d++) {
+                nodes.add(k.subList(0, d));
+            }
+        }
+        return nodes.size() + 1;
+    }
+
+    private static void prune(boolean withSketch) {
+        String what = withSketch ? "sketch" : "no sketch";
+        Random random = new Random(withSketch ? 2 : 1);
+        IntCountTrieMap trie = new IntCountTrieMap();
+        CountMinSketch sketch = withSketch ? new CountMinSketch(1 << 12, 4) : null;
+        trie.setOverflowSketch(sketch);
+        Map<List<Integer>, Long> counts = new HashMap<>();
+        Map<List<Integer>, Long> pruned = new HashMap<>();
+        int prunes = 0;
+        for (int op = 0; op < 30000; op++) {
+            int[] key = randomKey(random);
+            int value = random.nextInt(9) + 1;
+            switch (random.nextInt(10)) {
+                case 0:
+                    // Ancestors emptied by a remove stay until the next prune, so
+                    // only the entries are compared.
+                    trie.remove(key);
+                    removeUnder(counts, list(key, key.length));
+                    break;
+                case 1:
+                case 2:
+                    trie.incPrefixes(key, value);
+                    for (int e = 1; e <= key.length; e++) {
+                        add(counts, list(key, e), value);
+                    }
+                    break;
+                default:
+                    trie.inc(key, value);
+                    add(counts, list(key, key.length), value);
+                    break;
+            }
+            if (op % 300 == 0) {
+                long threshold = random.nextInt(30);
+                int expected = 0;
+                for (Iterator<Map.Entry<List<Integer>, Long>> iter = counts.entrySet().iterator(); iter.hasNext();) {
+                    Map.Entry<List<Integer>, Long> e = iter.next();
+                    if (e.getValue() < threshold) {
+                        add(pruned, e.getKey(), e.getValue());
+                        iter.remove();
+                        expected++;
+                    }
+                }
+                int dropped = trie.prune(threshold);
+                prunes += dropped;
+                check(dropped == expected, what + " op " + op + ": prune(" + threshold + ") dropped "
+                        + dropped + ", expected " + expected);
+                check(trie.size() == counts.size(), what + " op " + op + ": size " + trie.size());
+                check(trie.getKeyValueEntries().equals(counts), what + " op " + op + ": entries differ");
+                check(trie.liveNodes() == nodesFor(counts.keySet()), what + " op " + op + ": "
+                        + trie.liveNodes() + " nodes, " + nodesFor(counts.keySet()) + " needed");
+                for (Map.Entry<List<Integer>, Long> e : pruned.entrySet()) {
+                    int[] k = array(e.getKey());
+                    long got = trie.get(k);
+                    Long live = counts.get(e.getKey());
+                    if (live != null) {// Came back, counts start again in the trie.
+                        check(got == live, what + ": get of a returning key " + e.getKey());
+                    } else if (withSketch) {
+                        check(got >= e.getValue() && got <= e.getValue() + sketch.totalCount() / 100,
+                                what + ": estimate " + got + " of " + e.getKey() + ", pruned " + e.getValue());
+                    } else {
+                        check(got == 0, what + ": get of a pruned key " + e.getKey());
+                    }
+                }
+            }
+        }
+        check(prunes > 1000, what + ": only " + prunes + " entries pruned");
+        if (withSketch) {
+            long total = 0;
+            for (long c : pruned.values()) {
+                total += c;
+            }
+            check(sketch.totalCount() == total, "sketch got " + sketch.totalCount() + ", pruned " + total);
+        }
+    }
+
+    /**
+     * Heavy keys(count 100) and many light ones(count 5): the automatic prune
+     * starts at threshold 2, which drops nothing, and only gets under the
+     * budget once the threshold has doubled to 8.
+     */
+    private static void budget() {
+        final int budget = 200;
+        IntCountTrieMap trie = new IntCountTrieMap();
+        for (int i = 0; i < 10; i++) {
+            trie.inc(new int[]{1000 + i}, 100);
+        }
+        trie.setNodeBudget(budget);
+        int lights = 0;
+        int autoPrunes = 0;
+        for (int a = 0; a < 50; a++) {
+            for (int b = 0; b < 50; b++) {
+                int before = trie.size();
+                trie.inc(new int[]{a, b}, 5);
+                lights++;
+                check(trie.liveNodes() <= budget, "over budget, " + trie.liveNodes() + " nodes");
+                if (trie.size() <= before) {
+                    autoPrunes++;
+                    check(trie.liveNodes() <= budget / 4 * 3, "pruned to " + trie.liveNodes() + " nodes only");
+                    // Threshold 8 drops every light key, the one just added too.
+                    check(trie.size() == 10, "size " + trie.size() + " after an automatic prune");
+                }
+            }
+        }
+        check(autoPrunes > 10, "only " + autoPrunes + " automatic prunes for " + lights + " keys");
+        for (int i = 0; i < 10; i++) {
+            check(trie.get(new int[]{1000 + i}) == 100, "heavy key " + (1000 + i) + " pruned");
+        }
+
+        // Setting a budget below what is there prunes right away.
+        IntCountTrieMap full = new IntCountTrieMap();
+        for (int i = 0; i < 100; i++) {
+            full.inc(new int[]{i}, i < 10 ? 50 : 1);
+        }
+        full.setNodeBudget(40);
+        check(full.size() == 10 && full.liveNodes() == 11, "size " + full.size() + " after setNodeBudget");
+        check(full.getKeyValueEntries().keySet().equals(new HashSet<>(Arrays.asList(
+                Arrays.asList(0), Arrays.asList(1), Arrays.asList(2), Arrays.asList(3), Arrays.asList(4),
+                Arrays.asList(5), Arrays.asList(6), Arrays.asList(7), Arrays.asList(8), Arrays.asList(9)))),
+                "heavy keys left " + full.getKeyValueEntries().keySet());
+    }
+}
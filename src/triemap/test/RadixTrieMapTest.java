@@ -0,0 +1,103 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import triemap.RadixTrieMap;
+import static triemap.test.TestUtil.check;
+import static triemap.test.TestUtil.randomKey;
+import static triemap.test.TestUtil.removeUnder;
+
+/**
+ * Random add(with null values too)/remove on a RadixTrieMap against a HashMap.
+ * After every operation the trie must hold exactly the model's entries and
+ * be fully compressed: nodeCount() is the root plus one node per key and per
+ * branching point, so no valueless leaf or valueless single child chain is
+ * left behind.
+ *
+ * @author srikalyc
+ */
+public class RadixTrieMapTest {
+
+    public static void main(String[] args) {
+        Random random = new Random(7);
+        RadixTrieMap<Integer, Integer> trie = new RadixTrieMap<>();
+        Map<List<Integer>, Integer> model = new HashMap<>();
+
+        // The cases from the review first: null on a new key, then a split
+        // node whose value is cleared again.
+        trie.add(new Integer[]{1, 2, 3}, null);
+        check(trie.nodeCount() == 1 && !trie.contains(new Integer[]{1}), "null add created nodes");
+        trie.add(new Integer[]{1, 2, 3, 4}, 1);
+        trie.add(new Integer[]{1, 2}, 2);
+        check(trie.nodeCount() == 3, "split " + trie.nodeCount());
+        trie.add(new Integer[]{1, 2}, null);
+        check(trie.nodeCount() == 2 && trie.size() == 1, "cleared split node not merged " + trie.nodeCount());
+        trie.add(new Integer[]{1, 2, 3, 4}, null);
+        check(trie.nodeCount() == 1 && trie.size() == 0, "cleared leaf not dropped " + trie.nodeCount());
+
+        for (int op = 0; op < 200000; op++) {
+            Integer[] key = randomKey(random, 6, 3);
+            List<Integer> list = Arrays.asList(key);
+            int what = random.nextInt(10);
+            if (what < 5) {
+                trie.add(key, op);
+                model.put(list, op);
+            } else if (what < 8) {
+                trie.add(key, null);
+                model.remove(list);
+            } else {
+                boolean removed = trie.remove(key);
+                boolean expected = removeUnder(model, list);
+                check(removed == expected, "remove " + list + " returned " + removed);
+            }
+            check(trie.size() == model.size(), "size " + trie.size() + " != " + model.size());
+            check(trie.nodeCount() == compressedNodes(model.keySet()),
+                    "op " + op + ": nodeCount " + trie.nodeCount() + " != " + compressedNodes(model.keySet()));
+            if (op % 1000 == 0) {
+                check(trie.getKeyValueEntries().equals(model), "entries differ at op " + op);
+            }
+        }
+        System.out.println("RadixTrieMapTest ok");
+    }
+
+    /**
+     * Root plus every non empty prefix which is a key or has children
+     * starting with at least two different elements.
+     */
+    private static int compressedNodes(Set<List<Integer>> keys) {
+        Map<List<Integer>, Set<Integer>> next = new HashMap<>();
+        for (List<Integer> k : keys) {
+            for (int len = 1; len < k.size(); len++) {
+                List<Integer> prefix = new ArrayList<>(k.subList(0, len));
+                Set<Integer> elements = next.get(prefix);
+                if (elements == null) {
+                    next.put(prefix, elements = new HashSet<>());
+                }
+                elements.add(k.get(len));
+            }
+        }
+        Set<List<Integer>> nodes = new HashSet<>(keys);
+        for (Map.Entry<List<Integer>, Set<Integer>> e : next.entrySet()) {
+            if (e.getValue().size() > 1) {
+                nodes.add(e.getKey());
+            }
+        }
+        return nodes.size() + 1;
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap.test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import triemap.BoundedTrieMap;
+import triemap.NumTrieMap;
+import triemap.TrieMap;
+import triemap.TrieMetrics;
+import static triemap.test.TestUtil.check;
+import static triemap.test.TestUtil.randomKey;
+import static triemap.test.TestUtil.removeUnder;
+
+/**
+ * remove()/removeExact() on TrieMap and NumTrieMap: the empty key removes
+ * nothing(nor can it be added, or found), random removes agree with a
+ * HashMap, and the nodes left behind are
+ * exactly the ones a trie built from the remaining entries alone has(removed
+ * subtrees and emptied ancestors are unlinked).
+ *
+ * @author srikalyc
+ */
+public class RemoveTest {
+
+    public static void main(String[] args) {
+        emptyKey();
+        randomRemoves(new TrieMap<Integer, Integer>());
+        randomRemoves(new NumTrieMap<Integer>());
+        System.out.println("RemoveTest ok");
+    }
+
+    private static void emptyKey() {
+        NumTrieMap<Integer> trie = new NumTrieMap<>();
+        trie.inc(new Integer[]{1, 2}, 3);
+        trie.inc(new Integer[]{4}, 5);
+        Integer[] key = {1, 2};
+        check(!trie.remove(new Integer[0]), "remove of the empty key returned true");
+        check(!trie.remove(key, 1, 1), "remove of an empty range returned true");
+        check(trie.size() == 2 && trie.get(key) == 3 && trie.get(new Integer[]{4}) == 5,
+                "remove of the empty key changed the trie");
+        check(trie.sumUnder(new Integer[0]) == 8, "sum " + trie.sumUnder(new Integer[0]));
+
+        BoundedTrieMap<Integer, Integer> bounded = new BoundedTrieMap<>(BoundedTrieMap.Policy.LRU, 10);
+        bounded.add(key, 1);
+        check(!bounded.remove(new Integer[0]) && bounded.size() == 1, "bounded remove of the empty key");
+
+        // The root holds no value: adding the empty key fails, looking it up finds nothing.
+        TrieMap<Integer, Integer> plain = new TrieMap<>();
+        plain.add(key, 1);
+        for (TrieMap<Integer, Integer> t : Arrays.<TrieMap<Integer, Integer>>asList(plain, trie, bounded)) {
+            String name = t.getClass().getSimpleName();
+            rejected(t, name);
+            check(t.get(new Integer[0]) == null && t.get(key, 1, 1) == null, name + ": get of the empty key");
+            check(!t.contains(new Integer[0]) && !t.contains(key, 2, 2), name + ": contains of the empty key");
+            t.setMetrics(new TrieMetrics(1));// The timed lookup.
+            check(t.get(new Integer[0]) == null, name + ": timed get of the empty key");
+            t.setMetrics(null);
+        }
+        try {
+            trie.inc(new Integer[0], 1);
+            throw new AssertionError("inc of the empty key did not throw");
+        } catch (IllegalArgumentException expected) {
+        }
+        check(trie.size() == 2 && trie.sumUnder(new Integer[0]) == 8, "failed inc changed the trie");
+
+        // removeExact keeps the extensions, remove takes them along.
+        trie.inc(new Integer[]{1}, 7);
+        check(trie.removeExact(new Integer[]{1}), "removeExact of a key");
+        check(!trie.removeExact(new Integer[]{1}), "removeExact of a key without value");
+        check(trie.get(key) == 3 && trie.size() == 2, "removeExact took the extension");
+        check(trie.removeExact(key), "removeExact of a leaf");
+        check(!trie.contains(new Integer[]{1}), "emptied ancestor not pruned");
+        check(trie.stats().getTrieNodeCount() == 2, "nodes " + trie.stats().getTrieNodeCount());
+        check(trie.remove(new Integer[]{4}) && trie.size() == 0, "remove of the last key");
+        check(trie.stats().getTrieNodeCount() == 1, "nodes " + trie.stats().getTrieNodeCount());
+    }
+
+    private static void rejected(TrieMap<Integer, Integer> trie, String name) {
+        int size = trie.size();
+        try {
+            trie.add(new Integer[0], 9);
+            throw new AssertionError(name + ": add of the empty key did not throw");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            trie.addIfNull(new Integer[]{1, 2}, 2, 2, 9);
+            throw new AssertionError(name + ": addIfNull of the empty key did not throw");
+        } catch (IllegalArgumentException expected) {
+        }
+        check(trie.size() == size, name + ": failed add changed the size");
+    }
+
+    private static void randomRemoves(TrieMap<Integer, Integer> trie) {
+        Random random = new Random(3);
+        Map<List<Integer>, Integer> model = new HashMap<>();
+        for (int op = 0; op < 50000; op++) {
+            Integer[] key = randomKey(random, 4, 4);
+            List<Integer> list = Arrays.asList(key);
+            switch (random.nextInt(4)) {
+                case 0:
+                    check(trie.remove(key) == removeUnder(model, list), "remove " + list);
+                    break;
+                case 1:
+                    check(trie.removeExact(key) == (model.remove(list) != null), "removeExact " + list);
+                    break;
+                default:
+                    trie.add(key, op);
+                    model.put(list, op);
+                    break;
+            }
+            check(trie.size() == model.size(), "size " + trie.size() + " != " + model.size());
+            if (op % 100 == 0) {
+                check(trie.getKeyValueEntries().equals(model), "entries differ at op " + op);
+                TrieMap<Integer, Integer> fresh = new TrieMap<>();
+                for (Map.Entry<List<Integer>, Integer> e : model.entrySet()) {
+                    fresh.add(e.getKey().toArray(new Integer[0]), e.getValue());
+                }
+                check(trie.stats().getTrieNodeCount() == fresh.stats().getTrieNodeCount(), "op " + op + ": "
+                        + trie.stats().getTrieNodeCount() + " nodes, "
+                        + fresh.stats().getTrieNodeCount() + " needed");
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap.test;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Assertions and reference model helpers shared by the tests.
+ *
+ * @author srikalyc
+ */
+final class TestUtil {
+
+    private TestUtil() {
+    }
+
+    static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    /**
+     * @return a key of 1 to maxLength elements, each in [0, alphabet).
+     */
+    static Integer[] randomKey(Random random, int maxLength, int alphabet) {
+        Integer[] key = new Integer[random.nextInt(maxLength) + 1];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = random.nextInt(alphabet);
+        }
+        return key;
+    }
+
+    static <K> boolean startsWith(List<K> key, List<K> prefix) {
+        return key.size() >= prefix.size() && key.subList(0, prefix.size()).equals(prefix);
+    }
+
+    /**
+     * What a wild card remove(prefix) does to a reference map.
+     *
+     * @return true if anything was removed.
+     */
+    static <K, V> boolean removeUnder(Map<List<K>, V> model, List<K> prefix) {
+        boolean removed = false;
+        for (Iterator<List<K>> iter = model.keySet().iterator(); iter.hasNext();) {
+            if (startsWith(iter.next(), prefix)) {
+                iter.remove();
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    interface Worker {
+        void run(int t, Random random);
+    }
+
+    /**
+     * Runs worker on the given number of threads released together, thread t
+     * with new Random(seed + t), and rethrows the first failure.
+     */
+    static void runThreads(int count, long seed, final Worker worker) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] threads = new Thread[count];
+        for (int t = 0; t < count; t++) {
+            final int id = t;
+            final long threadSeed = seed + t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        worker.run(id, new Random(threadSeed));
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError("worker failed", failure.get());
+        }
+    }
+}
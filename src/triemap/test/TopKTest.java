@@ -0,0 +1,91 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import triemap.NumTrieMap;
+import static triemap.test.TestUtil.check;
+import static triemap.test.TestUtil.randomKey;
+import static triemap.test.TestUtil.startsWith;
+
+/**
+ * Compares NumTrieMap.topK(with and without prefix) with a sorted scan of
+ * all the entries, on tries with negative values, ties and removes. Keys with
+ * equal values may come in any order, so the values are compared position by
+ * position and every returned key must hold the value it is returned with.
+ *
+ * @author srikalyc
+ */
+public class TopKTest {
+
+    public static void main(String[] args) {
+        Random random = new Random(5);
+        NumTrieMap<Integer> trie = new NumTrieMap<>();
+        check(trie.topK(3).isEmpty(), "topK of an empty trie");
+        for (int op = 0; op < 20000; op++) {
+            Integer[] key = randomKey(random, 4, 6);
+            if (random.nextInt(20) == 0) {
+                trie.remove(key);
+            } else {
+                trie.inc(key, random.nextInt(41) - 10);
+            }
+            if (op % 500 == 0) {
+                Map<List<Integer>, Integer> all = trie.getKeyValueEntries();
+                for (int k : new int[]{0, 1, 2, 7, 50, all.size(), all.size() + 3}) {
+                    compare(trie.topK(k), all, new ArrayList<Integer>(), k);
+                    Integer[] prefix = {random.nextInt(6)};
+                    compare(trie.topK(prefix, k), all, Arrays.asList(prefix), k);
+                }
+            }
+        }
+        for (int k : new int[]{-1, Integer.MIN_VALUE}) {
+            try {
+                trie.topK(k);
+                throw new AssertionError("topK(" + k + ") did not throw");
+            } catch (IllegalArgumentException expected) {
+            }
+            try {
+                trie.topK(new Integer[]{99}, k);
+                throw new AssertionError("topK(prefix, " + k + ") did not throw");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+        System.out.println("TopKTest ok");
+    }
+
+    private static void compare(List<Map.Entry<List<Integer>, Integer>> top,
+            Map<List<Integer>, Integer> all, List<Integer> prefix, int k) {
+        List<Integer> values = new ArrayList<>();
+        for (Map.Entry<List<Integer>, Integer> e : all.entrySet()) {
+            if (startsWith(e.getKey(), prefix)) {
+                values.add(e.getValue());
+            }
+        }
+        Collections.sort(values, Collections.reverseOrder());
+        List<Integer> expected = values.subList(0, Math.min(k, values.size()));
+        check(top.size() == expected.size(), "prefix " + prefix + " k " + k + ": "
+                + top.size() + " entries, expected " + expected.size());
+        HashSet<List<Integer>> seen = new HashSet<>();
+        for (int i = 0; i < top.size(); i++) {
+            Map.Entry<List<Integer>, Integer> e = top.get(i);
+            check(e.getValue().equals(expected.get(i)), "prefix " + prefix + " k " + k + ": value " + i
+                    + " is " + e.getValue() + ", expected " + expected.get(i));
+            check(e.getValue().equals(all.get(e.getKey())), "wrong value for " + e);
+            check(seen.add(e.getKey()), "duplicate key " + e.getKey());
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright 2014 Srikalyan Chandrashekar. Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * See accompanying LICENSE file.
+ */
+package triemap.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import triemap.IntCountTrieMap;
+import triemap.NumTrieMap;
+import static triemap.test.TestUtil.check;
+
+/**
+ * Windowed incAll(key, sI, eI, value, maxLen) of NumTrieMap and
+ * IntCountTrieMap against a brute force count of every substring of
+ * key[sI..eI) of at most maxLen elements, with maxLen from 1 to past the
+ * key length. Once maxLen reaches the key length it must count the same as
+ * the unwindowed incAll().
+ *
+ * @author srikalyc
+ */
+public class WindowedIncAllTest {
+
+    private static final int OPS = 3000;
+
+    public static void main(String[] args) {
+        Random random = new Random(16);
+        NumTrieMap<Integer> num = new NumTrieMap<>();
+        IntCountTrieMap ints = new IntCountTrieMap();
+        Map<List<Integer>, Integer> model = new HashMap<>();
+        Map<List<Integer>, Long> longModel = new HashMap<>();
+        for (int op = 0; op < OPS; op++) {
+            int[] key = new int[random.nextInt(9)];
+            Integer[] boxed = new Integer[key.length];
+            for (int i = 0; i < key.length; i++) {
+                key[i] = random.nextInt(3);
+                boxed[i] = key[i];
+            }
+            int sI = random.nextInt(key.length + 1);
+            int eI = sI + random.nextInt(key.length - sI + 1);
+            int maxLen = random.nextInt(eI - sI + 3) + 1;
+            int value = random.nextInt(9) - 2;
+            num.incAll(boxed, sI, eI, value, maxLen);
+            ints.incAll(key, sI, eI, value, maxLen);
+            for (int i = sI; i < eI; i++) {
+                for (int j = i + 1; j <= Math.min(eI, i + maxLen); j++) {
+                    List<Integer> sub = new ArrayList<>(Arrays.asList(boxed).subList(i, j));
+                    Integer old = model.get(sub);
+                    model.put(sub, old == null ? value : old + value);
+                    longModel.put(sub, (long) model.get(sub));
+                }
+            }
+            String what = "op " + op + ": " + Arrays.toString(key) + "[" + sI + ".." + eI + ") maxLen " + maxLen;
+            check(num.getKeyValueEntries().equals(model), what + ": NumTrieMap entries differ");
+            check(ints.getKeyValueEntries().equals(longModel), what + ": IntCountTrieMap entries differ");
+            check(num.size() == model.size() && ints.size() == model.size(), what + ": size");
+
+            if (maxLen >= eI - sI) {
+                NumTrieMap<Integer> windowed = new NumTrieMap<>();
+                IntCountTrieMap intsWindowed = new IntCountTrieMap();
+                windowed.incAll(boxed, sI, eI, value, maxLen);
+                intsWindowed.incAll(key, sI, eI, value, maxLen);
+                NumTrieMap<Integer> unwindowed = new NumTrieMap<>();
+                IntCountTrieMap intsUnwindowed = new IntCountTrieMap();
+                unwindowed.incAll(boxed, sI, eI, value);
+                intsUnwindowed.incAll(key, sI, eI, value);
+                check(windowed.getKeyValueEntries().equals(unwindowed.getKeyValueEntries()),
+                        what + ": NumTrieMap differs from incAll()");
+                check(intsWindowed.getKeyValueEntries().equals(intsUnwindowed.getKeyValueEntries()),
+                        what + ": IntCountTrieMap differs from incAll()");
+            }
+        }
+        for (int maxLen : new int[]{0, -1}) {
+            try {
+                num.incAll(new Integer[]{1}, 1, maxLen);
+                throw new AssertionError("NumTrieMap maxLen " + maxLen + " did not throw");
+            } catch (IllegalArgumentException expected) {
+            }
+            try {
+                ints.incAll(new int[]{1}, 1, maxLen);
+                throw new AssertionError("IntCountTrieMap maxLen " + maxLen + " did not throw");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+        System.out.println("WindowedIncAllTest ok");
+    }
+}